@@ -0,0 +1,51 @@
+package edu.lafayette.bci;
+
+/**
+ * The display of a control panel running without a screen (for example
+ * on the wheelchair's embedded computer).  It keeps the latest direction
+ * and status line for the telemetry server, and prints status changes so
+ * they appear in the log.  The session ends when close() is called by a
+ * telemetry client or the JVM's shutdown hook.
+ */
+public class HeadlessDisplay implements PanelDisplay {
+
+	// Latest state
+	private volatile int direction = NXTControlPanelUI.STOP;
+	private volatile String label = "";
+	private volatile boolean closed = false;
+
+	@Override
+	public void setDirection(int direction) {
+		this.direction = direction;
+	}
+
+	@Override
+	public int getDirection() {
+		return direction;
+	}
+
+	@Override
+	public void setBottomLabel(String text) {
+		// The label is set on every frame, only changes are printed
+		if (!text.equals(label)) {
+			label = text;
+			System.out.println(text);
+		}
+	}
+
+	@Override
+	public String getBottomLabel() {
+		return label;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	@Override
+	public boolean isWindowClosed() {
+		return closed;
+	}
+
+}
@@ -1,506 +1,963 @@
 package edu.lafayette.bci;
 
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
+import javax.swing.Timer;
+
+import edu.lafayette.bci.acquisition.*;
+import edu.lafayette.bci.calibration.*;
+import edu.lafayette.bci.control.*;
 import edu.lafayette.bci.devices.*;
+import edu.lafayette.bci.drive.*;
+import edu.lafayette.bci.dsp.*;
+import edu.lafayette.bci.metrics.*;
+import edu.lafayette.bci.profile.*;
+import edu.lafayette.bci.recording.*;
 import edu.lafayette.bci.sigproc.*;
-import edu.lafayette.bci.utils.*;
-import edu.lafayette.bci.nxt.NXTControl;
+import edu.lafayette.bci.telemetry.*;
+import edu.lafayette.bci.watchdog.*;
+import edu.lafayette.bci.wheelchair.*;
 
-import java.util.ArrayList;
-import java.io.PrintWriter;
-import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
-import javax.swing.JOptionPane;
 
 /**
  * This is the main class for the NXTControlPanel.  It reads data
  * from the Emotiv headset on each sampling frame, pushes the data
  * through the signal processing pipelines, and updates the UI and
- * the NXT commands.
+ * the NXT commands.  The headset frames are queued by an
+ * AcquisitionStage and processed on a separate ProcessingThread,
+ * so slow NXT commands do not stall acquisition.  The device being
+ * driven is chosen with the bci.drive system property (see
+ * DriveTargets) and defaults to the NXT.
  * 
  * @author Brandon T. Smith
  */
-public class NXTControlPanel implements EmotivObserver, KeyListener,
-		WatchdogObserver {
+public class NXTControlPanel implements FrameHandler, KeyListener,
+		DeadlineObserver, TelemetrySource, TransitionObserver {
 
 	// Threshold constants
 	// Note: OCCIPITAL_THRES and BLINK_THRES may have to be calibrated each time the headset
 	// is placed on the user's head.  Increasing the threshold will decrease the number of
 	// false positives.  Decreasing the threshold will decrease the number of false negatives.
+	// Run without thresholds, main() takes them from the user's profile (see ProfileStore),
+	// or calibrates them if there is none (see Calibrator).
 	private /*static*/ final double OCCIPITAL_THRES /*= 30.0*/; // Power threshold in (uV)^2
 	private static final double NXT_SPEED = 0.5; // Constant fraction of the nxt maximum velocity
 	private static final double GYROX_POS_THRES = 4000.0; // Position threshold
 	private static final double GYROX_POS_MAX = 10000.0; // Max value for normalizing gyro position
 	private /*static*/ final double BLINK_THRES /*= 130.0*/; // Blink detection threshold, in uV
-	private static final int BLINK_NUM_THRES = 5; // Number of blinks to trigger a detection
-	private static final double BLINK_TIME_THRES = 2.0; // Time within which blinks must occur (in secs)
 	private static final long CONNECTION_TIMEOUT = 1000; // Timeout for detecting connection loss
-	private static final int MOVING_AVG_WINDOW = 1500; // Number of milliseconds in filter window
-
-	// Graph for occipital waves
-	private Graph occipital = null;
-	private Graph hpfO1 = null;
-	private Graph hpfO2 = null;
+	private static final long ACK_TIMEOUT = 1000; // Time the drive may take to accept a command, in ms
+	private static final long UI_TIMEOUT = 2000; // Time the UI may stall before the nxt is stopped, in ms
+	private static final int UI_HEARTBEAT = 250; // Period of the UI heartbeat, in ms
+	private static final int QUEUE_CAPACITY = 256; // Number of raw frames buffered between acquisition and processing
+	private static final double MIN_SEPARATION = 0.8; // Calibrations separating the signals less well (Youden's J) are flagged
+	private static final double GYRO_CENTER_TIME = 30.0; // Time constant of the gyro center tracking, in seconds
+
+	// Thresholds and the gyro center follow drift unless bci.adaptive=false
+	// (see AdaptiveThresholdStage and AdaptiveGyroStage)
+	private static final String ADAPTIVE_PROPERTY = "bci.adaptive";
+	private AdaptiveThresholdStage occipitalThreshold = null;
+	private AdaptiveThresholdStage frontalThreshold = null;
+	private AdaptiveGyroStage adaptiveGyro = null;
+	private double operatingLogTime = 0.0; // Time the operating points were last logged, in seconds
+
+	// Live scope of the signals (see PanelScope) unless bci.scope=false, showing
+	// bci.scope.history seconds, and the stage giving the smoothed alpha power
+	private static final String SCOPE_PROPERTY = "bci.scope";
+	private static final String SCOPE_HISTORY_PROPERTY = "bci.scope.history";
+	private PanelScope scope = null;
+	private MovingAverageStage alphaPower = null;
+
+	// Electrodes read on each frame, in pipeline channel order
+	private static final String[] ELECTRODES = PanelChains.ELECTRODES;
+
+	// Fused HPF and averaging of all electrodes, its input frame, and
+	// the position of each electrode in a raw EEG frame
+	private MultiChannelPipeline electrodes = null;
+	private final double[] electrodeFrame = new double[ELECTRODES.length];
+	private final int[] electrodeIndex = new int[ELECTRODES.length];
+
+	// Channel for occipital waves
+	private SampleChannel occipital = null;
+
+	// Channel for gyros and the gyro detector (for recalibration), unless adaptive
+	private SampleChannel gyroX = null;
+	private GyroDetect gyroDetect = null;
+
+	// Channel for blinking
+	private SampleChannel frontal = null;
 
-	// Graph for gyros
-	private Graph gyroX = null;
+	// End devices
+	private FrameSource source = null;
+	private DriveTarget nxt = null;
 
-	// Graph for blinking
-	private Graph frontal = null;
-	private Graph hpfAF3 = null;
-	private Graph hpfAF4 = null;
+	// Sends commands off the processing thread, dropping redundant ones
+	private DriveEngine drive = null;
 
-	// End devices
-	private Emotiv emotiv = null;
-	private NXTControl nxt = null;
+	// Frame queue between the Emotiv thread and the processing thread
+	private FrameQueue queue = null;
+	private ProcessingThread processing = null;
 
-	// UI class
-	private NXTControlPanelUI ui = null;
+	// UI class (a window, or the state served to remote displays when headless)
+	private PanelDisplay ui = null;
 	// Set standard bottom label (TODO: Modify if necessary)
 	private static final String STANDARD_BOTTOM_LABEL 
 		= "Start/Stop: Close Eyes, Toggle Forward/Back: Blink x5, Turn: Rotate Head (Reset Shift+C)";
 
-	// Connection timer
-	private Watchdog wd = null;
-
-	// State variables
-	private volatile boolean isTurning = false; // Indicates if the nxt is turning or stopped
-	private volatile boolean moving = false; // True if the nxt is moving, false if stopped
-	private volatile boolean forward = true; // True if the nxt is (or will be) moving forward, false if moving back
-	private volatile boolean estop = false; // Emergency stop
-	private volatile long timeoutTime = 0;
-
-	// Used to calculate elapsed time
-	private long prevTime = 0;
-	private long gyroPrevTime = 0;
+	// Deadlines of the EEG and gyro streams, the drive, the chair's serial link
+	// and the UI (see DeadlineWatchdog), and the timer the UI beats on
+	private DeadlineWatchdog wd = null;
+	private Deadline eegDeadline = null;
+	private Deadline gyroDeadline = null;
+	private Deadline ackDeadline = null;
+	private Deadline linkDeadline = null;
+	private Deadline uiDeadline = null;
+	private Timer heartbeat = null;
+
+	// Serial link of the chair, null when driving another target; its
+	// commands are only queued, so the link is watched for losing the port
+	private ChairLink chairLink = null;
+
+	// Stage latencies (see LatencyRegistry) and the optional live report
+	private LatencyHistogram eegQueueLatency = null;
+	private LatencyHistogram gyroQueueLatency = null;
+	private LatencyHistogram eegDecisionLatency = null;
+	private LatencyHistogram gyroDecisionLatency = null;
+	private LatencyMonitor latencyMonitor = null;
+	private static final String LATENCY_PERIOD_PROPERTY = "bci.latency.period"; // Live report period in ms, 0 for none
+
+	// Run without a window if bci.headless=true (or there is no screen), serving
+	// the state on the telemetry port (see TelemetryServer)
+	private static final String HEADLESS_PROPERTY = "bci.headless";
+
+	// State variables: movement is decided by the engine on the processing
+	// thread (see DecisionEngine), other threads post events to it
+	private volatile boolean settled = false; // True if the chains were restored settled
+	private DecisionEngine engine = null;
+	private volatile boolean recenter = false; // Set to recenter the gyro on the processing thread
+
+	// Sample clocks of the EEG and gyro streams on one time base (see SampleClock),
+	// and the last sample of each for interpolating lost ones
+	private final TimeBase timeBase = new TimeBase();
+	private final SampleClock eegClock = new SampleClock(timeBase, Emotiv.SAMPLE_RATE_IN_MS / 1000.0);
+	private final SampleClock gyroClock = new SampleClock(timeBase, Emotiv.GYRO_SAMPLE_RATE_IN_MS / 1000.0);
+	private final double[] lastElectrodes = new double[ELECTRODES.length];
+	private double lastGyro = 0.0;
+
+	// Edges and pulses of the occipital and frontal channels since the last decision,
+	// in order: interpolated samples can produce them too, and they last one sample
+	private final int[] chainEvents = new int[2 * (SampleClock.MAX_GAP + 1)];
+	private int chainEventCount = 0;
 
 	// Implementation testing variables - set of these to false to turn off the corresponding DOF
 	private static final boolean ENABLE_ALPHA = true;
 	private static final boolean ENABLE_BLINK = true;
 	private static final boolean ENABLE_GYRO = true;
 	
-	// An array to hold the position values generated from the gyroscope
-	private ArrayList<Double> allPositions = new ArrayList<Double>();
+	// Session log of raw frames, chain outputs and commands (see SessionRecorder).
+	// bci.record names the file, a timestamped one by default; empty disables it.
+	private SessionRecorder recorder = null;
+	private static final String RECORD_PROPERTY = "bci.record";
+	private static final int OCCIPITAL_OUTPUT = 0; // Chain numbers in the log
+	private static final int FRONTAL_OUTPUT = 1;
+	private static final int GYRO_OUTPUT = 2;
+	private static final int OCCIPITAL_THRESHOLD = 3; // Operating points in the log, once a second
+	private static final int FRONTAL_THRESHOLD = 4;
+	private static final int GYRO_CENTER = 5;
+
+	// The user's thresholds and chain states, carried between sessions (see ProfileStore).
+	// bci.user names the user; bci.calibrate=true calibrates even if the profile has thresholds.
+	private ProfileStore profiles = null;
+	private UserProfile profile = null;
+	private static final String CALIBRATE_PROPERTY = "bci.calibrate";
+	private static final String ELECTRODES_STATE = "electrodes"; // Chain names in the profile
+	private static final String OCCIPITAL_STATE = "occipital";
+	private static final String FRONTAL_STATE = "frontal";
+	private static final String GYRO_STATE = "gyro";
 	
 	
 	/**
 	 * NXTControlPanel constructor, initiates communication with end devices.
+	 * Thresholds that are NaN come from the user's profile, or are
+	 * calibrated on the display if the profile has none.  Call start() to
+	 * start the session, unless isReady() says the display was closed
+	 * during calibration.
+	 * 
+	 * @param blink The blink detection threshold, in uV, or NaN
+	 * @param occip The occipital power threshold, in (uV)^2, or NaN
+	 * @param display Where to show the state: an NXTControlPanelUI, or a HeadlessDisplay
 	 */
-	public NXTControlPanel(double blink, double occip) {
-		
-		// initialize thresholds
-		BLINK_THRES = blink;
-		OCCIPITAL_THRES = occip;
+	public NXTControlPanel(double blink, double occip, PanelDisplay display) {
 		
-		// Create UI
-		ui = new NXTControlPanelUI();
+		// Set up the UI; key presses and the scope need a window
+		ui = display;
 		ui.setDirection(NXTControlPanelUI.STOP);
-		ui.addKeyListener(this);
+		NXTControlPanelUI window = (display instanceof NXTControlPanelUI) ? (NXTControlPanelUI) display : null;
+		if (window != null) {
+			window.addKeyListener(this);
+		}
+
+		// Create the frame source, shared by calibration and the panel
+		source = FrameSources.fromProperties();
+
+		// Load the user's profile
+		String user = ProfileStore.currentUser();
+		try {
+			profiles = ProfileStore.fromProperties();
+			profile = profiles.load(user);
+		} catch (IOException e) {
+			System.err.println("Cannot load the profile of " + user + ": " + e.getMessage());
+		}
+		if (profile == null) {
+			profile = new UserProfile(user);
+		}
+
+		// initialize thresholds from the profile if they were not given,
+		// calibrating them if the profile has none
+		if (profile.hasThresholds() && !Boolean.getBoolean(CALIBRATE_PROPERTY)) {
+			blink = Double.isNaN(blink) ? profile.getBlinkThreshold() : blink;
+			occip = Double.isNaN(occip) ? profile.getOccipitalThreshold() : occip;
+		}
+		boolean calibrate = Double.isNaN(blink) || Double.isNaN(occip);
+		Calibration calibration = calibrate ? calibrate() : null;
+		BLINK_THRES = (calibration != null) ? calibration.getBlinkThreshold() : blink;
+		OCCIPITAL_THRES = (calibration != null) ? calibration.getOccipitalThreshold() : occip;
+		if (calibrate && calibration == null) {
+			// Window closed before calibration completed
+			source.close();
+			return;
+		}
 		
-		// Setup the graphs and pipelines
-		occipital = new Graph();
-		hpfO1 = new Graph();
-		hpfO2 = new Graph();
-		gyroX = new Graph();
-		frontal = new Graph();
-		hpfAF3 = new Graph();
-		hpfAF4 = new Graph();
-
-		// Set graph window size (number of points kept)
-		occipital.setWindowSize(5);
-		hpfO1.setWindowSize(2);
-		hpfO2.setWindowSize(2);
-		gyroX.setWindowSize(2);
-		frontal.setWindowSize(5);
-		hpfAF3.setWindowSize(2);
-		hpfAF4.setWindowSize(2);
-
-		// Pipelines
-		Pipeline pipeOcc = new Pipeline();
-		Pipeline pipeHpf1 = new Pipeline();
-		Pipeline pipeHpf2 = new Pipeline();
-		Pipeline pipeGyroX = new Pipeline();
-		Pipeline pipeFront = new Pipeline();
-		Pipeline pipeHpf3 = new Pipeline();
-		Pipeline pipeHpf4 = new Pipeline();
-
-		// High pass filter to remove the drifting DC bias
-		HighPassFilter hpf1 = new HighPassFilter(0.5);
-		HighPassFilter hpf2 = new HighPassFilter(0.5);
-		pipeHpf1.addAlgorithm(hpf1);
-		pipeHpf2.addAlgorithm(hpf2);
-
-		// Butterworth filter between 8-13Hz (alpha band)
-		double[] freqs = { 8.0, 13.0 };
-		Butterworth butter = new Butterworth(4, freqs, 1 / (Emotiv.SAMPLE_RATE_IN_MS / 1000.0), Butterworth.BPF);
-		pipeOcc.addAlgorithm(butter);
-
-		// Power calculation
-		Power power = new Power(1 / 11.5, Emotiv.SAMPLE_RATE_IN_MS / 1000.0);
-		pipeOcc.addAlgorithm(power);
-
-		// Rolling average filter to smooth the power
-		MovingAverage avg = new MovingAverage(MOVING_AVG_WINDOW / Emotiv.SAMPLE_RATE_IN_MS);
-		pipeOcc.addAlgorithm(avg);
-
-		// Convert to digital signal using level threshold
-		Threshold thres = new Threshold(OCCIPITAL_THRES);
-		pipeOcc.addAlgorithm(thres);
-
-		// Perform rising and falling edge detection
-		EdgeDetect edge = new EdgeDetect();
-		pipeOcc.addAlgorithm(edge);
+		// Setup the processing chains (see PanelChains)
+		double samplePeriod = Emotiv.SAMPLE_RATE_IN_MS / 1000.0;
+		electrodes = PanelChains.electrodes(1);
+		for (int i = 0; i < ELECTRODES.length; i++) {
+			electrodeIndex[i] = AcquisitionStage.sensorIndex(ELECTRODES[i]);
+		}
+		boolean adaptive = Boolean.parseBoolean(System.getProperty(ADAPTIVE_PROPERTY, "true"));
+		occipital = PanelChains.occipital(OCCIPITAL_THRES, samplePeriod, adaptive);
+		frontal = PanelChains.frontal(BLINK_THRES, samplePeriod, adaptive);
+		occipitalThreshold = occipital.getPipeline().findFilter(AdaptiveThresholdStage.class);
+		frontalThreshold = frontal.getPipeline().findFilter(AdaptiveThresholdStage.class);
+		alphaPower = occipital.getPipeline().findFilter(MovingAverageStage.class);
 
 		// XGyro
-		GyroDetect gd = new GyroDetect(GYROX_POS_THRES, false, true);
-		pipeGyroX.addAlgorithm(gd);
-
-		// Blinking HPF's
-		HighPassFilter hpf3 = new HighPassFilter(0.5);
-		HighPassFilter hpf4 = new HighPassFilter(0.5);
-		pipeHpf3.addAlgorithm(hpf3);
-		pipeHpf4.addAlgorithm(hpf4);
-
-		// Blink detection threshold
-		Threshold thres2 = new Threshold(BLINK_THRES);
-		pipeFront.addAlgorithm(thres2);
-
-		// Rising edge detection
-		EdgeDetect edge2 = new EdgeDetect();
-		pipeFront.addAlgorithm(edge2);
-
-		// Pulse counter
-		PulseCount cnt = new PulseCount(BLINK_NUM_THRES, BLINK_TIME_THRES);
-		pipeFront.addAlgorithm(cnt);
-
-		occipital.addPipeline(pipeOcc);
-		hpfO1.addPipeline(pipeHpf1);
-		hpfO2.addPipeline(pipeHpf2);
-		gyroX.addPipeline(pipeGyroX);
-		frontal.addPipeline(pipeFront);
-		hpfAF3.addPipeline(pipeHpf3);
-		hpfAF4.addPipeline(pipeHpf4);
-
-		// Create the emotiv, watchdog, and the nxt
-		nxt = new NXTControl();
-		wd = new Watchdog();
-		wd.setTimeout(CONNECTION_TIMEOUT);
+		if (adaptive) {
+			adaptiveGyro = new AdaptiveGyroStage(GYROX_POS_THRES, GYRO_CENTER_TIME,
+					Emotiv.GYRO_SAMPLE_RATE_IN_MS / 1000.0);
+			gyroX = PanelChains.gyro(adaptiveGyro);
+		} else {
+			gyroDetect = new GyroDetect(GYROX_POS_THRES, false, true);
+			gyroX = PanelChains.gyro(gyroDetect);
+		}
+
+		// Continue from the settled state the user's last session ended in
+		settled = electrodes.restoreState(profile.getState(ELECTRODES_STATE))
+				& occipital.getPipeline().restoreState(profile.getState(OCCIPITAL_STATE))
+				& frontal.getPipeline().restoreState(profile.getState(FRONTAL_STATE));
+		gyroX.getPipeline().restoreState(profile.getState(GYRO_STATE));
+		System.out.println("Profile " + profile + (settled ? ", chains restored" : ", chains start cold"));
+
+		// Show the signals against their thresholds
+		if (window != null && Boolean.parseBoolean(System.getProperty(SCOPE_PROPERTY, "true"))) {
+			double history = Double.parseDouble(System.getProperty(SCOPE_HISTORY_PROPERTY, "" + PanelScope.HISTORY));
+			scope = new PanelScope(history, samplePeriod, Emotiv.GYRO_SAMPLE_RATE_IN_MS / 1000.0, GYROX_POS_THRES);
+			window.addView(scope.getPanel());
+		}
+
+		// Time every stage from acquisition to the drive command
+		LatencyRegistry latency = LatencyRegistry.getDefault();
+		eegQueueLatency = latency.histogram("acquisition.eeg");
+		gyroQueueLatency = latency.histogram("acquisition.gyro");
+		electrodes.instrument(latency, "pipeline.electrodes");
+		occipital.getPipeline().instrument(latency, "pipeline.occipital");
+		frontal.getPipeline().instrument(latency, "pipeline.frontal");
+		gyroX.getPipeline().instrument(latency, "pipeline.gyro");
+		eegDecisionLatency = latency.histogram("decision.eeg");
+		gyroDecisionLatency = latency.histogram("decision.gyro");
+		long period = Long.getLong(LATENCY_PERIOD_PROPERTY, 0);
+		if (period > 0) {
+			latencyMonitor = new LatencyMonitor(latency, System.out, period);
+			latencyMonitor.start();
+		}
+
+		// Create the session log, watchdog, and the nxt
+		String recordPath = System.getProperty(RECORD_PROPERTY,
+				"session-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".bcilog");
+		if (!recordPath.isEmpty()) {
+			try {
+				recorder = new SessionRecorder(recordPath);
+			} catch (IOException e) {
+				System.err.println("Cannot record session to " + recordPath + ": " + e.getMessage());
+			}
+		}
+		nxt = DriveTargets.fromProperty(DriveTargets.NXT);
+		if (nxt instanceof ChairControl) {
+			chairLink = ((ChairControl) nxt).getLink();
+		}
+		if (recorder != null) {
+			nxt = new RecordingDriveTarget(nxt, recorder);
+		}
+		drive = new DriveEngine(nxt);
+		wd = new DeadlineWatchdog(latency);
+		eegDeadline = wd.add("eeg", CONNECTION_TIMEOUT);
+		gyroDeadline = wd.add("gyro", CONNECTION_TIMEOUT);
+		ackDeadline = wd.add("actuator", ACK_TIMEOUT);
+		if (chairLink != null) {
+			linkDeadline = wd.add("link", ACK_TIMEOUT);
+		}
 		wd.addObserver(this);
-		emotiv = new Emotiv();
-		emotiv.addObserver(this);
+		drive.setAckDeadline(ackDeadline);
+		if (window != null) {
+			uiDeadline = wd.add("ui", UI_TIMEOUT);
+			heartbeat = new Timer(UI_HEARTBEAT, new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					uiDeadline.reset();
+				}
+			});
+		}
+		// A replay blocks instead of dropping frames, so it runs at the
+		// throughput the processing thread can sustain
+		Backpressure policy = FrameSources.isReplay() ? Backpressure.BLOCK : Backpressure.DROP_OLDEST;
+		queue = new FrameQueue(QUEUE_CAPACITY, AcquisitionStage.FRAME_WIDTH, policy);
+		engine = new DecisionEngine(this, latency);
+		processing = new ProcessingThread(queue, this, new Runnable() {
+			@Override
+			public void run() {
+				engine.run();
+				if (recenter) {
+					recenter = false;
+					recenterGyro();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks whether the panel is ready to start, i.e. the display was
+	 * not closed before calibration completed.
+	 */
+	public boolean isReady() {
+		return processing != null;
+	}
+
+	/**
+	 * Starts the session: acquisition, processing, the watchdog and the
+	 * scope.  Returns once the session is running; call stop() to end it.
+	 */
+	public void start() {
+		processing.start();
+		source.addObserver(new AcquisitionStage(queue));
+		source.start();
+
+		// The EEG stream is due from the start, the gyro stream once it has been seen
+		eegDeadline.reset();
+		if (heartbeat != null) {
+			uiDeadline.reset();
+			heartbeat.start();
+		}
 		wd.start();
+		System.out.println("Connection loss stops the nxt within " + eegDeadline.getBound() / 1000000 + " ms");
+		if (scope != null) {
+			scope.getPanel().start();
+		}
+
+		ui.setBottomLabel(STANDARD_BOTTOM_LABEL);
 
 		// Takeoff automatically if blinking is disabled
 		if (!ENABLE_BLINK) {
-			// Wait to allow filters to settle
-			try { Thread.sleep(5000); } catch (Exception e) {}
+			// Wait to allow filters to settle, unless they were restored settled
+			if (!settled) {
+				try { Thread.sleep(5000); } catch (Exception e) {}
+			}
 			// Start NXT
-			nxt.forward(NXT_SPEED);
-			moving = true;
-			forward = true;
-			//ui.setMoving(moving, forward);
-			ui.setDirection(NXTControlPanelUI.FORWARD);
+			post(DecisionEngine.START);
 		}
+	}
 
-		// Wait until window is closed
-		while (!ui.isWindowClosed()) {
-			try { Thread.sleep(250); } catch (Exception e) {}
-		}
+	/**
+	 * Ends the session: closes the devices, saves the user's profile and
+	 * prints the session's statistics.
+	 */
+	public void stop() {
 		
-		// Write positions out to a file
-		PrintWriter positionsOut = null;
-		try {
-			// writes to a specific location on my (B. T. Smith) personal computer.
-			positionsOut = new PrintWriter(
-					new File("C:\\Users\\Brandon T. Smith\\Documents\\EXCEL\\gyroPositions.csv"));
-			for(Double d : allPositions) { positionsOut.println(d); }
-		} catch (Exception e){
-			e.printStackTrace();
-		} finally {
-			if (positionsOut!=null) { positionsOut.close(); }
-		}
-
 		// Close device communications
+		if (scope != null) {
+			scope.getPanel().finish();
+		}
+		if (heartbeat != null) {
+			heartbeat.stop();
+		}
 		wd.finish();
-		emotiv.close();
+		source.close();
+		processing.finish();
+		drive.finish();
 		nxt.stop();
+		nxt.close();
+		saveProfile();
+		if (recorder != null) {
+			recorder.close();
+			System.out.println("Session recorded to " + recorder.getPath() + " (" + recorder.getRecords() + " records)");
+		}
+
+		// Report frames lost because processing fell behind
+		System.out.println("Frames offered: " + queue.getOffered() + ", overruns: " + queue.getOverruns());
+		System.out.println("Samples interpolated: EEG " + eegClock.getLost() + ", gyro " + gyroClock.getLost()
+				+ "; gaps bridged: EEG " + eegClock.getGaps() + ", gyro " + gyroClock.getGaps());
+		if (source instanceof ReplayDevice) {
+			ReplayDevice replay = (ReplayDevice) source;
+			System.out.println("Frames replayed: " + replay.getFrames() + " at " + replay.getFrameRate() + " frames/s"
+					+ ", lines skipped: " + replay.getSkipped());
+		}
+		System.out.println("Commands submitted: " + drive.getSubmitted() + ", sent: " + drive.getSent()
+				+ ", suppressed: " + drive.getSuppressed() + ", coalesced: " + drive.getCoalesced());
+		System.out.println("Drive " + nxt.getName() + ": " + drive.getStats());
+		System.out.println("Deadlines: " + wd.getDeadlines());
+		System.out.print("Transitions:" + System.lineSeparator() + engine.report());
+		if (engine.getDropped() > 0) {
+			System.out.println("Events dropped: " + engine.getDropped());
+		}
+		if (occipitalThreshold != null && frontalThreshold != null) {
+			System.out.println("Adapted thresholds: occipital " + occipitalThreshold.getThreshold()
+					+ " uV^2 (baseline " + occipitalThreshold.getBaseline() + "), blink "
+					+ frontalThreshold.getThreshold() + " uV (noise " + frontalThreshold.getNoise() + ")");
+		}
+		if (adaptiveGyro != null) {
+			System.out.println("Gyro center: " + adaptiveGyro.getCenter() + " (noise " + adaptiveGyro.getNoise() + ")");
+		}
+
+		// Dump the stage latencies
+		if (latencyMonitor != null) {
+			latencyMonitor.finish();
+		}
+		System.out.print(LatencyRegistry.getDefault().report());
 	}
 
 	@Override
-	public void timeout() {
-		// Stop the nxt
-		timeoutTime = System.currentTimeMillis();
-		nxt.stop();
+	public void deadlineMissed(Deadline deadline, long lateNanos) {
+		if (deadline == eegDeadline || deadline == gyroDeadline) {
+			connectionLost();
+		} else if (deadline == ackDeadline || deadline == linkDeadline) {
+			// The stop replaces whatever command is waiting for the drive,
+			// and the engine stays stopped until the operator releases it
+			System.err.println("Drive " + nxt.getName() + ((deadline == ackDeadline) ? " not responding" : " link lost"));
+			drive.stop();
+			post(DecisionEngine.DRIVE_FAULT);
+		} else if (deadline == uiDeadline) {
+			// Key presses (the emergency stop) are not being handled; stop
+			// until the operator releases the estop
+			System.err.println("UI not responding, stopping the nxt");
+			drive.stop();
+			post(DecisionEngine.ESTOP);
+		}
+	}
+
+	/**
+	 * Helper function that stops the nxt when the headset's streams are lost.
+	 */
+	private void connectionLost() {
+		// Stop the nxt at once, whatever the processing thread is doing;
+		// the engine then recenters the gyro and shows the loss (the
+		// sample clocks bridge the gap when frames resume)
+		drive.stop();
+		post(DecisionEngine.TIMEOUT);
+	}
 
-		// Recalibrate the gyro
-		GyroDetect det = (GyroDetect)gyroX.getPipeline().getAlgorithm(0);
-		det.calibrateCenter();
+	/**
+	 * Helper function that resumes after a connection loss once both of
+	 * the headset's streams are arriving again; a frame of one stream
+	 * says nothing about the other.
+	 */
+	private void resumeIfConnected() {
+		if (engine.getState() == DecisionEngine.LOST
+				&& !eegDeadline.isExpired() && !gyroDeadline.isExpired()) {
+			engine.fire(DecisionEngine.RESUME);
+		}
+	}
 
-		// Set the UI to stop
-		ui.setDirection(NXTControlPanelUI.STOP);
+	/**
+	 * Helper function that posts an event to the engine, and reports it
+	 * if the engine's mailbox was full.
+	 */
+	private void post(int event) {
+		if (!engine.post(event)) {
+			System.err.println("Decision engine busy, " + DecisionEngine.eventName(event) + " dropped");
+			ui.setBottomLabel("Busy, Try Again");
+		}
+	}
 
-		// Indicate connection lost on UI
-		ui.setBottomLabel("Connection Lost");
-		
+	@Override
+	public void transition(long time, int event, int state, int turn, int command) {
+		// Issue the new command, if any
+		if (command == DriveEngine.FORWARD) {
+			drive.forward(NXT_SPEED);
+			ui.setDirection(NXTControlPanelUI.FORWARD);
+		} else if (command == DriveEngine.BACKWARD) {
+			drive.backward(NXT_SPEED);
+			ui.setDirection(NXTControlPanelUI.BACKWARD);
+		} else if (command == DriveEngine.LEFT) {
+			drive.turnLeft(NXT_SPEED);
+			ui.setDirection(NXTControlPanelUI.LEFT);
+		} else if (command == DriveEngine.RIGHT) {
+			drive.turnRight(NXT_SPEED);
+			ui.setDirection(NXTControlPanelUI.RIGHT);
+		} else if (command == DriveEngine.STOP) {
+			drive.stop();
+			ui.setDirection(NXTControlPanelUI.STOP);
+		}
 
+		// Recalibrate the gyro when a turn ends or the headset is lost
+		// (the adaptive detector tracks its center and needs no recalibration)
+		if (event == DecisionEngine.TURN_END) {
+			if (gyroDetect != null) {
+				gyroDetect.calibrateCenter();
+			}
+		} else if (event == DecisionEngine.TIMEOUT) {
+			recenterGyro();
+		}
+
+		// Set the label appropriately
+		if (state == DecisionEngine.LOST) {
+			ui.setBottomLabel("Connection Lost");
+		} else if (state == DecisionEngine.ESTOPPED) {
+			ui.setBottomLabel((event == DecisionEngine.DRIVE_FAULT) ? "Drive Not Responding" : "Estop");
+		} else if (event != DecisionEngine.TURN_LEFT && event != DecisionEngine.TURN_RIGHT
+				&& event != DecisionEngine.TURN_END) {
+			ui.setBottomLabel(STANDARD_BOTTOM_LABEL);
+		}
 	}
 
 	@Override
 	public void keyPressed(KeyEvent e) {
 		// Recalibrate if Shift+C is pressed
 		if (e.isShiftDown() && e.getKeyCode() == KeyEvent.VK_C) {
-			GyroDetect det = (GyroDetect)gyroX.getPipeline().getAlgorithm(0);
-			det.calibrateCenter();
+			// The gyro detectors belong to the processing thread
+			recenter = true;
 		} else if (!e.isShiftDown()) {
 			// Implement emergency stop if any key is pressed
-			estop = !estop;
-			nxt.stop();
-			moving = false;
-			forward = true;
-			ui.setDirection(NXTControlPanelUI.STOP);
-			//ui.setMoving(false, forward);
-
-			// Set the label appropriately
-			if (timeoutTime != 0) {
-				ui.setBottomLabel("Connection Lost");
-			} else if (estop) {
-				ui.setBottomLabel("Estop");
-			} else {
-				ui.setBottomLabel(STANDARD_BOTTOM_LABEL);
-			}
+			setEstop(engine.getState() != DecisionEngine.ESTOPPED);
 		}
 	}
+
+	@Override
+	public void setEstop(boolean on) {
+		// Stop at once; the engine enters or leaves the estop when it
+		// handles the event
+		if (on) {
+			drive.stop();
+		}
+		post(on ? DecisionEngine.ESTOP : DecisionEngine.RELEASE);
+	}
 	
 	@Override
-	public void sensorsChanged(Emotiv e) {
+	public void eegFrame(long timestamp, double[] sensors) {
+
+		// Time spent queued since acquisition; commands issued now stem from this frame
+		eegQueueLatency.recordSince(timestamp);
+		drive.setOrigin(timestamp);
 		
-		// Initialize time
-		if (prevTime == 0) {
-			prevTime = System.currentTimeMillis();
+		// Time of this sample from the sample count, in seconds
+		int missing = eegClock.tick(timestamp);
+		double time = eegClock.time();
+
+		// Reset the stream's deadline, and the chair link's while it is open
+		// (the link's is armed once it has first opened)
+		eegDeadline.reset();
+		if (chairLink != null && chairLink.isConnected()) {
+			linkDeadline.reset();
 		}
-
-		// Get current time, calculate elapsed time
-		long currTime = System.currentTimeMillis();
-
-		// Reset watchdog timer
-		wd.reset();
-
-		// If timeout occurred, reset the prevTime to account for lost time
-		if (timeoutTime != 0) {
-			prevTime += currTime - timeoutTime - Emotiv.SAMPLE_RATE_IN_MS;
-			gyroPrevTime += currTime - timeoutTime - Emotiv.GYRO_SAMPLE_RATE_IN_MS;
-			timeoutTime = 0;
+		resumeIfConnected();
+
+		// Interpolate the samples lost just before this one, so the chains
+		// see every sample period
+		for (int i = 1; i <= missing; i++) {
+			double f = i / (missing + 1.0);
+			for (int c = 0; c < ELECTRODES.length; c++) {
+				double v = sensors[electrodeIndex[c]];
+				electrodeFrame[c] = lastElectrodes[c] + f * (v - lastElectrodes[c]);
+			}
+			processElectrodes(time - (missing + 1 - i) * eegClock.getPeriod());
 		}
 
-		// Pass data from each electrode through the HPF
-		hpfO1.addPoint(new Point((currTime - prevTime) / 1000.0, e.getSensorValue("O1")));
-		hpfO2.addPoint(new Point((currTime - prevTime) / 1000.0, e.getSensorValue("O2")));
+		// Pass data from every electrode through the chains
+		for (int i = 0; i < ELECTRODES.length; i++) {
+			electrodeFrame[i] = sensors[electrodeIndex[i]];
+		}
+		System.arraycopy(electrodeFrame, 0, lastElectrodes, 0, ELECTRODES.length);
+		processElectrodes(time);
+
+		// Log the frame and what the chains made of it
+		if (recorder != null) {
+			recorder.recordEeg(timestamp, sensors);
+			recorder.recordOutput(timestamp, OCCIPITAL_OUTPUT, occipital.latestValue());
+			recorder.recordOutput(timestamp, FRONTAL_OUTPUT, frontal.latestValue());
+			if (time - operatingLogTime >= 1.0) {
+				operatingLogTime = time;
+				logOperatingPoints(timestamp);
+			}
+		}
 
-		// Average signals and pass through occipital pipeline
-		Point[] hpfO1data = new Point[hpfO1.getData().size()];
-		Point[] hpfO2data = new Point[hpfO2.getData().size()];
-		hpfO1.getData().toArray(hpfO1data);
-		hpfO2.getData().toArray(hpfO2data);
+		// Act on the processed signals
+		long decisionStart = System.nanoTime();
+		decideMovement();
+		eegDecisionLatency.recordSince(decisionStart);
+		drive.setOrigin(0);
+	}
 
-		// Create a new point with the average of O1 and O2
-		Point pt = new Point(hpfO1data[hpfO1data.length - 1].getX(), 
-				(hpfO1data[hpfO1data.length - 1].getY() + hpfO2data[hpfO2data.length - 1].getY()) / 2.0);
+	/**
+	 * Helper function that passes the electrode frame through the HPF and averaging, then the
+	 * averages through the occipital and frontal channels.
+	 * 
+	 * @param time The time of the frame, in seconds
+	 */
+	private void processElectrodes(double time) {
+		FrameBlock averaged = electrodes.pushFrame(time, electrodeFrame);
 
-		// Add to the occipital pipeline
+		// Add the average of O1 and O2 to the occipital pipeline
 		if (ENABLE_ALPHA) {
-			occipital.addPoint(pt);
+			occipital.addSample(time, averaged.get(0, PanelChains.OCCIPITAL));
 		} else {
 			// Add zero point if alpha disabled for testing
-			occipital.addPoint(new Point(hpfO1data[hpfO1data.length - 1].getX(), 0.0));
+			occipital.addSample(time, 0.0);
 		}
 
-		// Add AF3/4 data to high pass filters
-		hpfAF3.addPoint(new Point((currTime - prevTime) / 1000.0, e.getSensorValue("AF3")));
-		hpfAF4.addPoint(new Point((currTime - prevTime) / 1000.0, e.getSensorValue("AF4")));
+		// Add the average of AF3 and AF4 to the frontal pipeline (zero points if blink disabled for testing)
+		double frontalValue = ENABLE_BLINK ? averaged.get(0, PanelChains.FRONTAL) : 0.0;
+		frontal.addSample(time, frontalValue);
 
-		// Get high passed data
-		Point[] hpfAF3data = new Point[hpfAF3.getData().size()];
-		Point[] hpfAF4data = new Point[hpfAF3.getData().size()];
-		hpfAF3.getData().toArray(hpfAF3data);
-		hpfAF3.getData().toArray(hpfAF4data);
+		// Show the signals against the thresholds in use
+		if (scope != null) {
+			scope.addEeg(electrodeFrame, alphaPower.getAverage(),
+					(occipitalThreshold != null) ? occipitalThreshold.getThreshold() : OCCIPITAL_THRES,
+					frontalValue,
+					(frontalThreshold != null) ? frontalThreshold.getThreshold() : BLINK_THRES);
+		}
 
-		// Average high passed data
-		Point pt2 = new Point(hpfAF3data[hpfAF3data.length - 1].getX(), 
-				(hpfAF3data[hpfAF3data.length - 1].getY() + hpfAF4data[hpfAF4data.length - 1].getY() / 2.0));
+		// Keep the edges and pulses for the decision
+		if (frontal.latestValue() == 1.0) {
+			chainEvents[chainEventCount++] = DecisionEngine.BLINK;
+		}
+		double edge = occipital.latestValue();
+		if (edge == 1) {
+			chainEvents[chainEventCount++] = DecisionEngine.ALPHA_RISE;
+		} else if (edge == -1) {
+			chainEvents[chainEventCount++] = DecisionEngine.ALPHA_FALL;
+		}
+	}
 
-		// Add to frontal pipeline
-		if (ENABLE_BLINK) {
-			frontal.addPoint(pt2);
-		} else {
-			// Add zero point if blink disabled for testing
-			frontal.addPoint(new Point(hpfAF3data[hpfAF3data.length - 1].getX(), 0.0));
+	/**
+	 * Passes the edges of the occipital and frontal channels since the last
+	 * decision, including those of interpolated samples, to the engine,
+	 * which starts, stops or reverses the nxt.  A blink pulse toggles
+	 * reverse; an alpha posedge starts or stops the nxt and its negedge
+	 * commits it.
+	 */
+	private void decideMovement() {
+		for (int i = 0; i < chainEventCount; i++) {
+			engine.fire(chainEvents[i]);
 		}
-		
-		// Estop logic
-		if (estop) {
-			nxt.stop();
-			moving = false;
-			forward = true;
-			ui.setDirection(NXTControlPanelUI.STOP);
-			ui.setBottomLabel("Estop");
-			return;
-		} 
+		chainEventCount = 0;
+	}
 
-		// No estop or connection loss -> reset label to normal value
-		ui.setBottomLabel(STANDARD_BOTTOM_LABEL);
+	@Override
+	public void gyroFrame(long timestamp, double[] gyros) {
+
+		// Time spent queued since acquisition; commands issued now stem from this frame
+		gyroQueueLatency.recordSince(timestamp);
+		drive.setOrigin(timestamp);
+		gyroDeadline.reset();
+		resumeIfConnected();
 		
-		// skip linear movement processing if turning.
-		if (isTurning) {
-			return;
+		// Time of this sample from the sample count, in seconds
+		int missing = gyroClock.tick(timestamp);
+		double time = gyroClock.time();
+
+		// Gyro data, or zero points if disabled for testing
+		double value = ENABLE_GYRO ? gyros[0] : 0.0;
+
+		// Interpolate the samples lost just before this one
+		for (int i = 1; i <= missing; i++) {
+			double f = i / (missing + 1.0);
+			showGyro(gyroX.addSample(time - (missing + 1 - i) * gyroClock.getPeriod(), lastGyro + f * (value - lastGyro)));
 		}
+		lastGyro = value;
+
+		// Add gyro data to channel
+		double position = gyroX.addSample(time, value);
+		showGyro(position);
 		
-		// TODO: Consider whether to use blinks for start/stop
-		// reverse  logic
-		// TODO Add an indicator to the ControlPanelUI for the "forward" variable.
-		Point[] frontalData = new Point[frontal.getData().size()];
-		frontal.getData().toArray(frontalData);
-		if (frontalData[frontalData.length - 1].getY() == 1.0) {
-			// Toggle reverse
-			forward = !forward; //for start/stop, moving = !moving;
-
-			// start or stop
-			if (moving && forward && !isTurning) {
-				nxt.forward(NXT_SPEED);
-				ui.setDirection(NXTControlPanelUI.FORWARD);
-			} else if (moving && !forward && !isTurning) {
-				nxt.backward(NXT_SPEED);
-				ui.setDirection(NXTControlPanelUI.BACKWARD);
+		// Determine direction of rotation
+		long decisionStart = System.nanoTime();
+		if (position < 0) {
+			engine.fire(DecisionEngine.TURN_LEFT);
+		} else if (position != 0) {
+			engine.fire(DecisionEngine.TURN_RIGHT);
+		} else {
+			engine.fire(DecisionEngine.TURN_END);
+		}
+		gyroDecisionLatency.recordSince(decisionStart);
+		drive.setOrigin(0);
+
+		// Log the frame and the position generated from it
+		if (recorder != null) {
+			recorder.recordGyro(timestamp, gyros);
+			recorder.recordOutput(timestamp, GYRO_OUTPUT, position);
+		}
+
+	}
+
+	/**
+	 * Helper function that runs a calibration session on the frame source
+	 * and reports the thresholds it finds.
+	 * 
+	 * @return The thresholds, or null if the window was closed first
+	 */
+	private Calibration calibrate() {
+		Calibrator calibrator = new Calibrator(Emotiv.SAMPLE_RATE_IN_MS / 1000.0, new CalibrationObserver() {
+			@Override
+			public void stepChanged(int step, String instruction) {
+				ui.setBottomLabel(instruction);
+				if (step != Calibrator.SETTLE) {
+					beep();
+				}
 			}
-			
-			return;
+
+			@Override
+			public void blinkCue() {
+				beep();
+			}
+		});
+		calibrator.start(source);
+
+		// Wait until the session completes or the window is closed
+		while (!calibrator.isFinished() && !ui.isWindowClosed()) {
+			try { Thread.sleep(250); } catch (Exception e) {}
 		}
-		
-		// TODO: Consider whether to use alpha for direction toggle. 
-		// Toggle start/stop
-		// Look for alpha posedge/negedge
-		Point[] occipitalData = new Point[occipital.getData().size()];
-		occipital.getData().toArray(occipitalData);
-		Point lastPoint = occipitalData[occipitalData.length - 1];
-
-		if (lastPoint.getY() == 1 && moving) {
-			// Rising edge detected while moving, stop nxt
-			nxt.stop();
-			ui.setDirection(NXTControlPanelUI.STOP);
-		} else if (lastPoint.getY() == 1 && !moving) {
-			// rising edge detected while not moving, start nxt
-			if (forward) {
-				nxt.forward(NXT_SPEED);
-				ui.setDirection(NXTControlPanelUI.FORWARD);
-			} else {
-				nxt.backward(NXT_SPEED);
-				ui.setDirection(NXTControlPanelUI.BACKWARD);
+		Calibration calibration = calibrator.finish();
+
+		if (calibration != null) {
+			System.out.println("Calibrated thresholds: " + calibration);
+			if (!calibration.isReliable(MIN_SEPARATION)) {
+				System.out.println("Warning: the signals were poorly separated, consider recalibrating");
 			}
-		} else if (lastPoint.getY() == -1) {
-			// Falling edge detected, toggle movement state
-			moving = !moving;	
+			ui.setBottomLabel(STANDARD_BOTTOM_LABEL);
 		}
+		return calibration;
+	}
 
+	/**
+	 * Helper function that beeps, unless there is no screen to beep from.
+	 */
+	private static void beep() {
+		if (!GraphicsEnvironment.isHeadless()) {
+			Toolkit.getDefaultToolkit().beep();
+		}
 	}
 
-	
-	@Override
-	public void gyrosChanged(Emotiv e) {
-		
-		// Initialize time
-		if (gyroPrevTime == 0) {
-			gyroPrevTime = System.currentTimeMillis();
+	/**
+	 * Helper function that recalibrates whichever gyro detector is in use.
+	 */
+	private void recenterGyro() {
+		if (adaptiveGyro != null) {
+			adaptiveGyro.recenter();
+		} else {
+			gyroDetect.calibrateCenter();
 		}
+	}
 
-		// Get current elapsed time
-		long currTime = System.currentTimeMillis();
+	/**
+	 * Helper function that shows the gyro position on the scope: the
+	 * adaptive detector's position, or the detector output otherwise.
+	 * 
+	 * @param output The output of the gyro chain
+	 */
+	private void showGyro(double output) {
+		if (scope != null) {
+			scope.addGyro((adaptiveGyro != null) ? adaptiveGyro.getPosition() : output);
+		}
+	}
 
-		// Add gyro data to graph
-		if (ENABLE_GYRO) {
-			gyroX.addPoint(new Point((currTime - gyroPrevTime) / 1000.0, e.getGyroValue("x")));
-		} else {
-			// Add zero point if disabled for testing
-			gyroX.addPoint(new Point((currTime - gyroPrevTime) / 1000.0, 0.0));
+	/**
+	 * Helper function that logs the operating points of the adaptive
+	 * stages.
+	 * 
+	 * @param timestamp The acquisition time, in nanoseconds
+	 */
+	private void logOperatingPoints(long timestamp) {
+		if (occipitalThreshold != null) {
+			recorder.recordOutput(timestamp, OCCIPITAL_THRESHOLD, occipitalThreshold.getThreshold());
+		}
+		if (frontalThreshold != null) {
+			recorder.recordOutput(timestamp, FRONTAL_THRESHOLD, frontalThreshold.getThreshold());
 		}
+		if (adaptiveGyro != null) {
+			recorder.recordOutput(timestamp, GYRO_CENTER, adaptiveGyro.getCenter());
+		}
+	}
 
-		// Get processed data
-		Point[] gyroXData = new Point[gyroX.getData().size()];
-		gyroX.getData().toArray(gyroXData);
-		
-		// Determine direction of rotation
-		double position = gyroXData[gyroXData.length - 1].getY();
-		if (position < 0) {
-			nxt.turnLeft(NXT_SPEED);
-			ui.setDirection(NXTControlPanelUI.LEFT);
-			isTurning = true;
-		} else if (position != 0) {
-			nxt.turnRight(NXT_SPEED);
-			ui.setDirection(NXTControlPanelUI.RIGHT);
-			isTurning = true;
-		} else if (isTurning && position==0) {
-			if (moving && forward) {
-				nxt.forward(NXT_SPEED);
-				ui.setDirection(NXTControlPanelUI.FORWARD);
-			} else if (moving && !forward) {
-				nxt.backward(NXT_SPEED);
-				ui.setDirection(NXTControlPanelUI.BACKWARD);
-			} else if (!moving) {
-				nxt.stop();
-				ui.setDirection(NXTControlPanelUI.STOP);
-			}
-			isTurning = false;
-			// TODO: Consider recalibrating the gyroscope here, so that it resets every time.
-			GyroDetect det = (GyroDetect)gyroX.getPipeline().getAlgorithm(0);
-			det.calibrateCenter();
+	/**
+	 * Helper function that saves the thresholds and, if any frames were
+	 * processed, the final chain states to the user's profile.  Called
+	 * once processing has finished.
+	 */
+	private void saveProfile() {
+		if (profiles == null) {
+			return;
 		}
-		// Record position values in an array to output to a file
-		allPositions.add( new Double(position) );
+		profile.setThresholds(BLINK_THRES, OCCIPITAL_THRES);
+		if (eegClock.getFrames() > 0) {
+			profile.setState(ELECTRODES_STATE, electrodes.saveState());
+			profile.setState(OCCIPITAL_STATE, occipital.getPipeline().saveState());
+			profile.setState(FRONTAL_STATE, frontal.getPipeline().saveState());
+			profile.setState(GYRO_STATE, gyroX.getPipeline().saveState());
+		}
+		try {
+			profiles.save(profile);
+			System.out.println("Profile saved: " + profile);
+		} catch (IOException e) {
+			System.err.println("Cannot save the profile of " + profile.getUser() + ": " + e.getMessage());
+		}
+	}
+
+	/* ********** Telemetry (see TelemetryServer) ********** */
+
+	@Override
+	public int getDirection() {
+		return ui.getDirection();
+	}
+
+	@Override
+	public int getFlags() {
+		int state = engine.getState();
+		return (engine.isMoving() ? TelemetryProtocol.FLAG_MOVING : 0)
+				| (engine.isForward() ? TelemetryProtocol.FLAG_FORWARD : 0)
+				| ((engine.getTurn() != DecisionEngine.STRAIGHT) ? TelemetryProtocol.FLAG_TURNING : 0)
+				| ((state == DecisionEngine.ESTOPPED) ? TelemetryProtocol.FLAG_ESTOP : 0)
+				| ((state == DecisionEngine.LOST) ? TelemetryProtocol.FLAG_CONNECTION_LOST : 0);
+	}
+
+	@Override
+	public String getLabel() {
+		return ui.getBottomLabel();
+	}
+
+	@Override
+	public long getFrames() {
+		return queue.getOffered();
+	}
+
+	@Override
+	public long getOverruns() {
+		return queue.getOverruns();
+	}
 
+	@Override
+	public LatencyRegistry getLatency() {
+		return LatencyRegistry.getDefault();
 	}
 
+	@Override
+	public void shutdown() {
+		ui.close();
+	}
+
+	/**
+	 * Starts the panel.  Without arguments the thresholds come from the
+	 * current user's profile, or are calibrated first if it has none.
+	 * The session runs until the window is closed or, when headless, until
+	 * a telemetry client or the JVM's shutdown (Ctrl+C, SIGTERM) ends it.
+	 * 
+	 * Usage: NXTControlPanel [&lt;blink threshold (uV)&gt; &lt;occipital threshold (uV^2)&gt;]
+	 */
 	public static void main(String[] args) {
-		// Request values for Blink and Occipital thresholds
-		// If either is cancelled, exit program
-		String blinkString = JOptionPane.showInputDialog(
-				null, "Enter the blink threshold (in uV):", 
-				"Blink Threshold", JOptionPane.QUESTION_MESSAGE);
-		if (blinkString == null) { System.exit(0); }
-		String occipString = JOptionPane.showInputDialog(
-				null, "Enter the occipital threshold (in uV^2):", 
-				"Occiital Threshold", JOptionPane.QUESTION_MESSAGE);
-		if (occipString == null) { System.exit(0); }
-		
+		double blink = Double.NaN;
+		double occip = Double.NaN;
+		if (args.length >= 2) {
+			try {
+				// parse the thresholds given on the command line
+				blink = Double.parseDouble(args[0]);
+				occip = Double.parseDouble(args[1]);
+			} catch (NumberFormatException nfe) {
+				System.err.println("Usage: NXTControlPanel [<blink threshold (uV)> <occipital threshold (uV^2)>]");
+				return;
+			}
+		}
+
+		// Run without a window if asked to, or if there is no screen
+		boolean headless = Boolean.getBoolean(HEADLESS_PROPERTY) || GraphicsEnvironment.isHeadless();
+		final PanelDisplay display = headless ? new HeadlessDisplay() : new NXTControlPanelUI();
+		NXTControlPanel panel = new NXTControlPanel(blink, occip, display);
+		if (!panel.isReady()) {
+			return;
+		}
+
+		// Serve the state to remote displays, by default only when headless
+		TelemetryServer server = null;
 		try {
-			// parse values returned from requests into doubles
-			double blink = new Double(blinkString);
-			double occip = new Double(occipString);
-			
-			// Create an object of this class with those threshold parameters
-			new NXTControlPanel(blink, occip);
-		} catch (NumberFormatException nfe) {
-			// Display an error if the value entered cannot be parsed to a number.
-			JOptionPane.showMessageDialog(
-					null, "Could not parse a number from the input.\nCannot Continue.", 
-					"Parsing Error", JOptionPane.ERROR_MESSAGE);
+			server = TelemetryServer.fromProperties(panel, headless ? TelemetryProtocol.PORT : 0);
+		} catch (IOException e) {
+			System.err.println("Cannot serve telemetry: " + e.getMessage());
 		}
-		
+		if (server != null) {
+			server.start();
+			System.out.println("Telemetry served on port " + server.getPort());
+		}
+
+		// A headless session also ends when the JVM is asked to exit
+		if (headless) {
+			final Thread session = Thread.currentThread();
+			Runtime.getRuntime().addShutdownHook(new Thread("Panel shutdown") {
+				@Override
+				public void run() {
+					display.close();
+					try { session.join(); } catch (InterruptedException e) {}
+				}
+			});
+		}
+
+		// Run until the display is closed
+		panel.start();
+		while (!display.isWindowClosed()) {
+			try { Thread.sleep(250); } catch (Exception e) {}
+		}
+		if (server != null) {
+			server.finish();
+		}
+		panel.stop();
 	}
 	
 	/* ********** Unimplemented Methods ********** */
 	// TODO: Add battery, quality indicators
-	
+
 	/* (non-Javadoc)
-	 * @see EmotivObserver#batteryChanged(Emotiv)
+	 * @see edu.lafayette.bci.acquisition.FrameHandler#qualityChanged(long, int, int)
 	 */
 	@Override
-	public void batteryChanged(Emotiv e) {}
+	public void qualityChanged(long timestamp, int sensor, int quality) {
+		if (recorder != null) {
+			recorder.recordQuality(timestamp, sensor, quality);
+		}
+	}
 
 	/* (non-Javadoc)
-	 * @see EmotivObserver#qualityChanged(Emotiv, java.lang.String, int)
+	 * @see edu.lafayette.bci.acquisition.FrameHandler#batteryChanged(long, int)
 	 */
 	@Override
-	public void qualityChanged(Emotiv e, String sensor, int quality) {}
+	public void batteryChanged(long timestamp, int level) {
+		if (recorder != null) {
+			recorder.recordBattery(timestamp, level);
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see java.awt.event.KeyListener#keyTyped(java.awt.event.KeyEvent)
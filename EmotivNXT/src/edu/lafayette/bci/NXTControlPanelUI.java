@@ -2,6 +2,8 @@ package edu.lafayette.bci;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.awt.event.KeyListener;
@@ -9,14 +11,23 @@ import java.awt.event.KeyListener;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
+ * The control panel window.  The setters may be called from any thread
+ * and only record the latest state requested; a timer applies it on the
+ * event dispatch thread FRAME_RATE times a second, skipping whatever has
+ * not changed.  Repeated or superseded updates therefore cost the caller
+ * a field write and the EDT nothing.
+ * 
  * @author Brandon T. Smith
  *
  */
-public class NXTControlPanelUI implements WindowListener {
+public class NXTControlPanelUI implements WindowListener, PanelDisplay {
 
 	// Constant values for directional movement
 	public static final int FORWARD = 1;
@@ -25,18 +36,36 @@ public class NXTControlPanelUI implements WindowListener {
 	public static final int RIGHT = 1 << 3; // Clockwise turn
 	public static final int STOP = 0;
 
-	// Keeps track of current state
-	private int currDirection = STOP;
+	// Rate at which requested changes are shown
+	public static final int FRAME_RATE = 30; // Updates per second
+
+	// Keeps track of current state, as requested by any thread
+	private volatile int currDirection = STOP;
+	private volatile String topText = "NXT Control Panel";
+	private volatile String bottomText = "Start/Stop: Close Eyes, Toggle Forward/Back: Blink x5, Turn: Rotate Head (Reset Shift+C)";
+
+	// State shown, and the timer showing the requested one (EDT only)
+	private int shownDirection = STOP;
+	private String shownTop = topText;
+	private String shownBottom = bottomText;
+	private Timer refresh = null;
 	
 	// Window and window closed flags
 	private JFrame window = null;
-	private boolean closed = false;
+	private volatile boolean closed = false;
 
 	// UI components
 	private JLabel image = null;
 	private JLabel topLabel = null;
 	private JLabel bottomLabel = null;
 
+	// Direction images, decoded once
+	private final ImageIcon stopIcon = loadIcon("resources/NXT.png");
+	private final ImageIcon forwardIcon = loadIcon("resources/NXT_F.png");
+	private final ImageIcon backwardIcon = loadIcon("resources/NXT_B.png");
+	private final ImageIcon leftIcon = loadIcon("resources/NXT_L.png");
+	private final ImageIcon rightIcon = loadIcon("resources/NXT_R.png");
+
 	/**
 	 * Creates a new NXTControlPanelUI
 	 */
@@ -58,25 +87,70 @@ public class NXTControlPanelUI implements WindowListener {
 		window.getContentPane().add(Box.createVerticalStrut(20));
 
 		// Add the top label
-		topLabel  = new JLabel("NXT Control Panel");
+		topLabel  = new JLabel(topText);
 		topLabel.setFont(new Font("Marker Felt", Font.TRUETYPE_FONT, 30));
 		topLabel.setAlignmentX(JLabel.CENTER_ALIGNMENT);
 		window.getContentPane().add(topLabel);
 		
 		// assign NXT model to 'icon'
-		ImageIcon icon = new ImageIcon(this.getClass().getResource("resources/NXT.png"));
-		//ImageIcon icon = new ImageIcon("resources/NXT.png");
-		image = new JLabel(icon);
+		image = new JLabel(stopIcon);
 		image.setAlignmentX(JLabel.CENTER_ALIGNMENT);
 		window.getContentPane().add(image);
 		
 		// Add the bottom label 
-		bottomLabel = new JLabel("Start/Stop: Close Eyes, Toggle Forward/Back: Blink x5, Turn: Rotate Head (Reset Shift+C)");
+		bottomLabel = new JLabel(bottomText);
 		bottomLabel.setFont(new Font("Marker Felt", Font.TRUETYPE_FONT, 18));
 		bottomLabel.setAlignmentX(JLabel.CENTER_ALIGNMENT);
 		window.getContentPane().add(bottomLabel);
 		
 		window.setVisible(true);
+
+		// Show the requested state at the frame rate
+		refresh = new Timer(1000 / FRAME_RATE, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		});
+		refresh.start();
+	}
+
+	/**
+	 * Helper function that decodes one of the direction images.
+	 */
+	private ImageIcon loadIcon(String name) {
+		return new ImageIcon(this.getClass().getResource(name));
+	}
+
+	/**
+	 * Helper function that shows whatever state has changed since the last
+	 * refresh.  Runs on the EDT.
+	 */
+	private void refresh() {
+		int direction = currDirection;
+		if (direction != shownDirection) {
+			// Set the direction image
+			switch(direction) {
+				case FORWARD: image.setIcon(forwardIcon); break;
+				case BACKWARD: image.setIcon(backwardIcon); break;
+				case LEFT: image.setIcon(leftIcon); break;
+				case RIGHT: image.setIcon(rightIcon); break;
+				case STOP: // Same as default 
+				default: image.setIcon(stopIcon);
+			}
+			shownDirection = direction;
+		}
+
+		String text = topText;
+		if (text != shownTop) {
+			topLabel.setText(text);
+			shownTop = text;
+		}
+		text = bottomText;
+		if (text != shownBottom) {
+			bottomLabel.setText(text);
+			shownBottom = text;
+		}
 	}
 	
 	/**
@@ -87,50 +161,50 @@ public class NXTControlPanelUI implements WindowListener {
 	}
 	
 	/**
-	 * Sets the direction of movement in the UI panel
+	 * Sets the direction of movement in the UI panel (shown at the next refresh)
 	 * 
 	 * @param The constant value for the direction of movement
 	 */
 	public void setDirection(int direction) {
-		// Don't set a direction if we aren't moving
-		if (direction == currDirection) {
-			return;
-		}
-
-		// Set the direction image
-		switch(direction) {
-			case FORWARD: 
-				image.setIcon(new ImageIcon(this.getClass().getResource("resources/NXT_F.png"))); break;
-			case BACKWARD: 
-				image.setIcon(new ImageIcon(this.getClass().getResource("resources/NXT_B.png"))); break;
-			case LEFT: 
-				image.setIcon(new ImageIcon(this.getClass().getResource("resources/NXT_L.png"))); break;
-			case RIGHT: 
-				image.setIcon(new ImageIcon(this.getClass().getResource("resources/NXT_R.png"))); break;
-			case STOP: // Same as default 
-			default: 
-				image.setIcon(new ImageIcon(this.getClass().getResource("resources/NXT.png")));
-		}
-
 		currDirection = direction;
 	}
 	
 	/**
-	 * Sets the text on the UI's bottom label.
+	 * Sets the text on the UI's bottom label (shown at the next refresh).
 	 * 
 	 * @param text The new label text.
 	 */
 	public void setBottomLabel(String text) {
-		bottomLabel.setText(text);
+		bottomText = text;
+	}
+
+	/**
+	 * Gets the text requested for the UI's bottom label.
+	 */
+	public String getBottomLabel() {
+		return bottomText;
 	}
 	
 	/**
-	 * Sets the text on the UI's top label.
+	 * Sets the text on the UI's top label (shown at the next refresh).
 	 * 
 	 * @param text The new label text.
 	 */
 	public void setTopLabel(String text) {
-		topLabel.setText(text);
+		topText = text;
+	}
+	
+	/**
+	 * Adds a view (such as a ScopePanel) below the labels, making the
+	 * window taller to fit it.
+	 * 
+	 * @param view The view to add
+	 */
+	public void addView(JComponent view) {
+		view.setAlignmentX(JComponent.CENTER_ALIGNMENT);
+		window.getContentPane().add(view);
+		window.setSize(window.getWidth(), window.getHeight() + view.getPreferredSize().height);
+		window.validate();
 	}
 	
 	/**
@@ -142,6 +216,18 @@ public class NXTControlPanelUI implements WindowListener {
 		window.addKeyListener(k);
 	}
 	
+	/**
+	 * Closes the window, as if the user had closed it.
+	 */
+	public void close() {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				window.dispose();
+			}
+		});
+	}
+	
 	/**
 	 * Indicates whether or not the window has been closed
 	 * 
@@ -158,6 +244,7 @@ public class NXTControlPanelUI implements WindowListener {
 	 * dispose on the window.  This method sets the close flag to true.
 	 */
 	public void windowClosed(WindowEvent e) {
+		refresh.stop();
 		closed = true;
 	}
 
@@ -0,0 +1,212 @@
+package edu.lafayette.bci;
+
+import edu.lafayette.bci.acquisition.AcquisitionStage;
+import edu.lafayette.bci.dsp.*;
+import edu.lafayette.bci.sigproc.*;
+
+/**
+ * Builds the signal processing chains used by the control panels, so the
+ * panels and the benchmarks run exactly the same stages.
+ */
+public class PanelChains {
+
+	// Electrodes read on each frame, in electrode pipeline channel order
+	public static final String[] ELECTRODES = { "O1", "O2", "AF3", "AF4" };
+
+	// Output channels of the electrode pipeline
+	public static final int OCCIPITAL = 0;
+	public static final int FRONTAL = 1;
+
+	// Bands of the spectral pipeline, in Hz, and their output order
+	public static final double[][] BANDS = { { 4.0, 8.0 }, { 8.0, 13.0 }, { 13.0, 30.0 }, { 8.0, 12.0 } };
+	public static final int THETA = 0;
+	public static final int ALPHA = 1;
+	public static final int BETA = 2;
+	public static final int MU = 3;
+
+	// Chain parameters
+	private static final double HPF_CUTOFF = 0.5; // Cutoff of the DC bias filter, in Hz
+	private static final double[] ALPHA_BAND = { 8.0, 13.0 }; // Alpha band, in Hz
+	private static final double POWER_FREQ = 11.5; // Frequency whose period is the power window, in Hz
+	private static final int MOVING_AVG_WINDOW = 1500; // Number of milliseconds in filter window
+	private static final int BLINK_NUM_THRES = 5; // Number of blinks to trigger a detection
+	private static final double BLINK_TIME_THRES = 2.0; // Time within which blinks must occur (in secs)
+	private static final double SPECTRAL_WINDOW = 1.0; // Length of the band power window, in seconds
+	private static final double SPECTRAL_HOP = 0.125; // Time between band power updates, in seconds
+	private static final double ADAPTIVE_TIME = 60.0; // Time constant of the adaptive thresholds, in seconds
+
+	private PanelChains() {}
+
+	/**
+	 * Creates the electrode pipeline: a high pass filter on every
+	 * electrode to remove the drifting DC bias, then O1/O2 averaged into
+	 * the OCCIPITAL channel and AF3/AF4 into the FRONTAL channel.
+	 * 
+	 * @param capacity The maximum number of frames processed per call
+	 */
+	public static MultiChannelPipeline electrodes(int capacity) {
+		MultiChannelPipeline p = new MultiChannelPipeline(ELECTRODES.length, capacity);
+		p.addStage(new HighPassBank(HPF_CUTOFF));
+		int[][] groups = { { 0, 1 }, { 2, 3 } };
+		p.addStage(new ChannelAverage(groups));
+		return p;
+	}
+
+	/**
+	 * Creates the spectral pipeline: the power of every Emotiv sensor
+	 * (in AcquisitionStage.SENSORS order) in each of the BANDS, all from
+	 * one sliding DFT per sensor.  Output channel s * BANDS.length + b is
+	 * the power of sensor s in band b, in (uV)^2.  Only the benchmarks run
+	 * it; the panels' decisions still use the occipital chain.
+	 * 
+	 * @param samplePeriod The sampling period, in seconds
+	 * @param capacity The maximum number of frames processed per call
+	 */
+	public static MultiChannelPipeline spectral(double samplePeriod, int capacity) {
+		MultiChannelPipeline p = new MultiChannelPipeline(AcquisitionStage.SENSORS.length, capacity);
+		int window = (int) Math.round(SPECTRAL_WINDOW / samplePeriod);
+		int hop = Math.max(1, (int) Math.round(SPECTRAL_HOP / samplePeriod));
+		p.addStage(new BandPowerBank(BANDS, 1 / samplePeriod, window, hop));
+		return p;
+	}
+
+	/**
+	 * Creates one alpha power chain per Emotiv sensor (in
+	 * AcquisitionStage.SENSORS order), for running on a ChannelExecutor:
+	 * DC bias removal, the alpha band filter, then smoothed power.  Only
+	 * the benchmarks run these; the panels use the electrode pipeline.
+	 * 
+	 * @param samplePeriod The sampling period, in seconds
+	 */
+	public static SamplePipeline[] sensorAlpha(double samplePeriod) {
+		SamplePipeline[] chains = new SamplePipeline[AcquisitionStage.SENSORS.length];
+		for (int i = 0; i < chains.length; i++) {
+			SamplePipeline p = new SamplePipeline();
+			p.addFilter(new HighPassStage(HPF_CUTOFF));
+			addAlphaPower(p, samplePeriod);
+			chains[i] = p;
+		}
+		return chains;
+	}
+
+	/**
+	 * Creates the alpha power chain: the part of the occipital chain
+	 * before the threshold, which calibration uses to choose the
+	 * threshold.  Its input is the OCCIPITAL channel of the electrode
+	 * pipeline and its output is smoothed alpha power, in (uV)^2.
+	 * 
+	 * @param samplePeriod The sampling period, in seconds
+	 */
+	public static SamplePipeline alphaPower(double samplePeriod) {
+		SamplePipeline p = new SamplePipeline();
+		addAlphaPower(p, samplePeriod);
+		return p;
+	}
+
+	/**
+	 * Helper function that adds the alpha band filter and smoothed power.
+	 */
+	private static void addAlphaPower(SamplePipeline p, double samplePeriod) {
+		// Butterworth filter between 8-13Hz (alpha band)
+		p.addFilter(new ButterworthStage(4, ALPHA_BAND, 1 / samplePeriod, ButterworthDesign.BPF));
+
+		// Power calculation
+		p.addFilter(new PowerStage(1 / POWER_FREQ, samplePeriod));
+
+		// Rolling average filter to smooth the power
+		p.addFilter(new MovingAverageStage((int) (MOVING_AVG_WINDOW / (samplePeriod * 1000.0))));
+	}
+
+	/**
+	 * Creates the occipital (alpha) chain.  Its output is 1 on the rising
+	 * edge of alpha power crossing the threshold and -1 on the falling edge.
+	 * 
+	 * @param threshold The power threshold, in (uV)^2
+	 * @param samplePeriod The sampling period, in seconds
+	 */
+	public static SampleChannel occipital(double threshold, double samplePeriod) {
+		return occipital(threshold, samplePeriod, false);
+	}
+
+	/**
+	 * Creates the occipital (alpha) chain, optionally with a threshold
+	 * that follows the drift of the alpha power at rest (see
+	 * AdaptiveThresholdStage).
+	 * 
+	 * @param threshold The (calibrated) power threshold, in (uV)^2
+	 * @param samplePeriod The sampling period, in seconds
+	 * @param adaptive True to adapt the threshold
+	 */
+	public static SampleChannel occipital(double threshold, double samplePeriod, boolean adaptive) {
+		SampleChannel c = new SampleChannel(5);
+		addAlphaPower(c.getPipeline(), samplePeriod);
+
+		// Convert to digital signal using level threshold
+		c.addFilter(adaptive
+				? new AdaptiveThresholdStage(threshold, ADAPTIVE_TIME, samplePeriod)
+				: new ThresholdStage(threshold));
+
+		// Perform rising and falling edge detection
+		c.addFilter(new EdgeDetectStage());
+		return c;
+	}
+
+	/**
+	 * Creates the frontal (blink) chain.  Its output is 1 when enough
+	 * blinks occur within the blink time window.
+	 * 
+	 * @param threshold The blink detection threshold, in uV
+	 */
+	public static SampleChannel frontal(double threshold) {
+		return frontal(threshold, 0.0, false);
+	}
+
+	/**
+	 * Creates the frontal (blink) chain, optionally with a threshold that
+	 * follows the drift of the frontal noise floor (see
+	 * AdaptiveThresholdStage).
+	 * 
+	 * @param threshold The (calibrated) blink detection threshold, in uV
+	 * @param samplePeriod The sampling period, in seconds (only used when adaptive)
+	 * @param adaptive True to adapt the threshold
+	 */
+	public static SampleChannel frontal(double threshold, double samplePeriod, boolean adaptive) {
+		SampleChannel c = new SampleChannel(5);
+
+		// Blink detection threshold
+		c.addFilter(adaptive
+				? new AdaptiveThresholdStage(threshold, ADAPTIVE_TIME, samplePeriod)
+				: new ThresholdStage(threshold));
+
+		// Rising edge detection
+		c.addFilter(new EdgeDetectStage());
+
+		// Pulse counter
+		c.addFilter(new PulseCountStage(BLINK_NUM_THRES, BLINK_TIME_THRES));
+		return c;
+	}
+
+	/**
+	 * Creates the gyro chain around a gyro detector.
+	 * 
+	 * @param detector The detector, kept by the caller for recalibration
+	 */
+	public static SampleChannel gyro(GyroDetect detector) {
+		SampleChannel c = new SampleChannel(2);
+		c.addFilter(new AlgorithmStage(detector));
+		return c;
+	}
+
+	/**
+	 * Creates the gyro chain around a gyro detector that tracks its
+	 * center.
+	 * 
+	 * @param detector The detector, kept by the caller for recentering
+	 */
+	public static SampleChannel gyro(AdaptiveGyroStage detector) {
+		SampleChannel c = new SampleChannel(2);
+		c.addFilter(detector);
+		return c;
+	}
+
+}
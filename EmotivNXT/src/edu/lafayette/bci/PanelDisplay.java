@@ -0,0 +1,46 @@
+package edu.lafayette.bci;
+
+/**
+ * What the control panel shows its operator: the direction the device
+ * is moving in and a status line.  NXTControlPanelUI shows them in a
+ * window; HeadlessDisplay keeps them for the telemetry server (see
+ * TelemetryServer) when there is no screen.  Implementations must accept
+ * calls from any thread.
+ */
+public interface PanelDisplay {
+
+	/**
+	 * Sets the direction of movement.
+	 * 
+	 * @param direction One of the NXTControlPanelUI direction constants
+	 */
+	public void setDirection(int direction);
+
+	/**
+	 * Gets the direction of movement.
+	 */
+	public int getDirection();
+
+	/**
+	 * Sets the status line.
+	 * 
+	 * @param text The new status text
+	 */
+	public void setBottomLabel(String text);
+
+	/**
+	 * Gets the status line.
+	 */
+	public String getBottomLabel();
+
+	/**
+	 * Ends the session: the panel stops once it sees the display closed.
+	 */
+	public void close();
+
+	/**
+	 * Indicates whether or not the display has been closed.
+	 */
+	public boolean isWindowClosed();
+
+}
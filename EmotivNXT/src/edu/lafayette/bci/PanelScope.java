@@ -0,0 +1,100 @@
+package edu.lafayette.bci;
+
+import java.awt.Color;
+
+import edu.lafayette.bci.scope.ScopePanel;
+import edu.lafayette.bci.scope.ScopeTrace;
+
+/**
+ * The live scope of the control panel (see ScopePanel): the raw
+ * electrodes, alpha power and the frontal signal against their
+ * thresholds, and the gyro position against its threshold.  The add
+ * methods are called on the processing thread for every sample.
+ */
+public class PanelScope {
+
+	// History shown by default
+	public static final double HISTORY = 120.0; // In seconds
+
+	// Trace colors
+	private static final Color[] ELECTRODE_COLORS = {
+		new Color(80, 200, 255), new Color(80, 120, 255), new Color(255, 180, 60), new Color(255, 120, 60) };
+	private static final Color SIGNAL = new Color(90, 230, 90);
+	private static final Color THRESHOLD = new Color(230, 60, 60);
+	private static final Color GYRO = new Color(240, 230, 80);
+
+	// The scope and its traces
+	private final ScopePanel panel;
+	private final ScopeTrace[] electrodes = new ScopeTrace[PanelChains.ELECTRODES.length];
+	private final ScopeTrace power;
+	private final ScopeTrace occipitalThreshold;
+	private final ScopeTrace frontal;
+	private final ScopeTrace blinkThreshold;
+	private final ScopeTrace gyro;
+
+	/**
+	 * Creates a new PanelScope.
+	 * 
+	 * @param history The length of history shown, in seconds
+	 * @param samplePeriod The EEG sampling period, in seconds
+	 * @param gyroPeriod The gyro sampling period, in seconds
+	 * @param gyroThreshold The gyro position threshold
+	 */
+	public PanelScope(double history, double samplePeriod, double gyroPeriod, double gyroThreshold) {
+		panel = new ScopePanel(history);
+
+		int lane = panel.addLane("Electrodes (uV, centered)", true);
+		for (int i = 0; i < electrodes.length; i++) {
+			electrodes[i] = panel.addTrace(lane, PanelChains.ELECTRODES[i], ELECTRODE_COLORS[i], samplePeriod);
+		}
+
+		lane = panel.addLane("Alpha power (uV^2)", false);
+		power = panel.addTrace(lane, "power", SIGNAL, samplePeriod);
+		occipitalThreshold = panel.addTrace(lane, "threshold", THRESHOLD, samplePeriod);
+
+		lane = panel.addLane("Frontal (uV)", false);
+		frontal = panel.addTrace(lane, "AF3/AF4", SIGNAL, samplePeriod);
+		blinkThreshold = panel.addTrace(lane, "threshold", THRESHOLD, samplePeriod);
+
+		lane = panel.addLane("Gyro position", false);
+		gyro = panel.addTrace(lane, "position", GYRO, gyroPeriod);
+		panel.addLevel(lane, gyroThreshold, THRESHOLD);
+		panel.addLevel(lane, -gyroThreshold, THRESHOLD);
+	}
+
+	/**
+	 * Gets the scope, to add to a window.
+	 */
+	public ScopePanel getPanel() {
+		return panel;
+	}
+
+	/**
+	 * Adds an EEG sample.
+	 * 
+	 * @param frame The raw electrodes, in PanelChains.ELECTRODES order, in uV
+	 * @param alphaPower The smoothed alpha power, in (uV)^2
+	 * @param occipital The occipital power threshold, in (uV)^2
+	 * @param frontalValue The frontal signal, in uV
+	 * @param blink The blink detection threshold, in uV
+	 */
+	public void addEeg(double[] frame, double alphaPower, double occipital, double frontalValue, double blink) {
+		for (int i = 0; i < electrodes.length; i++) {
+			electrodes[i].add(frame[i]);
+		}
+		power.add(alphaPower);
+		occipitalThreshold.add(occipital);
+		frontal.add(frontalValue);
+		blinkThreshold.add(blink);
+	}
+
+	/**
+	 * Adds a gyro sample.
+	 * 
+	 * @param position The gyro position
+	 */
+	public void addGyro(double position) {
+		gyro.add(position);
+	}
+
+}
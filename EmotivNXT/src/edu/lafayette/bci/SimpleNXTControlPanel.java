@@ -6,8 +6,13 @@ package edu.lafayette.bci;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
+import edu.lafayette.bci.acquisition.AcquisitionStage;
+import edu.lafayette.bci.acquisition.FrameSource;
+import edu.lafayette.bci.acquisition.FrameSources;
+import edu.lafayette.bci.acquisition.RawFrameObserver;
+import edu.lafayette.bci.acquisition.SampleClock;
+import edu.lafayette.bci.acquisition.TimeBase;
 import edu.lafayette.bci.devices.Emotiv;
-import edu.lafayette.bci.devices.EmotivObserver;
 import edu.lafayette.bci.sigproc.*;
 import edu.lafayette.bci.utils.Watchdog;
 import edu.lafayette.bci.utils.WatchdogObserver;
@@ -17,11 +22,11 @@ import edu.lafayette.bci.nxt.NXTControl;
  * @author Brandon T. Smith
  *
  */
-public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
+public class SimpleNXTControlPanel implements RawFrameObserver, KeyListener,
 		WatchdogObserver {
 
 	// End devices
-	private Emotiv emotiv = null;
+	private FrameSource source = null;
 	private NXTControl nxt = null;
 	private NXTControlPanelUI ui = null;
 
@@ -29,11 +34,20 @@ public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
 	private Watchdog wd = null;
 	private final static int CONNECTION_TIMEOUT = 1000; // Connection loss timeout (in milliseconds)
 	
-	// data processing pipelines and pre-average HPF
-	private Pipeline occipital = null;
-	private Pipeline frontal = null;
-	private Pipeline gyroX = null;
-	private HighPassFilter hpf = new HighPassFilter(0.5);
+	// data processing pipelines and pre-average HPFs (one per electrode)
+	private Pipeline occipital = new Pipeline();
+	private Pipeline frontal = new Pipeline();
+	private Pipeline gyroX = new Pipeline();
+	private HighPassFilter hpfO1 = new HighPassFilter(0.5);
+	private HighPassFilter hpfO2 = new HighPassFilter(0.5);
+	private HighPassFilter hpfAF3 = new HighPassFilter(0.5);
+	private HighPassFilter hpfAF4 = new HighPassFilter(0.5);
+
+	// Electrode positions in a frame
+	private static final int O1 = AcquisitionStage.sensorIndex("O1");
+	private static final int O2 = AcquisitionStage.sensorIndex("O2");
+	private static final int AF3 = AcquisitionStage.sensorIndex("AF3");
+	private static final int AF4 = AcquisitionStage.sensorIndex("AF4");
 	
 	// Threshold fields
 	private final double BLINK_THRES; // Blink detection threshold, in uV (User-specific)
@@ -43,9 +57,10 @@ public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
 	private static final double GYROX_POS_THRES = 2000.0; // Position threshold
 	private static final double GYROX_POS_MAX = 10000.0; // Max value for normalizing gyro position
 	
-	// time values for processing
-	private long gyroPrevTime = 0;
-	private long sensPrevTime = 0;
+	// sample clocks for processing (lost samples are not interpolated here)
+	private final TimeBase timeBase = new TimeBase();
+	private final SampleClock sensClock = new SampleClock(timeBase, Emotiv.SAMPLE_RATE_IN_MS / 1000.0);
+	private final SampleClock gyroClock = new SampleClock(timeBase, Emotiv.GYRO_SAMPLE_RATE_IN_MS / 1000.0);
 	
 	// state variables for controlled device
 	private static final double NXT_SPEED = 0.5;
@@ -105,8 +120,9 @@ public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
 		wd = new Watchdog();
 		wd.setTimeout(CONNECTION_TIMEOUT);
 		wd.addObserver(this);
-		emotiv = new Emotiv();
-		emotiv.addObserver(this);
+		source = FrameSources.fromProperties();
+		source.addObserver(this);
+		source.start();
 		
 		// TODO: wait until UI is closed
 		while (!ui.isWindowClosed()) {
@@ -115,7 +131,7 @@ public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
 		
 		// terminate connections
 		wd.finish();
-		emotiv.close();
+		source.close();
 		nxt.stop();
 	}
 	
@@ -171,46 +187,41 @@ public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
 	}
 
 	/* (non-Javadoc)
-	 * @see edu.lafayette.bci.devices.EmotivObserver#batteryChanged(edu.lafayette.bci.devices.Emotiv)
+	 * @see edu.lafayette.bci.acquisition.RawFrameObserver#batteryChanged(long, int)
 	 */
 	@Override
-	public void batteryChanged(Emotiv e) {
+	public void batteryChanged(long timestamp, int level) {
 		// TODO Auto-generated method stub
 
 	}
 
 	/* (non-Javadoc)
-	 * @see edu.lafayette.bci.devices.EmotivObserver#qualityChanged(edu.lafayette.bci.devices.Emotiv, java.lang.String, int)
+	 * @see edu.lafayette.bci.acquisition.RawFrameObserver#qualityChanged(long, java.lang.String, int)
 	 */
 	@Override
-	public void qualityChanged(Emotiv e, String sensor, int quality) {
+	public void qualityChanged(long timestamp, String sensor, int quality) {
 		// TODO Auto-generated method stub
 
 	}
 
 	/* (non-Javadoc)
-	 * @see edu.lafayette.bci.devices.EmotivObserver#sensorsChanged(edu.lafayette.bci.devices.Emotiv)
+	 * @see edu.lafayette.bci.acquisition.RawFrameObserver#sensorsChanged(long, double[])
 	 */
 	@Override
-	public void sensorsChanged(Emotiv e) {
-		// Initialize time
-		if (sensPrevTime == 0) {
-			sensPrevTime = System.currentTimeMillis();
-		}
-
+	public void sensorsChanged(long timestamp, double[] sensors) {
 		// calculate time (in seconds) from start
-		long currTime = System.currentTimeMillis();
-		double time = (currTime - sensPrevTime) / 1000.0;
+		sensClock.tick(timestamp);
+		double time = sensClock.time();
 		
 		// Average occipital points, then process
-		Point o1 = hpf.process( new Point(time, e.getSensorValue("O1")) );
-		Point o2 = hpf.process( new Point(time, e.getSensorValue("O2")) );
+		Point o1 = hpfO1.process( new Point(time, sensors[O1]) );
+		Point o2 = hpfO2.process( new Point(time, sensors[O2]) );
 		Point ppO = new Point(o1.getX(), (o1.getY() + o2.getY()) / 2.0 );
 		Point occip = occipital.pushPoint(ppO);
 		
 		// Average frontal points, then process
-		Point af3 = hpf.process( new Point(time, e.getSensorValue("AF3")) );
-		Point af4 = hpf.process( new Point(time, e.getSensorValue("AF4")) );
+		Point af3 = hpfAF3.process( new Point(time, sensors[AF3]) );
+		Point af4 = hpfAF4.process( new Point(time, sensors[AF4]) );
 		Point ppAF = new Point(af3.getX(), (af3.getY() + af4.getY()) / 2.0 );
 		Point front = frontal.pushPoint(ppAF);
 		
@@ -230,21 +241,16 @@ public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
 	}
 
 	/* (non-Javadoc)
-	 * @see edu.lafayette.bci.devices.EmotivObserver#gyrosChanged(edu.lafayette.bci.devices.Emotiv)
+	 * @see edu.lafayette.bci.acquisition.RawFrameObserver#gyrosChanged(long, double[])
 	 */
 	@Override
-	public void gyrosChanged(Emotiv e) {
-		// Initialize time
-		if (gyroPrevTime == 0) {
-			gyroPrevTime = System.currentTimeMillis();
-		}
-
+	public void gyrosChanged(long timestamp, double[] gyros) {
 		// calculate time (in seconds) from start
-		long currTime = System.currentTimeMillis();
-		double time = (currTime - gyroPrevTime) / 1000.0;
+		gyroClock.tick(timestamp);
+		double time = gyroClock.time();
 		
 		// create and process new gyroscope point
-		Point p = gyroX.pushPoint( new Point(time, e.getGyroValue("x")) );
+		Point p = gyroX.pushPoint( new Point(time, gyros[0]) );
 		
 		// Interpret result
 		double turnResult = p.getY();
@@ -259,4 +265,18 @@ public class SimpleNXTControlPanel implements EmotivObserver, KeyListener,
 		
 	}
 
+	/**
+	 * Runs the panel with the blink and occipital thresholds given on the
+	 * command line.
+	 * 
+	 * @param args The blink threshold (in uV) and occipital threshold (in uV^2)
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: SimpleNXTControlPanel <blink threshold> <occipital threshold>");
+			return;
+		}
+		new SimpleNXTControlPanel(Double.parseDouble(args[0]), Double.parseDouble(args[1]));
+	}
+
 }
@@ -0,0 +1,78 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * Observes a FrameSource and copies every raw frame into a FrameQueue.
+ * This is the only work done on the source's thread; all filtering,
+ * decision logic and device commands run on the thread that drains the
+ * queue (see ProcessingThread).
+ */
+public class AcquisitionStage implements RawFrameObserver {
+
+	// Emotiv sensor and gyro names, in frame order
+	public static final String[] SENSORS = { "AF3", "F7", "F3", "FC5", "T7", "P7", "O1",
+			"O2", "P8", "T8", "FC6", "F4", "F8", "AF4" };
+	public static final String[] GYROS = { "x", "y" };
+
+	// Number of values needed to hold any frame
+	public static final int FRAME_WIDTH = Math.max(SENSORS.length, GYROS.length);
+
+	// Destination queue and scratch frame for status events
+	private final FrameQueue queue;
+	private final double[] status = new double[2];
+
+	/**
+	 * Creates a new AcquisitionStage.
+	 * 
+	 * @param queue The queue to copy frames into
+	 */
+	public AcquisitionStage(FrameQueue queue) {
+		if (queue.width() < FRAME_WIDTH) {
+			throw new IllegalArgumentException("Queue width must be at least " + FRAME_WIDTH);
+		}
+		this.queue = queue;
+	}
+
+	/**
+	 * Gets the position of a sensor in an EEG frame.
+	 * 
+	 * @param name The Emotiv sensor name, such as "O1"
+	 * @return The index of the sensor
+	 */
+	public static int sensorIndex(String name) {
+		for (int i = 0; i < SENSORS.length; i++) {
+			if (SENSORS[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown sensor: " + name);
+	}
+
+	@Override
+	public void sensorsChanged(long timestamp, double[] sensors) {
+		queue.offer(RawFrame.EEG, timestamp, sensors, SENSORS.length);
+	}
+
+	@Override
+	public void gyrosChanged(long timestamp, double[] gyros) {
+		queue.offer(RawFrame.GYRO, timestamp, gyros, GYROS.length);
+	}
+
+	@Override
+	public void qualityChanged(long timestamp, String sensor, int quality) {
+		for (int i = 0; i < SENSORS.length; i++) {
+			if (SENSORS[i].equals(sensor)) {
+				status[0] = i;
+				status[1] = quality;
+				queue.offer(RawFrame.QUALITY, timestamp, status, 2);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void batteryChanged(long timestamp, int level) {
+		status[0] = level;
+		queue.offer(RawFrame.BATTERY, timestamp, status, 1);
+	}
+
+}
@@ -0,0 +1,21 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * What a FrameQueue does when the producer offers a frame and the queue
+ * is full.
+ */
+public enum Backpressure {
+
+	/**
+	 * Discard the oldest queued frame to make room.  The producer never
+	 * waits, so acquisition always keeps up with the headset.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Wait for the consumer to free a slot.  No frames are lost, but a
+	 * slow consumer stalls acquisition.
+	 */
+	BLOCK
+
+}
@@ -0,0 +1,90 @@
+package edu.lafayette.bci.acquisition;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.lafayette.bci.devices.Emotiv;
+import edu.lafayette.bci.devices.EmotivObserver;
+
+/**
+ * FrameSource for the live Emotiv headset.  It reads the sensor and gyro
+ * values out of the Emotiv object on the Emotiv thread and passes them to
+ * its observers.  The Emotiv library does not hand the battery level to
+ * its observers, so battery changes are not forwarded.
+ */
+public class EmotivSource implements FrameSource, EmotivObserver {
+
+	// The headset and the observers of this source
+	private final Emotiv emotiv;
+	private final CopyOnWriteArrayList<RawFrameObserver> observers = new CopyOnWriteArrayList<RawFrameObserver>();
+
+	// Scratch frames
+	private final double[] sensors = new double[AcquisitionStage.SENSORS.length];
+	private final double[] gyros = new double[AcquisitionStage.GYROS.length];
+
+	/**
+	 * Creates a new EmotivSource, connecting to the headset.
+	 */
+	public EmotivSource() {
+		emotiv = new Emotiv();
+		emotiv.addObserver(this);
+	}
+
+	@Override
+	public void addObserver(RawFrameObserver o) {
+		observers.add(o);
+	}
+
+	@Override
+	public void removeObserver(RawFrameObserver o) {
+		observers.remove(o);
+	}
+
+	/* (non-Javadoc)
+	 * The headset delivers frames as soon as it is connected.
+	 * @see FrameSource#start()
+	 */
+	@Override
+	public void start() {}
+
+	@Override
+	public void close() {
+		emotiv.close();
+	}
+
+	@Override
+	public void sensorsChanged(Emotiv e) {
+		long now = System.nanoTime();
+		for (int i = 0; i < sensors.length; i++) {
+			sensors[i] = e.getSensorValue(AcquisitionStage.SENSORS[i]);
+		}
+		for (RawFrameObserver o : observers) {
+			o.sensorsChanged(now, sensors);
+		}
+	}
+
+	@Override
+	public void gyrosChanged(Emotiv e) {
+		long now = System.nanoTime();
+		for (int i = 0; i < gyros.length; i++) {
+			gyros[i] = e.getGyroValue(AcquisitionStage.GYROS[i]);
+		}
+		for (RawFrameObserver o : observers) {
+			o.gyrosChanged(now, gyros);
+		}
+	}
+
+	@Override
+	public void qualityChanged(Emotiv e, String sensor, int quality) {
+		long now = System.nanoTime();
+		for (RawFrameObserver o : observers) {
+			o.qualityChanged(now, sensor, quality);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see EmotivObserver#batteryChanged(Emotiv)
+	 */
+	@Override
+	public void batteryChanged(Emotiv e) {}
+
+}
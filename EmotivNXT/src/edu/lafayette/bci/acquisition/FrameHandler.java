@@ -0,0 +1,43 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * Receives raw frames on the processing thread.  This is the decoupled
+ * counterpart of RawFrameObserver: the values have already been copied
+ * out of the source, so a slow handler no longer stalls acquisition.
+ */
+public interface FrameHandler {
+
+	/**
+	 * Called for every EEG frame.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the frame was acquired
+	 * @param sensors The sensor values, in AcquisitionStage.SENSORS order
+	 */
+	public void eegFrame(long timestamp, double[] sensors);
+
+	/**
+	 * Called for every gyro frame.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the frame was acquired
+	 * @param gyros The gyro values, in AcquisitionStage.GYROS order
+	 */
+	public void gyroFrame(long timestamp, double[] gyros);
+
+	/**
+	 * Called when the contact quality of a sensor changes.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the change was seen
+	 * @param sensor The index of the sensor in AcquisitionStage.SENSORS
+	 * @param quality The new contact quality
+	 */
+	public void qualityChanged(long timestamp, int sensor, int quality);
+
+	/**
+	 * Called when the battery level changes.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the change was seen
+	 * @param level The new battery level
+	 */
+	public void batteryChanged(long timestamp, int level);
+
+}
@@ -0,0 +1,272 @@
+package edu.lafayette.bci.acquisition;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free single-producer/single-consumer ring of raw frames.  All
+ * slots are preallocated as flat primitive arrays and frames are copied
+ * in and out, so neither side allocates.  Exactly one thread may call
+ * offer() and exactly one (other) thread may call poll() or take().
+ * 
+ * When the queue is full the producer either discards the oldest frame
+ * or waits, depending on the Backpressure policy.  Dropping the oldest
+ * frame is done by advancing the consumer index with a CAS; the consumer
+ * also claims frames with a CAS, so a frame being overwritten while it
+ * is copied out is detected and skipped.
+ */
+public class FrameQueue {
+
+	// How long a waiting thread parks before re-checking the queue
+	private static final long PARK_NANOS = 1000000;
+
+	// Layout
+	private final int capacity;
+	private final int mask;
+	private final int width;
+	private final Backpressure policy;
+
+	// Slot storage
+	private final double[] values;
+	private final long[] timestamps;
+	private final int[] kinds;
+	private final int[] counts;
+
+	// Next frame to consume and next frame to publish
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong tail = new AtomicLong(0);
+
+	// Parking state
+	private volatile Thread producer = null;
+	private volatile Thread consumer = null;
+	private volatile boolean producerWaiting = false;
+	private volatile boolean consumerWaiting = false;
+	private volatile boolean closed = false;
+
+	// Counters (each written by a single thread)
+	private volatile long offered = 0;
+	private volatile long overruns = 0;
+	private volatile long waits = 0;
+	private volatile long consumed = 0;
+
+	/**
+	 * Creates a new FrameQueue.
+	 * 
+	 * @param capacity The number of frames the queue holds, rounded up to a power of two
+	 * @param width The maximum number of values in a frame
+	 * @param policy What to do when the queue is full
+	 */
+	public FrameQueue(int capacity, int width, Backpressure policy) {
+		if (capacity < 2 || width < 1) {
+			throw new IllegalArgumentException("Queue needs a capacity of at least 2 and a width of at least 1");
+		}
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.capacity = size;
+		this.mask = size - 1;
+		this.width = width;
+		this.policy = policy;
+		values = new double[size * width];
+		timestamps = new long[size];
+		kinds = new int[size];
+		counts = new int[size];
+	}
+
+	/**
+	 * Copies a frame into the queue.  Called by the producer thread only.
+	 * 
+	 * @param kind The kind of frame, see RawFrame
+	 * @param timestamp The System.nanoTime() at which the frame was acquired
+	 * @param src The frame values
+	 * @param count The number of values to copy, at most the queue width
+	 * @return True if the frame was queued, false if the queue was closed
+	 */
+	public boolean offer(int kind, long timestamp, double[] src, int count) {
+		if (count > width) {
+			throw new IllegalArgumentException("Frame of " + count + " values exceeds queue width " + width);
+		}
+		long t = tail.get();
+
+		// Make room if the queue is full
+		while (t - head.get() >= capacity) {
+			if (closed) {
+				return false;
+			}
+			if (policy == Backpressure.DROP_OLDEST) {
+				long h = head.get();
+				if (t - h >= capacity && head.compareAndSet(h, h + 1)) {
+					overruns++;
+				}
+			} else {
+				waits++;
+				producer = Thread.currentThread();
+				producerWaiting = true;
+				if (t - head.get() >= capacity) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				producerWaiting = false;
+			}
+		}
+
+		// Copy the frame into its slot, then publish it
+		int slot = (int) (t & mask);
+		System.arraycopy(src, 0, values, slot * width, count);
+		timestamps[slot] = timestamp;
+		kinds[slot] = kind;
+		counts[slot] = count;
+		tail.set(t + 1);
+		offered++;
+
+		if (consumerWaiting) {
+			LockSupport.unpark(consumer);
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the oldest frame out of the queue without waiting.  Called
+	 * by the consumer thread only.
+	 * 
+	 * @param dest The frame to copy into, at least as wide as the queue
+	 * @return True if a frame was copied, false if the queue was empty
+	 */
+	public boolean poll(RawFrame dest) {
+		while (true) {
+			long h = head.get();
+			if (h >= tail.get()) {
+				return false;
+			}
+
+			int slot = (int) (h & mask);
+			int count = counts[slot];
+			System.arraycopy(values, slot * width, dest.getValues(), 0, count);
+			dest.set(kinds[slot], timestamps[slot], count);
+
+			// If the producer dropped this frame while we copied it, try the next one
+			if (head.compareAndSet(h, h + 1)) {
+				consumed++;
+				if (producerWaiting) {
+					LockSupport.unpark(producer);
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Copies the oldest frame out of the queue, waiting for one to
+	 * arrive if the queue is empty.  Called by the consumer thread only.
+	 * 
+	 * @param dest The frame to copy into, at least as wide as the queue
+	 * @return True if a frame was copied, false if the queue was closed
+	 *         or the thread was interrupted
+	 */
+	public boolean take(RawFrame dest) {
+		consumer = Thread.currentThread();
+		while (!closed) {
+			if (poll(dest)) {
+				return true;
+			}
+			consumerWaiting = true;
+			if (head.get() >= tail.get()) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			consumerWaiting = false;
+			if (Thread.interrupted()) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copies the oldest frame out of the queue, waiting at most a given
+	 * time for one to arrive if the queue is empty.  Called by the
+	 * consumer thread only.
+	 * 
+	 * @param dest The frame to copy into, at least as wide as the queue
+	 * @param timeout The longest time to wait, in nanoseconds
+	 * @return True if a frame was copied, false if none arrived in time,
+	 *         the queue was closed or the thread was interrupted
+	 */
+	public boolean take(RawFrame dest, long timeout) {
+		consumer = Thread.currentThread();
+		long deadline = System.nanoTime() + timeout;
+		while (!closed) {
+			if (poll(dest)) {
+				return true;
+			}
+			long wait = deadline - System.nanoTime();
+			if (wait <= 0) {
+				return false;
+			}
+			consumerWaiting = true;
+			if (head.get() >= tail.get()) {
+				LockSupport.parkNanos(this, Math.min(wait, PARK_NANOS));
+			}
+			consumerWaiting = false;
+			if (Thread.interrupted()) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the queue, releasing any thread waiting in offer() or take().
+	 */
+	public void close() {
+		closed = true;
+		LockSupport.unpark(producer);
+		LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Gets the number of frames currently queued.
+	 */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head.get());
+	}
+
+	/**
+	 * Gets the number of frames the queue holds.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the maximum number of values in a frame.
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * Gets the number of frames offered to the queue.
+	 */
+	public long getOffered() {
+		return offered;
+	}
+
+	/**
+	 * Gets the number of frames discarded because the queue was full.
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * Gets the number of times the producer had to wait for a free slot.
+	 */
+	public long getWaits() {
+		return waits;
+	}
+
+	/**
+	 * Gets the number of frames taken out of the queue.
+	 */
+	public long getConsumed() {
+		return consumed;
+	}
+
+}
@@ -0,0 +1,35 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * A source of raw headset frames: the live Emotiv headset or a recorded
+ * session being replayed.
+ */
+public interface FrameSource {
+
+	/**
+	 * Adds an observer that will receive every frame.  Observers should
+	 * be added before the source starts delivering frames.
+	 * 
+	 * @param o The observer
+	 */
+	public void addObserver(RawFrameObserver o);
+
+	/**
+	 * Removes an observer, so a source can be handed from one consumer
+	 * (such as calibration) to the next.
+	 * 
+	 * @param o The observer
+	 */
+	public void removeObserver(RawFrameObserver o);
+
+	/**
+	 * Starts delivering frames.  Calling it again has no effect.
+	 */
+	public void start();
+
+	/**
+	 * Stops delivering frames and releases the source.
+	 */
+	public void close();
+
+}
@@ -0,0 +1,44 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * Creates the FrameSource selected by system properties, so the control
+ * panels can run from a recording instead of the headset.
+ * <ul>
+ * <li>bci.replay: path of a recording to replay (see ReplayDevice); if
+ * not set, the live Emotiv headset is used</li>
+ * <li>bci.replay.speed: replay speed, 1 for real time (the default),
+ * larger to accelerate, 0 for as fast as possible</li>
+ * <li>bci.replay.loop: true to replay the recording repeatedly</li>
+ * </ul>
+ */
+public class FrameSources {
+
+	// System properties
+	public static final String REPLAY_PROPERTY = "bci.replay";
+	public static final String SPEED_PROPERTY = "bci.replay.speed";
+	public static final String LOOP_PROPERTY = "bci.replay.loop";
+
+	private FrameSources() {}
+
+	/**
+	 * Indicates whether a replay has been requested.
+	 */
+	public static boolean isReplay() {
+		return System.getProperty(REPLAY_PROPERTY) != null;
+	}
+
+	/**
+	 * Creates the selected source.  It is returned unstarted so observers
+	 * can be added first; call start() on it.
+	 */
+	public static FrameSource fromProperties() {
+		String path = System.getProperty(REPLAY_PROPERTY);
+		if (path == null) {
+			return new EmotivSource();
+		}
+		double speed = Double.parseDouble(System.getProperty(SPEED_PROPERTY, "1"));
+		boolean loop = Boolean.getBoolean(LOOP_PROPERTY);
+		return new ReplayDevice(path, speed, loop);
+	}
+
+}
@@ -0,0 +1,102 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * Drains a FrameQueue and hands each frame to a FrameHandler.  This is
+ * the single consumer of the queue; the handler therefore always runs on
+ * this thread and never on the Emotiv thread.  An optional task (such as
+ * a DecisionEngine's event loop) runs on this thread too, between frames
+ * and at least every TASK_PERIOD while no frames arrive.
+ */
+public class ProcessingThread extends Thread {
+
+	// Longest time the task waits while no frames arrive
+	public static final long TASK_PERIOD = 1000000; // In nanoseconds
+
+	// Longest time finish() waits for the frame in progress
+	private static final long JOIN_TIMEOUT = 2000; // In milliseconds
+
+	// Source queue, handler, task and reusable frame
+	private final FrameQueue queue;
+	private final FrameHandler handler;
+	private final Runnable task;
+	private final RawFrame frame;
+
+	// Set when the thread should stop
+	private volatile boolean finished = false;
+
+	/**
+	 * Creates a new ProcessingThread.
+	 * 
+	 * @param queue The queue to drain
+	 * @param handler The handler to pass frames to
+	 */
+	public ProcessingThread(FrameQueue queue, FrameHandler handler) {
+		this(queue, handler, null);
+	}
+
+	/**
+	 * Creates a new ProcessingThread that also runs a task.
+	 * 
+	 * @param queue The queue to drain
+	 * @param handler The handler to pass frames to
+	 * @param task The task to run between frames, or null for none
+	 */
+	public ProcessingThread(FrameQueue queue, FrameHandler handler, Runnable task) {
+		super("Frame processing");
+		this.queue = queue;
+		this.handler = handler;
+		this.task = task;
+		frame = new RawFrame(queue.width());
+		setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		while (!finished) {
+			if (task != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				if (!queue.take(frame, TASK_PERIOD)) {
+					continue;
+				}
+			} else if (!queue.take(frame)) {
+				continue;
+			}
+			try {
+				if (frame.getKind() == RawFrame.EEG) {
+					handler.eegFrame(frame.getTimestamp(), frame.getValues());
+				} else if (frame.getKind() == RawFrame.GYRO) {
+					handler.gyroFrame(frame.getTimestamp(), frame.getValues());
+				} else if (frame.getKind() == RawFrame.QUALITY) {
+					double[] v = frame.getValues();
+					handler.qualityChanged(frame.getTimestamp(), (int) v[0], (int) v[1]);
+				} else if (frame.getKind() == RawFrame.BATTERY) {
+					handler.batteryChanged(frame.getTimestamp(), (int) frame.getValues()[0]);
+				}
+			} catch (RuntimeException e) {
+				// Keep processing, a single bad frame must not stop the chair from responding
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Stops the thread and closes its queue, then waits (at most
+	 * JOIN_TIMEOUT) for the frame in progress to be handled, so the
+	 * handler's state can be read safely once this returns.
+	 */
+	public void finish() {
+		finished = true;
+		queue.close();
+		if (Thread.currentThread() != this) {
+			try { join(JOIN_TIMEOUT); } catch (InterruptedException e) {}
+			if (isAlive()) {
+				System.err.println(getName() + " did not stop within " + JOIN_TIMEOUT + " ms");
+			}
+		}
+	}
+
+}
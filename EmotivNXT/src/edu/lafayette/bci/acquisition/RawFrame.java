@@ -0,0 +1,68 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * A single raw frame read from the headset.  Frames are copied in and
+ * out of a FrameQueue, so a consumer normally keeps one RawFrame and
+ * reuses it for every poll.
+ */
+public class RawFrame {
+
+	// Frame kinds
+	public static final int EEG = 0;
+	public static final int GYRO = 1;
+	public static final int QUALITY = 2; // Values: sensor index, quality
+	public static final int BATTERY = 3; // Values: battery level
+
+	// Frame contents
+	private int kind = EEG;
+	private long timestamp = 0;
+	private int count = 0;
+	private final double[] values;
+
+	/**
+	 * Creates a new RawFrame.
+	 * 
+	 * @param width The maximum number of values in a frame
+	 */
+	public RawFrame(int width) {
+		values = new double[width];
+	}
+
+	/**
+	 * Gets the kind of frame, EEG or GYRO.
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	/**
+	 * Gets the System.nanoTime() at which the frame was acquired.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Gets the number of valid values in the frame.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the frame values.  Only the first getCount() values are valid.
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Sets the frame header.  Used by FrameQueue when copying a frame out.
+	 */
+	void set(int kind, long timestamp, int count) {
+		this.kind = kind;
+		this.timestamp = timestamp;
+		this.count = count;
+	}
+
+}
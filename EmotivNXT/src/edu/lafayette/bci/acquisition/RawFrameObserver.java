@@ -0,0 +1,48 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * Receives raw headset data from a FrameSource.  This mirrors the
+ * EmotivObserver contract (sensorsChanged, gyrosChanged, qualityChanged,
+ * batteryChanged), but passes the values themselves instead of the
+ * Emotiv object, so a recorded session can drive an observer exactly
+ * like the live headset does.
+ * 
+ * The arrays are reused by the source for the next frame; observers must
+ * copy any values they keep.
+ */
+public interface RawFrameObserver {
+
+	/**
+	 * Called for every EEG frame.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the frame was acquired
+	 * @param sensors The sensor values, in AcquisitionStage.SENSORS order
+	 */
+	public void sensorsChanged(long timestamp, double[] sensors);
+
+	/**
+	 * Called for every gyro frame.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the frame was acquired
+	 * @param gyros The gyro values, in AcquisitionStage.GYROS order
+	 */
+	public void gyrosChanged(long timestamp, double[] gyros);
+
+	/**
+	 * Called when the contact quality of a sensor changes.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the change was seen
+	 * @param sensor The Emotiv sensor name
+	 * @param quality The new contact quality
+	 */
+	public void qualityChanged(long timestamp, String sensor, int quality);
+
+	/**
+	 * Called when the battery level changes.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the change was seen
+	 * @param level The new battery level
+	 */
+	public void batteryChanged(long timestamp, int level);
+
+}
@@ -0,0 +1,243 @@
+package edu.lafayette.bci.acquisition;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * FrameSource that replays a recorded session from disk.  Frames are
+ * delivered on the replay thread, just as the Emotiv library delivers
+ * them on its own thread, and are stamped with the System.nanoTime() at
+ * which they are delivered so latency measurements stay meaningful.
+ * 
+ * The recording is a text file with one event per line:
+ * <pre>
+ * eeg,&lt;nanos&gt;,&lt;AF3&gt;,&lt;F7&gt;,...,&lt;AF4&gt;   (14 values, SENSORS order)
+ * gyro,&lt;nanos&gt;,&lt;x&gt;,&lt;y&gt;
+ * quality,&lt;nanos&gt;,&lt;sensor&gt;,&lt;quality&gt;
+ * battery,&lt;nanos&gt;,&lt;level&gt;
+ * </pre>
+ * where nanos is the time of the event relative to any fixed origin.
+ * Lines starting with '#' are ignored.
+ * 
+ * The recorded timestamps pace the replay: a speed of 1.0 replays in real
+ * time, larger values replay faster, and AS_FAST_AS_POSSIBLE delivers
+ * every frame as soon as the observers return.  With a blocking frame
+ * queue behind it, the fastest replay rate is the sustainable processing
+ * throughput of whatever drains the queue.
+ */
+public class ReplayDevice implements FrameSource, Runnable {
+
+	// Replay speeds
+	public static final double REAL_TIME = 1.0;
+	public static final double AS_FAST_AS_POSSIBLE = 0.0;
+
+	// Recording and replay settings
+	private final String path;
+	private final double speed;
+	private final boolean loop;
+
+	// Observers and replay thread
+	private final CopyOnWriteArrayList<RawFrameObserver> observers = new CopyOnWriteArrayList<RawFrameObserver>();
+	private final Thread thread;
+	private volatile boolean finished = false;
+	private boolean started = false;
+
+	// Scratch frames
+	private final double[] sensors = new double[AcquisitionStage.SENSORS.length];
+	private final double[] gyros = new double[AcquisitionStage.GYROS.length];
+
+	// Statistics
+	private volatile long frames = 0;
+	private volatile long skipped = 0;
+	private volatile long startTime = 0;
+	private volatile long endTime = 0;
+
+	/**
+	 * Creates a new ReplayDevice.  Call start() once the observers are added.
+	 * 
+	 * @param path The recording to replay
+	 * @param speed The replay speed, REAL_TIME, a multiple of it, or AS_FAST_AS_POSSIBLE
+	 * @param loop True to restart at the beginning when the recording ends
+	 */
+	public ReplayDevice(String path, double speed, boolean loop) {
+		this.path = path;
+		this.speed = speed;
+		this.loop = loop;
+		thread = new Thread(this, "Replay " + path);
+		thread.setDaemon(true);
+	}
+
+	@Override
+	public void addObserver(RawFrameObserver o) {
+		observers.add(o);
+	}
+
+	@Override
+	public void removeObserver(RawFrameObserver o) {
+		observers.remove(o);
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!started) {
+			started = true;
+			thread.start();
+		}
+	}
+
+	@Override
+	public void close() {
+		finished = true;
+		thread.interrupt();
+		synchronized (this) {
+			if (!started) {
+				return;
+			}
+		}
+		try { thread.join(); } catch (InterruptedException e) {}
+	}
+
+	/**
+	 * Waits for the recording to finish (never returns for a looping replay
+	 * unless it is closed).  The replay must have been started.
+	 */
+	public void awaitCompletion() throws InterruptedException {
+		thread.join();
+	}
+
+	@Override
+	public void run() {
+		startTime = System.nanoTime();
+		try {
+			do {
+				replayOnce();
+			} while (loop && !finished);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * Helper function that replays the recording from start to end.
+	 */
+	private void replayOnce() throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(path));
+		try {
+			long firstRecorded = Long.MIN_VALUE;
+			long firstReplayed = 0;
+			int number = 0;
+			String line;
+
+			while (!finished && (line = in.readLine()) != null) {
+				number++;
+				if (line.isEmpty() || line.charAt(0) == '#') {
+					continue;
+				}
+				String[] f = line.split(",");
+				long recorded;
+				try {
+					recorded = Long.parseLong(f[1].trim());
+				} catch (RuntimeException e) {
+					skip(number, e);
+					continue;
+				}
+
+				// Pace the replay against the recorded timestamps
+				if (firstRecorded == Long.MIN_VALUE) {
+					firstRecorded = recorded;
+					firstReplayed = System.nanoTime();
+				} else if (speed > 0) {
+					long due = firstReplayed + (long) ((recorded - firstRecorded) / speed);
+					long wait = due - System.nanoTime();
+					if (wait > 0) {
+						try {
+							Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+
+				try {
+					deliver(f);
+				} catch (RuntimeException e) {
+					// A short or garbled line, e.g. the last one of a crashed session
+					skip(number, e);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Helper function that reports a line that cannot be replayed.
+	 */
+	private void skip(int number, RuntimeException e) {
+		skipped++;
+		System.err.println("Replay " + path + ":" + number + ": skipped (" + e + ")");
+	}
+
+	/**
+	 * Helper function that passes one recorded event to the observers.
+	 */
+	private void deliver(String[] f) {
+		long now = System.nanoTime();
+		String kind = f[0].trim();
+
+		if (kind.equals("eeg")) {
+			for (int i = 0; i < sensors.length; i++) {
+				sensors[i] = Double.parseDouble(f[i + 2]);
+			}
+			for (RawFrameObserver o : observers) {
+				o.sensorsChanged(now, sensors);
+			}
+			frames++;
+		} else if (kind.equals("gyro")) {
+			for (int i = 0; i < gyros.length; i++) {
+				gyros[i] = Double.parseDouble(f[i + 2]);
+			}
+			for (RawFrameObserver o : observers) {
+				o.gyrosChanged(now, gyros);
+			}
+			frames++;
+		} else if (kind.equals("quality")) {
+			int quality = Integer.parseInt(f[3].trim());
+			for (RawFrameObserver o : observers) {
+				o.qualityChanged(now, f[2].trim(), quality);
+			}
+		} else if (kind.equals("battery")) {
+			int level = Integer.parseInt(f[2].trim());
+			for (RawFrameObserver o : observers) {
+				o.batteryChanged(now, level);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of EEG and gyro frames delivered so far.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Gets the number of lines skipped because they could not be parsed.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Gets the delivery rate so far, in frames per second.
+	 */
+	public double getFrameRate() {
+		long start = startTime;
+		long end = (endTime != 0) ? endTime : System.nanoTime();
+		return (start == 0 || end <= start) ? 0.0 : frames / ((end - start) / 1e9);
+	}
+
+}
@@ -0,0 +1,176 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * Times the frames of one stream from the number of samples the device
+ * has produced instead of from when they happened to arrive.  The first
+ * frame is placed on the session's TimeBase at its arrival time; every
+ * later frame is one sample period after the previous one, so the times
+ * seen by the processing stages are free of scheduling jitter and do not
+ * depend on how fast the frames are processed (or replayed).
+ * 
+ * Arrival times are only used to find frames the device or the driver
+ * lost.  The clock keeps a model of when each sample should arrive that
+ * follows the earliest arrivals (frames are never early, only delayed),
+ * drifting slowly towards later ones so that the host and device clocks
+ * may differ slightly.  A frame that arrives more than maxJitter after
+ * its expected time suggests the samples before it were lost, but a
+ * frame held up by the host looks the same.  The two are told apart at
+ * the next frame: after a loss it is just as late, while frames that
+ * were held up arrive together and catch up.  Confirmed losses are
+ * reported by tick() for the caller to interpolate, so they are filled
+ * in just before the frame after the late one, which is stamped as if
+ * nothing had been lost.
+ * 
+ * A gap longer than maxGap samples (a lost connection) is not
+ * interpolated; the clock restarts its model at the frame after it, so
+ * the stream's time continues without a jump.
+ */
+public class SampleClock {
+
+	// Default limits
+	public static final double MAX_JITTER = 0.75; // Lateness tolerated before samples count as lost, in periods
+	public static final int MAX_GAP = 32; // Longest run of lost samples that is interpolated
+
+	// Fraction of a late arrival the model moves towards
+	private static final double DRIFT_GAIN = 1e-3;
+
+	// Session time base and the stream's sample period
+	private final TimeBase base;
+	private final long period;
+	private final double maxJitter;
+	private final int maxGap;
+
+	// Model of the arrivals: the expected arrival of sample 0, the
+	// stream's offset from the origin, the number of samples, and the
+	// samples the latest frame suggests were lost and how late it was
+	private double anchor = 0.0;
+	private long offset = 0;
+	private long samples = -1;
+	private long suspected = 0;
+	private double suspectedLate = 0.0;
+
+	// Statistics
+	private long frames = 0;
+	private long lost = 0;
+	private long gaps = 0;
+
+	/**
+	 * Creates a new SampleClock with the default limits.
+	 * 
+	 * @param base The session's time base
+	 * @param period The sample period, in seconds
+	 */
+	public SampleClock(TimeBase base, double period) {
+		this(base, period, MAX_JITTER, MAX_GAP);
+	}
+
+	/**
+	 * Creates a new SampleClock.
+	 * 
+	 * @param base The session's time base
+	 * @param period The sample period, in seconds
+	 * @param maxJitter The lateness tolerated before samples count as lost, in sample periods (below 1)
+	 * @param maxGap The longest run of lost samples that is interpolated
+	 */
+	public SampleClock(TimeBase base, double period, double maxJitter, int maxGap) {
+		this.base = base;
+		this.period = Math.round(period * 1e9);
+		this.maxJitter = maxJitter * this.period;
+		this.maxGap = maxGap;
+	}
+
+	/**
+	 * Registers the arrival of a frame.  Call once per frame, in order.
+	 * 
+	 * @param arrival The System.nanoTime() at which the frame was acquired
+	 * @return The number of samples lost just before this frame, to be
+	 *         interpolated by the caller before it
+	 */
+	public int tick(long arrival) {
+		frames++;
+		if (samples < 0) {
+			restart(arrival);
+			return 0;
+		}
+
+		// Samples missing between the expected and the actual arrival
+		double late = arrival - (anchor + (samples + 1) * period);
+		long missing = (late > maxJitter) ? (long) ((late - maxJitter) / period) + 1 : 0;
+		if (missing > maxGap) {
+			// Too long to interpolate, continue the stream's time from here
+			gaps++;
+			offset += (samples + 1) * period;
+			suspected = 0;
+			restart(arrival);
+			return 0;
+		}
+
+		// Losses suspected at the previous frame are confirmed if this one
+		// is about as late, rather than a period closer to its expected
+		// time; any other lateness is suspected in turn
+		long confirmed = (late > suspectedLate - period / 2) ? Math.min(suspected, missing) : 0;
+		suspected = missing - confirmed;
+		suspectedLate = late - confirmed * period;
+		samples += 1 + confirmed;
+		lost += confirmed;
+
+		// Follow the earliest arrivals at once and later ones slowly, unless
+		// it is not yet known how late this frame is
+		if (suspected == 0) {
+			late = arrival - (anchor + samples * period);
+			anchor += (late < 0) ? late : late * DRIFT_GAIN;
+		}
+		return (int) confirmed;
+	}
+
+	/**
+	 * Helper function that starts the arrival model at a frame.
+	 */
+	private void restart(long arrival) {
+		if (frames == 1) {
+			offset = arrival - base.origin(arrival);
+		}
+		anchor = arrival;
+		samples = 0;
+	}
+
+	/**
+	 * Gets the time of the latest frame.
+	 * 
+	 * @return The time since the session's origin, in seconds
+	 */
+	public double time() {
+		return (offset + Math.max(0, samples) * period) / 1e9;
+	}
+
+	/**
+	 * Gets the sample period.
+	 * 
+	 * @return The sample period, in seconds
+	 */
+	public double getPeriod() {
+		return period / 1e9;
+	}
+
+	/**
+	 * Gets the number of frames registered.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Gets the number of lost samples reported for interpolation.
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	/**
+	 * Gets the number of gaps too long to interpolate.
+	 */
+	public long getGaps() {
+		return gaps;
+	}
+
+}
@@ -0,0 +1,48 @@
+package edu.lafayette.bci.acquisition;
+
+/**
+ * The common origin of the SampleClocks of one session, so that the EEG
+ * and gyro streams are timed from the same instant.  The origin is the
+ * arrival time of the first frame of any stream.  Not thread safe: the
+ * clocks of a session must all be ticked from the same thread (normally
+ * the ProcessingThread).
+ */
+public class TimeBase {
+
+	// Arrival time of the first frame, in System.nanoTime() units
+	private long origin = 0;
+	private boolean started = false;
+
+	/**
+	 * Gets the origin, setting it to the given time if no frame has
+	 * arrived yet.
+	 * 
+	 * @param nanos The System.nanoTime() at which a frame arrived
+	 * @return The origin, in System.nanoTime() units
+	 */
+	public long origin(long nanos) {
+		if (!started) {
+			origin = nanos;
+			started = true;
+		}
+		return origin;
+	}
+
+	/**
+	 * Checks whether a frame has arrived yet.
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * Converts an arrival time to seconds since the origin.
+	 * 
+	 * @param nanos A System.nanoTime()
+	 * @return The time since the origin, in seconds (0 before the first frame)
+	 */
+	public double toSeconds(long nanos) {
+		return started ? (nanos - origin) / 1e9 : 0.0;
+	}
+
+}
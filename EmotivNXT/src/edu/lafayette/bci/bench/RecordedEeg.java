@@ -0,0 +1,58 @@
+package edu.lafayette.bci.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Loads a recorded signal from a text file for benchmarking.  Each line
+ * holds one sample; fields may be separated by commas or whitespace and
+ * one column is read.  Lines whose column is not a number (headers,
+ * comments) are skipped.
+ */
+public class RecordedEeg {
+
+	private RecordedEeg() {}
+
+	/**
+	 * Loads one column of a recording.
+	 * 
+	 * @param path The file to read
+	 * @param column The zero-based column holding the samples
+	 * @return The samples
+	 * @throws IOException If the file cannot be read
+	 */
+	public static double[] load(String path, int column) throws IOException {
+		double[] v = new double[4096];
+		int n = 0;
+		BufferedReader in = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.trim().split("[,\\s]+");
+				if (column >= fields.length) {
+					continue;
+				}
+				double x;
+				try {
+					x = Double.parseDouble(fields[column]);
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				if (n == v.length) {
+					double[] grown = new double[v.length * 2];
+					System.arraycopy(v, 0, grown, 0, n);
+					v = grown;
+				}
+				v[n++] = x;
+			}
+		} finally {
+			in.close();
+		}
+
+		double[] out = new double[n];
+		System.arraycopy(v, 0, out, 0, n);
+		return out;
+	}
+
+}
@@ -0,0 +1,246 @@
+package edu.lafayette.bci.bench;
+
+import java.io.IOException;
+
+import edu.lafayette.bci.PanelChains;
+import edu.lafayette.bci.acquisition.AcquisitionStage;
+import edu.lafayette.bci.dsp.*;
+import edu.lafayette.bci.sigproc.*;
+
+/**
+ * Measures the per-sample cost of every stage the control panels build,
+ * and of the complete occipital and frontal chains, at the Emotiv rate
+ * and well above it.  Run it before and after changing a stage so that
+ * a regression shows up here rather than on a chair.
+ * 
+ * Usage: SigprocBenchmark [-rates 128,512,2048] [-seconds 60]
+ *                         [-file recording.csv] [-column 0]
+ * 
+ * With -file, the recorded column is used as EEG input instead of the
+ * synthetic signal; it is assumed to have been sampled at the first rate.
+ * 
+ * Each case is warmed up, then timed over several passes of the whole
+ * signal.  The outputs are folded into a checksum so the JIT cannot
+ * discard the work.  The "budget" column is how many times faster than
+ * real time the case runs, for a single channel.
+ */
+public class SigprocBenchmark {
+
+	// Cases, in report order
+	private static final String[] CASES = { "HighPassFilter", "HighPassStage",
+			"Butterworth", "ButterworthStage", "Power", "PowerStage",
+			"MovingAverage", "MovingAverageStage", "MovingAverageStage-30s",
+			"Threshold", "ThresholdStage", "AdaptiveThresholdStage", "EdgeDetect", "EdgeDetectStage",
+			"PulseCount", "PulseCountStage", "GyroDetect", "AdaptiveGyroStage", "electrodes", "spectral",
+			"sensors", "sensors-parallel", "occipital", "frontal" };
+
+	// Warmup (at least this many passes and this long) and measured passes over the signal
+	private static final int WARMUP_PASSES = 5;
+	private static final long WARMUP_MILLIS = 1000;
+	private static final int MEASURED_PASSES = 10;
+
+	// Thresholds used by the chains, typical of calibrated values
+	private static final double OCCIPITAL_THRES = 30.0;
+	private static final double BLINK_THRES = 130.0;
+	private static final double GYROX_POS_THRES = 4000.0;
+
+	// Sink for the outputs
+	private static volatile double sink = 0.0;
+
+	public static void main(String[] args) throws IOException {
+		double[] rates = { 128, 512, 2048 };
+		double seconds = 60;
+		String file = null;
+		int column = 0;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-rates")) {
+				String[] r = args[i + 1].split(",");
+				rates = new double[r.length];
+				for (int j = 0; j < r.length; j++) {
+					rates[j] = Double.parseDouble(r[j]);
+				}
+			} else if (args[i].equals("-seconds")) {
+				seconds = Double.parseDouble(args[i + 1]);
+			} else if (args[i].equals("-file")) {
+				file = args[i + 1];
+			} else if (args[i].equals("-column")) {
+				column = Integer.parseInt(args[i + 1]);
+			}
+		}
+
+		double[] recorded = (file == null) ? null : RecordedEeg.load(file, column);
+
+		for (double fs : rates) {
+			double[] eeg = (recorded != null) ? recorded : SyntheticEeg.eeg(fs, seconds, 1);
+			double[] gyro = SyntheticEeg.gyro(fs, eeg.length / fs, 2);
+			double[] times = SyntheticEeg.times(fs, eeg.length);
+
+			System.out.println();
+			System.out.printf("%s at %.0f Hz, %d samples%n", (recorded != null) ? file : "synthetic", fs, eeg.length);
+			System.out.printf("%-24s %12s %12s %12s%n", "case", "ns/sample", "best", "budget");
+			for (String name : CASES) {
+				measure(name, fs, times, eeg, gyro);
+			}
+		}
+		System.out.println();
+		System.out.println("checksum " + sink);
+	}
+
+	/**
+	 * Helper function that times one case and prints its row.
+	 */
+	private static void measure(String name, double fs, double[] times, double[] eeg, double[] gyro) {
+		double[] input = name.contains("Gyro") ? gyro : eeg;
+		double total = 0.0;
+		double best = Double.MAX_VALUE;
+
+		// Warm up so the JIT has compiled the case
+		long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+		for (int pass = 0; pass < WARMUP_PASSES || System.currentTimeMillis() < warmupEnd; pass++) {
+			sink += runCase(name, fs, times, input);
+		}
+
+		for (int pass = 0; pass < MEASURED_PASSES; pass++) {
+			long start = System.nanoTime();
+			sink += runCase(name, fs, times, input);
+			double nanos = (System.nanoTime() - start) / (double) input.length;
+			total += nanos;
+			best = Math.min(best, nanos);
+		}
+
+		double mean = total / MEASURED_PASSES;
+		System.out.printf("%-24s %12.1f %12.1f %11.0fx%n", name, mean, best, (1e9 / fs) / mean);
+	}
+
+	/**
+	 * Helper function that runs one pass of a case over a fresh pipeline.
+	 */
+	private static double runCase(String name, double fs, double[] times, double[] input) {
+		if (name.equals("electrodes")) {
+			return runElectrodes(times, input);
+		} else if (name.equals("spectral")) {
+			return runSpectral(fs, times, input);
+		} else if (name.equals("sensors")) {
+			return runSensors(fs, times, input, 1);
+		} else if (name.equals("sensors-parallel")) {
+			return runSensors(fs, times, input, Runtime.getRuntime().availableProcessors());
+		}
+		return run(build(name, fs), times, input);
+	}
+
+	/**
+	 * Helper function that pushes a whole signal through a pipeline.
+	 */
+	private static double run(SamplePipeline p, double[] times, double[] input) {
+		double sum = 0.0;
+		for (int i = 0; i < input.length; i++) {
+			sum += p.push(times[i], input[i]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Helper function that pushes four copies of a signal (one per
+	 * electrode, offset in time) through the electrode pipeline.
+	 */
+	private static double runElectrodes(double[] times, double[] eeg) {
+		MultiChannelPipeline p = PanelChains.electrodes(1);
+		double[] frame = new double[p.inputChannels()];
+		double sum = 0.0;
+		for (int i = 0; i < eeg.length; i++) {
+			for (int c = 0; c < frame.length; c++) {
+				frame[c] = eeg[(i + c * 17) % eeg.length];
+			}
+			FrameBlock out = p.pushFrame(times[i], frame);
+			sum += out.get(0, PanelChains.OCCIPITAL) + out.get(0, PanelChains.FRONTAL);
+		}
+		return sum;
+	}
+
+	/**
+	 * Helper function that pushes fourteen copies of a signal (one per
+	 * sensor, offset in time) through the spectral pipeline.
+	 */
+	private static double runSpectral(double fs, double[] times, double[] eeg) {
+		MultiChannelPipeline p = PanelChains.spectral(1.0 / fs, 1);
+		double[] frame = new double[p.inputChannels()];
+		double sum = 0.0;
+		for (int i = 0; i < eeg.length; i++) {
+			for (int c = 0; c < frame.length; c++) {
+				frame[c] = eeg[(i + c * 17) % eeg.length];
+			}
+			FrameBlock out = p.pushFrame(times[i], frame);
+			sum += out.get(0, PanelChains.ALPHA);
+		}
+		return sum;
+	}
+
+	/**
+	 * Helper function that pushes fourteen copies of a signal through the
+	 * per-sensor alpha chains on a ChannelExecutor, with a deadline of one
+	 * sample period per frame.
+	 */
+	private static double runSensors(double fs, double[] times, double[] eeg, int threads) {
+		ChannelExecutor executor = new ChannelExecutor(PanelChains.sensorAlpha(1.0 / fs), threads);
+		double[] frame = new double[AcquisitionStage.SENSORS.length];
+		double[] out = new double[frame.length];
+		long period = (long) (1e9 / fs);
+		double sum = 0.0;
+		try {
+			for (int i = 0; i < eeg.length; i++) {
+				for (int c = 0; c < frame.length; c++) {
+					frame[c] = eeg[(i + c * 17) % eeg.length];
+				}
+				executor.process(times[i], frame, out, System.nanoTime() + period);
+				sum += out[0];
+			}
+		} finally {
+			executor.finish();
+		}
+		return sum;
+	}
+
+	/**
+	 * Helper function that creates a fresh pipeline for a case.
+	 */
+	private static SamplePipeline build(String name, double fs) {
+		double period = 1.0 / fs;
+		double[] alpha = { 8.0, 13.0 };
+		SamplePipeline p = new SamplePipeline();
+
+		switch (name) {
+			case "HighPassFilter": p.addFilter(new AlgorithmStage(new HighPassFilter(0.5))); break;
+			case "HighPassStage": p.addFilter(new HighPassStage(0.5)); break;
+			case "Butterworth": p.addFilter(new AlgorithmStage(new Butterworth(4, alpha, fs, Butterworth.BPF))); break;
+			case "ButterworthStage": p.addFilter(new ButterworthStage(4, alpha, fs, ButterworthDesign.BPF)); break;
+			case "Power": p.addFilter(new AlgorithmStage(new Power(1 / 11.5, period))); break;
+			case "PowerStage": p.addFilter(new PowerStage(1 / 11.5, period)); break;
+			case "MovingAverage": p.addFilter(new AlgorithmStage(new MovingAverage((int) (1.5 * fs)))); break;
+			case "MovingAverageStage": p.addFilter(new MovingAverageStage((int) (1.5 * fs))); break;
+			case "MovingAverageStage-30s": p.addFilter(new MovingAverageStage((int) (30 * fs))); break;
+			case "Threshold": p.addFilter(new AlgorithmStage(new Threshold(BLINK_THRES))); break;
+			case "ThresholdStage": p.addFilter(new ThresholdStage(BLINK_THRES)); break;
+			case "AdaptiveThresholdStage": p.addFilter(new AdaptiveThresholdStage(BLINK_THRES, 60.0, period)); break;
+			case "EdgeDetect": p.addFilter(new AlgorithmStage(new EdgeDetect())); break;
+			case "EdgeDetectStage": p.addFilter(new EdgeDetectStage()); break;
+			case "PulseCount": 
+				p.addFilter(new ThresholdStage(BLINK_THRES));
+				p.addFilter(new EdgeDetectStage());
+				p.addFilter(new AlgorithmStage(new PulseCount(5, 2.0)));
+				break;
+			case "PulseCountStage": 
+				p.addFilter(new ThresholdStage(BLINK_THRES));
+				p.addFilter(new EdgeDetectStage());
+				p.addFilter(new PulseCountStage(5, 2.0));
+				break;
+			case "GyroDetect": p.addFilter(new AlgorithmStage(new GyroDetect(GYROX_POS_THRES, false, true))); break;
+			case "AdaptiveGyroStage": p.addFilter(new AdaptiveGyroStage(GYROX_POS_THRES, 30.0, period)); break;
+			case "occipital": p = PanelChains.occipital(OCCIPITAL_THRES, period).getPipeline(); break;
+			case "frontal": p = PanelChains.frontal(BLINK_THRES).getPipeline(); break;
+			default: throw new IllegalArgumentException("Unknown case: " + name);
+		}
+		return p;
+	}
+
+}
@@ -0,0 +1,105 @@
+package edu.lafayette.bci.bench;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic headset signals for benchmarking.  The EEG signal
+ * has the features the panels react to: a drifting DC offset, broadband
+ * background noise, bursts of 10 Hz alpha activity and blink spikes.
+ * The gyro signal wanders around a center value with occasional head
+ * turns.  Values are in the same units as the raw Emotiv readings.
+ */
+public class SyntheticEeg {
+
+	// Signal parameters, in uV and Hz
+	private static final double DC_OFFSET = 4200.0;
+	private static final double DRIFT_AMPLITUDE = 40.0;
+	private static final double NOISE_AMPLITUDE = 8.0;
+	private static final double ALPHA_FREQ = 10.0;
+	private static final double ALPHA_AMPLITUDE = 25.0;
+	private static final double BLINK_AMPLITUDE = 180.0;
+	private static final double GYRO_CENTER = 1650.0;
+
+	private SyntheticEeg() {}
+
+	/**
+	 * Generates an EEG signal.
+	 * 
+	 * @param fs The sample rate, in Hz
+	 * @param seconds The length of the signal, in seconds
+	 * @param seed The random seed
+	 * @return The samples
+	 */
+	public static double[] eeg(double fs, double seconds, long seed) {
+		Random rnd = new Random(seed);
+		int n = (int) (fs * seconds);
+		double[] v = new double[n];
+		double pink = 0.0;
+
+		for (int i = 0; i < n; i++) {
+			double t = i / fs;
+
+			// Slow drift plus low-passed noise
+			pink = 0.95 * pink + rnd.nextGaussian();
+			double x = DC_OFFSET + DRIFT_AMPLITUDE * Math.sin(2 * Math.PI * 0.05 * t)
+					+ NOISE_AMPLITUDE * pink * 0.3 + NOISE_AMPLITUDE * rnd.nextGaussian() * 0.5;
+
+			// Eyes closed for 4 s out of every 10 s
+			if (t % 10.0 > 6.0) {
+				x += ALPHA_AMPLITUDE * Math.sin(2 * Math.PI * ALPHA_FREQ * t);
+			}
+
+			// A train of blinks (200 ms each, 300 ms apart) every 15 s
+			double b = t % 15.0;
+			if (b < 2.5 && b % 0.5 < 0.2) {
+				x += BLINK_AMPLITUDE * Math.sin(Math.PI * (b % 0.5) / 0.2);
+			}
+			v[i] = x;
+		}
+		return v;
+	}
+
+	/**
+	 * Generates a gyro signal.
+	 * 
+	 * @param fs The sample rate, in Hz
+	 * @param seconds The length of the signal, in seconds
+	 * @param seed The random seed
+	 * @return The samples
+	 */
+	public static double[] gyro(double fs, double seconds, long seed) {
+		Random rnd = new Random(seed);
+		int n = (int) (fs * seconds);
+		double[] v = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			double t = i / fs;
+			double x = GYRO_CENTER + 2.0 * rnd.nextGaussian();
+
+			// A one second head turn every 8 s, alternating direction
+			double turn = t % 8.0;
+			if (turn < 1.0) {
+				double dir = ((int) (t / 8.0) % 2 == 0) ? 1.0 : -1.0;
+				x += dir * 60.0 * Math.sin(Math.PI * turn);
+			}
+			v[i] = x;
+		}
+		return v;
+	}
+
+	/**
+	 * Generates evenly spaced sample times.
+	 * 
+	 * @param fs The sample rate, in Hz
+	 * @param n The number of samples
+	 * @return The sample times, in seconds
+	 */
+	public static double[] times(double fs, int n) {
+		double[] t = new double[n];
+		for (int i = 0; i < n; i++) {
+			t[i] = i / fs;
+		}
+		return t;
+	}
+
+}
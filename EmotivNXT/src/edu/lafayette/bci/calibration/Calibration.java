@@ -0,0 +1,72 @@
+package edu.lafayette.bci.calibration;
+
+/**
+ * The thresholds found by a calibration session and how well they
+ * separate the user's signals (Youden's J, see RocCut).
+ */
+public class Calibration {
+
+	// Thresholds and their separations
+	private final double blinkThreshold;
+	private final double blinkSeparation;
+	private final double occipitalThreshold;
+	private final double occipitalSeparation;
+
+	/**
+	 * Creates a new Calibration.
+	 * 
+	 * @param blink The blink cut point
+	 * @param occipital The occipital cut point
+	 */
+	public Calibration(RocCut blink, RocCut occipital) {
+		blinkThreshold = blink.getThreshold();
+		blinkSeparation = blink.getSeparation();
+		occipitalThreshold = occipital.getThreshold();
+		occipitalSeparation = occipital.getSeparation();
+	}
+
+	/**
+	 * Gets the blink detection threshold, in uV.
+	 */
+	public double getBlinkThreshold() {
+		return blinkThreshold;
+	}
+
+	/**
+	 * Gets how well the blink threshold separates blinks from rest.
+	 */
+	public double getBlinkSeparation() {
+		return blinkSeparation;
+	}
+
+	/**
+	 * Gets the occipital power threshold, in (uV)^2.
+	 */
+	public double getOccipitalThreshold() {
+		return occipitalThreshold;
+	}
+
+	/**
+	 * Gets how well the occipital threshold separates closed from open eyes.
+	 */
+	public double getOccipitalSeparation() {
+		return occipitalSeparation;
+	}
+
+	/**
+	 * Indicates whether both thresholds separate their classes at least
+	 * as well as a given J.
+	 * 
+	 * @param separation The minimum J
+	 */
+	public boolean isReliable(double separation) {
+		return blinkSeparation >= separation && occipitalSeparation >= separation;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("blink %.1f uV (J %.2f), occipital %.1f uV^2 (J %.2f)",
+				blinkThreshold, blinkSeparation, occipitalThreshold, occipitalSeparation);
+	}
+
+}
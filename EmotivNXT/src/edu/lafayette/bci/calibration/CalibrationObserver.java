@@ -0,0 +1,22 @@
+package edu.lafayette.bci.calibration;
+
+/**
+ * Guides the user through a calibration session.  Calls are made on the
+ * processing thread.
+ */
+public interface CalibrationObserver {
+
+	/**
+	 * Called when a new step of the session begins.
+	 * 
+	 * @param step The step, one of the Calibrator step constants
+	 * @param instruction What the user should do, for display
+	 */
+	public void stepChanged(int step, String instruction);
+
+	/**
+	 * Called when the user should blink once.
+	 */
+	public void blinkCue();
+
+}
@@ -0,0 +1,281 @@
+package edu.lafayette.bci.calibration;
+
+import java.util.Arrays;
+
+import edu.lafayette.bci.PanelChains;
+import edu.lafayette.bci.acquisition.AcquisitionStage;
+import edu.lafayette.bci.acquisition.Backpressure;
+import edu.lafayette.bci.acquisition.EmotivSource;
+import edu.lafayette.bci.acquisition.FrameHandler;
+import edu.lafayette.bci.acquisition.FrameQueue;
+import edu.lafayette.bci.acquisition.FrameSource;
+import edu.lafayette.bci.acquisition.ProcessingThread;
+import edu.lafayette.bci.dsp.FrameBlock;
+import edu.lafayette.bci.dsp.MultiChannelPipeline;
+import edu.lafayette.bci.dsp.SamplePipeline;
+
+/**
+ * Runs a short guided session and chooses the blink and occipital
+ * thresholds for the user wearing the headset.
+ * 
+ * The session has four steps, timed by counting EEG frames so it works
+ * the same on a replayed recording at any speed:
+ * <ol>
+ * <li>SETTLE: eyes open while the filters settle (nothing is collected)</li>
+ * <li>EYES_OPEN: eyes open, looking ahead without blinking on purpose</li>
+ * <li>EYES_CLOSED: eyes closed</li>
+ * <li>BLINKS: one deliberate blink at each cue</li>
+ * </ol>
+ * The signals go through the same chains the panel uses (see PanelChains)
+ * up to their thresholds.  Alpha power with eyes closed and with eyes
+ * open, and the frontal peak after each blink cue and in every window at
+ * rest, are summarised in streaming distributions (see StreamingCdf), and
+ * each threshold is the ROC-optimal cut between its two classes (see
+ * RocCut).  Nothing is stored per sample, so the session can be made
+ * longer without using more memory.
+ */
+public class Calibrator implements FrameHandler {
+
+	// Steps
+	public static final int SETTLE = 0;
+	public static final int EYES_OPEN = 1;
+	public static final int EYES_CLOSED = 2;
+	public static final int BLINKS = 3;
+	public static final int DONE = 4;
+
+	// Step durations and instructions
+	private static final double[] DURATIONS = { 5.0, 15.0, 15.0, 21.0 }; // In seconds
+	private static final String[] INSTRUCTIONS = {
+		"Calibrating: relax, keep your eyes open",
+		"Calibrating: keep your eyes open and look ahead",
+		"Calibrating: close your eyes until the next tone",
+		"Calibrating: blink once at each tone",
+		"Calibration complete" };
+
+	// Collection parameters
+	private static final double TRANSITION = 3.0; // Time ignored at the start of each step, in seconds
+	private static final double CUE_INTERVAL = 2.5; // Time between blink cues, in seconds
+	private static final double BLINK_WINDOW = 0.8; // Time after a cue in which the blink is expected, in seconds
+	private static final int REST_SLICES = 4; // Rest windows are this many slices of BLINK_WINDOW / REST_SLICES
+
+	// Signal chains up to the thresholds
+	private final MultiChannelPipeline electrodes;
+	private final SamplePipeline alpha;
+	private final double[] electrodeFrame = new double[PanelChains.ELECTRODES.length];
+	private final int[] electrodeIndex = new int[PanelChains.ELECTRODES.length];
+
+	// Distributions of each class
+	private final StreamingCdf alphaClosed = new StreamingCdf();
+	private final StreamingCdf alphaOpen = new StreamingCdf();
+	private final StreamingCdf blinkPeaks = new StreamingCdf();
+	private final StreamingCdf restPeaks = new StreamingCdf();
+
+	// Session progress (processing thread only)
+	private final CalibrationObserver observer;
+	private final double samplePeriod;
+	private long frames = 0;
+	private int step = -1;
+	private double stepStart = 0.0;
+	private double nextCue = 0.0;
+	private double cueEnd = Double.NEGATIVE_INFINITY;
+	private double cuePeak = Double.NEGATIVE_INFINITY;
+	private final double[] slicePeaks = new double[REST_SLICES];
+	private double sliceEnd = 0.0;
+	private int slices = 0;
+
+	// Frame delivery and the outcome
+	private FrameSource source = null;
+	private AcquisitionStage acquisition = null;
+	private ProcessingThread processing = null;
+	private volatile Calibration result = null;
+	private volatile boolean finished = false;
+
+	/**
+	 * Creates a new Calibrator.
+	 * 
+	 * @param samplePeriod The EEG sampling period, in seconds
+	 * @param observer Receives the instructions for the user
+	 */
+	public Calibrator(double samplePeriod, CalibrationObserver observer) {
+		this.observer = observer;
+		this.samplePeriod = samplePeriod;
+		electrodes = PanelChains.electrodes(1);
+		alpha = PanelChains.alphaPower(samplePeriod);
+		for (int i = 0; i < electrodeIndex.length; i++) {
+			electrodeIndex[i] = AcquisitionStage.sensorIndex(PanelChains.ELECTRODES[i]);
+		}
+		Arrays.fill(slicePeaks, Double.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Starts the session on a source.  Frames are processed on a thread
+	 * of the calibrator's own, so the source can be handed to the panel
+	 * afterwards.
+	 * 
+	 * @param source The headset or a replay
+	 */
+	public void start(FrameSource source) {
+		this.source = source;
+		// Only the headset must never be held up; a replay waits so no frame is lost
+		Backpressure policy = (source instanceof EmotivSource) ? Backpressure.DROP_OLDEST : Backpressure.BLOCK;
+		FrameQueue queue = new FrameQueue(256, AcquisitionStage.FRAME_WIDTH, policy);
+		processing = new ProcessingThread(queue, this);
+		processing.start();
+		acquisition = new AcquisitionStage(queue);
+		source.addObserver(acquisition);
+		source.start();
+	}
+
+	/**
+	 * Indicates whether the session has completed.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Stops the session, detaching from the source.  Returns once the
+	 * calibrator's thread has stopped, so the source can be handed on.
+	 * 
+	 * @return The thresholds, or null if the session did not complete
+	 */
+	public Calibration finish() {
+		if (source != null) {
+			source.removeObserver(acquisition);
+			processing.finish();
+			source = null;
+		}
+		return result;
+	}
+
+	@Override
+	public void eegFrame(long timestamp, double[] sensors) {
+		if (finished) {
+			return;
+		}
+		double time = frames++ * samplePeriod;
+
+		// Run the chains up to their thresholds
+		for (int i = 0; i < electrodeFrame.length; i++) {
+			electrodeFrame[i] = sensors[electrodeIndex[i]];
+		}
+		FrameBlock averaged = electrodes.pushFrame(time, electrodeFrame);
+		double power = alpha.push(time, averaged.get(0, PanelChains.OCCIPITAL));
+		double frontal = averaged.get(0, PanelChains.FRONTAL);
+
+		advance(time);
+		if (finished) {
+			return;
+		}
+		boolean settled = time - stepStart >= TRANSITION;
+
+		switch (step) {
+		case EYES_OPEN:
+			if (settled) {
+				alphaOpen.add(power);
+				collectRest(time, frontal);
+			}
+			break;
+		case EYES_CLOSED:
+			if (settled) {
+				alphaClosed.add(power);
+			}
+			break;
+		case BLINKS:
+			collectBlink(time, frontal);
+			break;
+		}
+	}
+
+	/**
+	 * Helper function that moves to the next step when the current one
+	 * is over, and computes the thresholds after the last.
+	 */
+	private void advance(double time) {
+		if (step >= 0 && time - stepStart < DURATIONS[step]) {
+			return;
+		}
+		step++;
+		stepStart = time;
+		if (step == BLINKS) {
+			nextCue = time + 1.0;
+		}
+		if (step == DONE) {
+			// The blink closing the last cue window may still be pending
+			if (cuePeak > Double.NEGATIVE_INFINITY) {
+				blinkPeaks.add(cuePeak);
+			}
+			if (blinkPeaks.getCount() > 0 && restPeaks.getCount() > 0
+					&& alphaClosed.getCount() > 0 && alphaOpen.getCount() > 0) {
+				result = new Calibration(new RocCut(blinkPeaks, restPeaks), new RocCut(alphaClosed, alphaOpen));
+			}
+			finished = true;
+		}
+		observer.stepChanged(step, INSTRUCTIONS[step]);
+	}
+
+	/**
+	 * Helper function that records the frontal peak of each rest window.
+	 * Windows are as long as a blink window and overlap by all but one
+	 * slice.
+	 */
+	private void collectRest(double time, double frontal) {
+		if (sliceEnd == 0.0) {
+			sliceEnd = time + BLINK_WINDOW / REST_SLICES;
+		}
+		int current = slices % REST_SLICES;
+		slicePeaks[current] = Math.max(slicePeaks[current], frontal);
+		if (time >= sliceEnd) {
+			slices++;
+			if (slices >= REST_SLICES) {
+				double peak = Double.NEGATIVE_INFINITY;
+				for (double p : slicePeaks) {
+					peak = Math.max(peak, p);
+				}
+				restPeaks.add(peak);
+			}
+			slicePeaks[slices % REST_SLICES] = Double.NEGATIVE_INFINITY;
+			sliceEnd += BLINK_WINDOW / REST_SLICES;
+		}
+	}
+
+	/**
+	 * Helper function that cues blinks and records the frontal peak in
+	 * the window after each cue.
+	 */
+	private void collectBlink(double time, double frontal) {
+		if (time >= nextCue && time - stepStart < DURATIONS[BLINKS] - BLINK_WINDOW) {
+			if (cuePeak > Double.NEGATIVE_INFINITY) {
+				blinkPeaks.add(cuePeak);
+			}
+			cuePeak = Double.NEGATIVE_INFINITY;
+			cueEnd = time + BLINK_WINDOW;
+			nextCue += CUE_INTERVAL;
+			observer.blinkCue();
+		}
+		if (time <= cueEnd) {
+			cuePeak = Math.max(cuePeak, frontal);
+		}
+	}
+
+	/* ********** Unused Frames ********** */
+
+	/* (non-Javadoc)
+	 * @see edu.lafayette.bci.acquisition.FrameHandler#gyroFrame(long, double[])
+	 */
+	@Override
+	public void gyroFrame(long timestamp, double[] gyros) {}
+
+	/* (non-Javadoc)
+	 * @see edu.lafayette.bci.acquisition.FrameHandler#qualityChanged(long, int, int)
+	 */
+	@Override
+	public void qualityChanged(long timestamp, int sensor, int quality) {}
+
+	/* (non-Javadoc)
+	 * @see edu.lafayette.bci.acquisition.FrameHandler#batteryChanged(long, int)
+	 */
+	@Override
+	public void batteryChanged(long timestamp, int level) {}
+
+}
@@ -0,0 +1,154 @@
+package edu.lafayette.bci.calibration;
+
+import java.util.Arrays;
+
+/**
+ * Streaming estimate of one quantile using the P-squared algorithm (Jain
+ * and Chlamtac, 1985).  Five markers track the minimum, the maximum, the
+ * quantile and the two points halfway to it, and are moved by piecewise
+ * parabolic interpolation as values arrive, so the estimate takes
+ * constant memory and constant time per value.  Until five values have
+ * been seen the quantile is taken from the values themselves.
+ */
+public class P2Quantile {
+
+	// Quantile being estimated
+	private final double p;
+
+	// Marker heights, positions, desired positions and their increments
+	private final double[] q = new double[5];
+	private final int[] n = new int[5];
+	private final double[] desired = new double[5];
+	private final double[] increment = new double[5];
+
+	// Number of values seen
+	private long count = 0;
+
+	/**
+	 * Creates a new P2Quantile.
+	 * 
+	 * @param p The quantile to estimate, between 0 and 1
+	 */
+	public P2Quantile(double p) {
+		if (p < 0 || p > 1) {
+			throw new IllegalArgumentException("Quantile must be between 0 and 1");
+		}
+		this.p = p;
+		reset();
+	}
+
+	/**
+	 * Adds a value.
+	 * 
+	 * @param x The value
+	 */
+	public void add(double x) {
+		// The first five values become the markers
+		if (count < 5) {
+			q[(int) count++] = x;
+			if (count == 5) {
+				Arrays.sort(q);
+			}
+			return;
+		}
+		count++;
+
+		// Find the cell holding x, extending the extremes if needed
+		int k;
+		if (x < q[0]) {
+			q[0] = x;
+			k = 0;
+		} else if (x >= q[4]) {
+			q[4] = x;
+			k = 3;
+		} else {
+			k = 0;
+			while (x >= q[k + 1]) {
+				k++;
+			}
+		}
+		for (int i = k + 1; i < 5; i++) {
+			n[i]++;
+		}
+		for (int i = 0; i < 5; i++) {
+			desired[i] += increment[i];
+		}
+
+		// Move the middle markers towards their desired positions
+		for (int i = 1; i < 4; i++) {
+			double d = desired[i] - n[i];
+			if ((d >= 1 && n[i + 1] - n[i] > 1) || (d <= -1 && n[i - 1] - n[i] < -1)) {
+				int s = (d > 0) ? 1 : -1;
+				double candidate = parabolic(i, s);
+				if (q[i - 1] < candidate && candidate < q[i + 1]) {
+					q[i] = candidate;
+				} else {
+					q[i] += s * (q[i + s] - q[i]) / (n[i + s] - n[i]);
+				}
+				n[i] += s;
+			}
+		}
+	}
+
+	/**
+	 * Helper function that computes the parabolic prediction of marker i
+	 * moved by s positions.
+	 */
+	private double parabolic(int i, int s) {
+		return q[i] + s / (double) (n[i + 1] - n[i - 1])
+				* ((n[i] - n[i - 1] + s) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+				+ (n[i + 1] - n[i] - s) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+	}
+
+	/**
+	 * Gets the current estimate.
+	 * 
+	 * @return The estimated quantile, or NaN if no value has been added
+	 */
+	public double getQuantile() {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		if (count < 5) {
+			double[] seen = Arrays.copyOf(q, (int) count);
+			Arrays.sort(seen);
+			return seen[(int) Math.round(p * (count - 1))];
+		}
+		return q[2];
+	}
+
+	/**
+	 * Gets the number of values added.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the quantile being estimated.
+	 */
+	public double getProbability() {
+		return p;
+	}
+
+	/**
+	 * Forgets every value.
+	 */
+	public void reset() {
+		count = 0;
+		for (int i = 0; i < 5; i++) {
+			n[i] = i;
+		}
+		desired[0] = 0;
+		desired[1] = 2 * p;
+		desired[2] = 4 * p;
+		desired[3] = 2 + 2 * p;
+		desired[4] = 4;
+		increment[0] = 0;
+		increment[1] = p / 2;
+		increment[2] = p;
+		increment[3] = (1 + p) / 2;
+		increment[4] = 1;
+	}
+
+}
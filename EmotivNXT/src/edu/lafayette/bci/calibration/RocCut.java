@@ -0,0 +1,81 @@
+package edu.lafayette.bci.calibration;
+
+/**
+ * Chooses the threshold that best separates two classes of samples, where
+ * a sample above the threshold is classified as positive.  The threshold
+ * maximises Youden's J (true positive rate minus false positive rate),
+ * the point of the ROC curve furthest above chance.  When a whole range of
+ * thresholds separates the classes equally well, as happens when they do
+ * not overlap, the middle of that range is chosen so the margin on both
+ * sides is the same.
+ */
+public class RocCut {
+
+	// Number of candidate thresholds evaluated
+	private static final int CANDIDATES = 512;
+
+	// Chosen threshold and its separation
+	private final double threshold;
+	private final double separation;
+
+	/**
+	 * Finds the best threshold between two classes.
+	 * 
+	 * @param positive Samples of the class that should exceed the threshold
+	 * @param negative Samples of the class that should not
+	 */
+	public RocCut(StreamingCdf positive, StreamingCdf negative) {
+		if (positive.getCount() == 0 || negative.getCount() == 0) {
+			throw new IllegalArgumentException("Both classes need samples");
+		}
+		double lo = Math.min(positive.getMin(), negative.getMin());
+		double hi = Math.max(positive.getMax(), negative.getMax());
+
+		// Find the range of candidates sharing the best J
+		double best = Double.NEGATIVE_INFINITY;
+		int first = 0;
+		int last = 0;
+		for (int i = 0; i <= CANDIDATES; i++) {
+			double t = lo + (hi - lo) * i / CANDIDATES;
+			double j = youden(positive, negative, t);
+			if (j > best + 1e-9) {
+				best = j;
+				first = i;
+				last = i;
+			} else if (j >= best - 1e-9 && last == i - 1) {
+				last = i;
+			}
+		}
+		threshold = lo + (hi - lo) * ((first + last) / 2.0) / CANDIDATES;
+		separation = best;
+	}
+
+	/**
+	 * Computes Youden's J for a threshold.
+	 * 
+	 * @param positive Samples of the class that should exceed the threshold
+	 * @param negative Samples of the class that should not
+	 * @param threshold The threshold
+	 */
+	public static double youden(StreamingCdf positive, StreamingCdf negative, double threshold) {
+		double truePositives = 1.0 - positive.cdf(threshold);
+		double falsePositives = 1.0 - negative.cdf(threshold);
+		return truePositives - falsePositives;
+	}
+
+	/**
+	 * Gets the chosen threshold.
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Gets Youden's J at the chosen threshold: 1 for classes that do not
+	 * overlap, 0 for classes that cannot be told apart.
+	 */
+	public double getSeparation() {
+		return separation;
+	}
+
+}
@@ -0,0 +1,113 @@
+package edu.lafayette.bci.calibration;
+
+/**
+ * Streaming estimate of a distribution, kept as a fixed set of quantiles
+ * (see P2Quantile) plus the exact minimum and maximum.  The cumulative
+ * distribution is interpolated linearly between them, which is enough to
+ * compare two classes of samples when choosing a threshold.
+ */
+public class StreamingCdf {
+
+	// Probabilities tracked, in increasing order
+	private static final double[] PROBABILITIES = { 0.01, 0.02, 0.05, 0.1, 0.2, 0.3, 0.4,
+			0.5, 0.6, 0.7, 0.8, 0.9, 0.95, 0.98, 0.99 };
+
+	// Estimators and extremes
+	private final P2Quantile[] quantiles = new P2Quantile[PROBABILITIES.length];
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private long count = 0;
+
+	/**
+	 * Creates a new, empty StreamingCdf.
+	 */
+	public StreamingCdf() {
+		for (int i = 0; i < quantiles.length; i++) {
+			quantiles[i] = new P2Quantile(PROBABILITIES[i]);
+		}
+	}
+
+	/**
+	 * Adds a value.
+	 * 
+	 * @param x The value
+	 */
+	public void add(double x) {
+		for (P2Quantile q : quantiles) {
+			q.add(x);
+		}
+		min = Math.min(min, x);
+		max = Math.max(max, x);
+		count++;
+	}
+
+	/**
+	 * Gets the estimated fraction of values at or below x.
+	 * 
+	 * @param x The value
+	 */
+	public double cdf(double x) {
+		if (count == 0 || x < min) {
+			return 0.0;
+		}
+		if (x >= max) {
+			return 1.0;
+		}
+
+		// Walk the knots (min, 0), (quantiles), (max, 1)
+		double prevX = min;
+		double prevP = 0.0;
+		for (int i = 0; i <= quantiles.length; i++) {
+			double knotX = (i < quantiles.length) ? Math.max(prevX, quantiles[i].getQuantile()) : max;
+			double knotP = (i < quantiles.length) ? PROBABILITIES[i] : 1.0;
+			if (x < knotX) {
+				return prevP + (knotP - prevP) * (x - prevX) / (knotX - prevX);
+			}
+			prevX = knotX;
+			prevP = knotP;
+		}
+		return 1.0;
+	}
+
+	/**
+	 * Gets an estimated quantile.
+	 * 
+	 * @param p The probability, one of those tracked or 0 or 1
+	 */
+	public double quantile(double p) {
+		if (p <= 0) {
+			return min;
+		}
+		if (p >= 1) {
+			return max;
+		}
+		for (int i = 0; i < quantiles.length; i++) {
+			if (PROBABILITIES[i] >= p) {
+				return quantiles[i].getQuantile();
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Gets the smallest value added.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the largest value added.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Gets the number of values added.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+}
@@ -0,0 +1,358 @@
+package edu.lafayette.bci.control;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.lafayette.bci.drive.DriveEngine;
+import edu.lafayette.bci.metrics.LatencyHistogram;
+import edu.lafayette.bci.metrics.LatencyRegistry;
+
+/**
+ * Table-driven state machine deciding how the nxt moves.  The state is
+ * the linear motion (stopped or moving, forward or backward, and the
+ * alpha pulse in between), an emergency stop or a lost connection; a
+ * second, smaller machine tracks the turn, which overrides the linear
+ * motion while it lasts and is cleared by an estop or a lost connection.
+ * Each event is a lookup in both tables, and the DriveEngine command is
+ * issued only when the state's command changes.
+ * 
+ * The engine has a single writer: events from the frames being processed
+ * are fired directly on the thread that owns the engine, and events from
+ * any other thread (key presses, the watchdog, telemetry) are posted to
+ * a lock-free mailbox that the owner drains by calling run(), see
+ * ProcessingThread.  Posting never blocks; the delay until a posted event
+ * is handled is recorded in the registry as "decision.mailbox".  Events
+ * that stop the nxt (ESTOP, TIMEOUT, DRIVE_FAULT) are never lost: if the
+ * mailbox is full they are latched and handled after the queued events.
+ * Every transition is timestamped and counted per state and event.
+ * 
+ * Alpha pulses keep the panel's behavior: the rising edge starts or
+ * stops the nxt at once, and the falling edge commits the change.  A
+ * blink reverses the direction, and also reverses an nxt started by the
+ * current pulse.
+ */
+public class DecisionEngine implements Runnable {
+
+	// Events
+	public static final int ALPHA_RISE = 0; // Rising edge of the occipital channel
+	public static final int ALPHA_FALL = 1; // Falling edge of the occipital channel
+	public static final int BLINK = 2; // Pulse of the frontal channel
+	public static final int TURN_LEFT = 3; // Gyro position below the threshold
+	public static final int TURN_RIGHT = 4; // Gyro position above the threshold
+	public static final int TURN_END = 5; // Gyro position back within the threshold
+	public static final int ESTOP = 6; // Emergency stop engaged
+	public static final int RELEASE = 7; // Emergency stop released
+	public static final int TIMEOUT = 8; // Headset stream lost
+	public static final int RESUME = 9; // Headset stream back
+	public static final int START = 10; // Start moving forward without a pulse
+	public static final int DRIVE_FAULT = 11; // Drive not taking commands; stopped until released
+	public static final int EVENTS = 12;
+
+	// States
+	public static final int IDLE_FORWARD = 0; // Stopped, will move forward
+	public static final int IDLE_BACKWARD = 1; // Stopped, will move backward
+	public static final int FORWARD = 2;
+	public static final int BACKWARD = 3;
+	public static final int STARTING_FORWARD = 4; // Started by an alpha pulse that has not ended
+	public static final int STARTING_BACKWARD = 5;
+	public static final int STOPPING_FORWARD = 6; // Stopped by an alpha pulse that has not ended
+	public static final int STOPPING_BACKWARD = 7;
+	public static final int ESTOPPED = 8;
+	public static final int LOST = 9;
+	public static final int STATES = 10;
+
+	// Turns
+	public static final int STRAIGHT = 0;
+	public static final int LEFT = 1;
+	public static final int RIGHT = 2;
+
+	// Names, for reports
+	private static final String[] EVENT_NAMES = { "ALPHA_RISE", "ALPHA_FALL", "BLINK", "TURN_LEFT",
+			"TURN_RIGHT", "TURN_END", "ESTOP", "RELEASE", "TIMEOUT", "RESUME", "START", "DRIVE_FAULT" };
+	private static final String[] STATE_NAMES = { "IDLE_FORWARD", "IDLE_BACKWARD", "FORWARD", "BACKWARD",
+			"STARTING_FORWARD", "STARTING_BACKWARD", "STOPPING_FORWARD", "STOPPING_BACKWARD", "ESTOPPED", "LOST" };
+	private static final String[] TURN_NAMES = { "STRAIGHT", "LEFT", "RIGHT" };
+
+	// Next state for each state (rows) and event (columns, in event order)
+	private static final int[][] NEXT = {
+		{ STARTING_FORWARD, IDLE_FORWARD, IDLE_BACKWARD, IDLE_FORWARD, IDLE_FORWARD, IDLE_FORWARD,
+			ESTOPPED, IDLE_FORWARD, LOST, IDLE_FORWARD, FORWARD, ESTOPPED }, // IDLE_FORWARD
+		{ STARTING_BACKWARD, IDLE_BACKWARD, IDLE_FORWARD, IDLE_BACKWARD, IDLE_BACKWARD, IDLE_BACKWARD,
+			ESTOPPED, IDLE_BACKWARD, LOST, IDLE_BACKWARD, FORWARD, ESTOPPED }, // IDLE_BACKWARD
+		{ STOPPING_FORWARD, FORWARD, BACKWARD, FORWARD, FORWARD, FORWARD,
+			ESTOPPED, FORWARD, LOST, FORWARD, FORWARD, ESTOPPED }, // FORWARD
+		{ STOPPING_BACKWARD, BACKWARD, FORWARD, BACKWARD, BACKWARD, BACKWARD,
+			ESTOPPED, BACKWARD, LOST, BACKWARD, BACKWARD, ESTOPPED }, // BACKWARD
+		{ STARTING_FORWARD, FORWARD, STARTING_BACKWARD, STARTING_FORWARD, STARTING_FORWARD, STARTING_FORWARD,
+			ESTOPPED, STARTING_FORWARD, LOST, STARTING_FORWARD, STARTING_FORWARD, ESTOPPED }, // STARTING_FORWARD
+		{ STARTING_BACKWARD, BACKWARD, STARTING_FORWARD, STARTING_BACKWARD, STARTING_BACKWARD, STARTING_BACKWARD,
+			ESTOPPED, STARTING_BACKWARD, LOST, STARTING_BACKWARD, STARTING_BACKWARD, ESTOPPED }, // STARTING_BACKWARD
+		{ STOPPING_FORWARD, IDLE_FORWARD, STOPPING_BACKWARD, STOPPING_FORWARD, STOPPING_FORWARD, STOPPING_FORWARD,
+			ESTOPPED, STOPPING_FORWARD, LOST, STOPPING_FORWARD, STOPPING_FORWARD, ESTOPPED }, // STOPPING_FORWARD
+		{ STOPPING_BACKWARD, IDLE_BACKWARD, STOPPING_FORWARD, STOPPING_BACKWARD, STOPPING_BACKWARD, STOPPING_BACKWARD,
+			ESTOPPED, STOPPING_BACKWARD, LOST, STOPPING_BACKWARD, STOPPING_BACKWARD, ESTOPPED }, // STOPPING_BACKWARD
+		{ ESTOPPED, ESTOPPED, ESTOPPED, ESTOPPED, ESTOPPED, ESTOPPED,
+			ESTOPPED, IDLE_FORWARD, ESTOPPED, ESTOPPED, ESTOPPED, ESTOPPED }, // ESTOPPED
+		{ LOST, LOST, LOST, LOST, LOST, LOST,
+			ESTOPPED, LOST, LOST, IDLE_FORWARD, LOST, ESTOPPED }, // LOST
+	};
+
+	// Next turn for each turn (rows) and event (columns); only the turn events move it
+	private static final int[][] TURN_NEXT = {
+		{ STRAIGHT, STRAIGHT, STRAIGHT, LEFT, RIGHT, STRAIGHT, STRAIGHT, STRAIGHT, STRAIGHT, STRAIGHT, STRAIGHT, STRAIGHT },
+		{ LEFT, LEFT, LEFT, LEFT, RIGHT, STRAIGHT, LEFT, LEFT, LEFT, LEFT, LEFT, LEFT },
+		{ RIGHT, RIGHT, RIGHT, LEFT, RIGHT, STRAIGHT, RIGHT, RIGHT, RIGHT, RIGHT, RIGHT, RIGHT },
+	};
+
+	// Drive command of each state and turn
+	private static final int[] COMMAND = { DriveEngine.STOP, DriveEngine.STOP, DriveEngine.FORWARD,
+			DriveEngine.BACKWARD, DriveEngine.FORWARD, DriveEngine.BACKWARD, DriveEngine.STOP,
+			DriveEngine.STOP, DriveEngine.STOP, DriveEngine.STOP };
+	private static final int[] TURN_COMMAND = { DriveEngine.NONE, DriveEngine.LEFT, DriveEngine.RIGHT };
+
+	// Mailbox size, a power of two
+	private static final int MAILBOX = 64;
+
+	// Observer of the transitions
+	private final TransitionObserver observer;
+
+	// Current state, turn and command (written by the owner only)
+	private volatile int state = IDLE_FORWARD;
+	private volatile int turn = STRAIGHT;
+	private int command = DriveEngine.STOP;
+
+	// Transition counts per state and event, events handled, and when the
+	// last transition was made (written by the owner only)
+	private final long[] transitions = new long[STATES * EVENTS];
+	private final long[] events = new long[EVENTS];
+	private volatile long lastTransition = 0;
+
+	// Mailbox of events posted by other threads: each slot's sequence is
+	// its position when free and its position + 1 when filled
+	private final int[] mailEvents = new int[MAILBOX];
+	private final long[] mailTimes = new long[MAILBOX];
+	private final AtomicLongArray sequence = new AtomicLongArray(MAILBOX);
+	private final AtomicLong tail = new AtomicLong(0);
+	private long head = 0;
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final LatencyHistogram mailboxLatency;
+
+	// Stopping events posted while the mailbox was full, one bit per event
+	private final AtomicInteger latched = new AtomicInteger(0);
+	private static final int STOPPING = (1 << ESTOP) | (1 << TIMEOUT) | (1 << DRIVE_FAULT);
+
+	/**
+	 * Creates a new DecisionEngine, stopped and facing forward.
+	 * 
+	 * @param observer The observer told of every transition
+	 * @param registry Where to record how long posted events wait
+	 */
+	public DecisionEngine(TransitionObserver observer, LatencyRegistry registry) {
+		this.observer = observer;
+		mailboxLatency = registry.histogram("decision.mailbox");
+		for (int i = 0; i < MAILBOX; i++) {
+			sequence.set(i, i);
+		}
+	}
+
+	/**
+	 * Handles an event at once.  Called by the owner thread only.
+	 * 
+	 * @param event The event
+	 */
+	public void fire(int event) {
+		dispatch(event);
+	}
+
+	/**
+	 * Posts an event for the owner thread to handle.  May be called from
+	 * any thread and never blocks.
+	 * 
+	 * @param event The event
+	 * @return True if the event will be handled, false if it was dropped
+	 *         because the mailbox was full (never for stopping events)
+	 */
+	public boolean post(int event) {
+		long t;
+		int slot;
+		while (true) {
+			t = tail.get();
+			slot = (int) (t & (MAILBOX - 1));
+			long seq = sequence.get(slot);
+			if (seq == t) {
+				if (tail.compareAndSet(t, t + 1)) {
+					break;
+				}
+			} else if (seq < t) {
+				if ((STOPPING & (1 << event)) != 0) {
+					int l;
+					do {
+						l = latched.get();
+					} while (!latched.compareAndSet(l, l | (1 << event)));
+					return true;
+				}
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+		mailEvents[slot] = event;
+		mailTimes[slot] = System.nanoTime();
+		sequence.set(slot, t + 1);
+		return true;
+	}
+
+	/**
+	 * Handles the events posted so far.  Called by the owner thread only.
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			int slot = (int) (head & (MAILBOX - 1));
+			if (sequence.get(slot) != head + 1) {
+				break;
+			}
+			int event = mailEvents[slot];
+			mailboxLatency.recordSince(mailTimes[slot]);
+			sequence.set(slot, head + MAILBOX);
+			head++;
+			dispatch(event);
+		}
+		if (latched.get() != 0) {
+			int l = latched.getAndSet(0);
+			for (int event = 0; event < EVENTS; event++) {
+				if ((l & (1 << event)) != 0) {
+					dispatch(event);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper function that moves both machines on an event and tells the
+	 * observer if either changed.
+	 */
+	private void dispatch(int event) {
+		events[event]++;
+		int from = state;
+		int next = NEXT[from][event];
+		int nextTurn = (next >= ESTOPPED) ? STRAIGHT : TURN_NEXT[turn][event];
+		if (next == from && nextTurn == turn) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		transitions[from * EVENTS + event]++;
+		lastTransition = now;
+		state = next;
+		turn = nextTurn;
+		int c = (nextTurn != STRAIGHT) ? TURN_COMMAND[nextTurn] : COMMAND[next];
+		int issued = (c != command) ? c : DriveEngine.NONE;
+		command = c;
+		observer.transition(now, event, next, nextTurn, issued);
+	}
+
+	/**
+	 * Gets the current state.
+	 */
+	public int getState() {
+		return state;
+	}
+
+	/**
+	 * Gets the current turn.
+	 */
+	public int getTurn() {
+		return turn;
+	}
+
+	/**
+	 * Checks whether the state moves the nxt, ignoring any turn.
+	 */
+	public boolean isMoving() {
+		return COMMAND[state] != DriveEngine.STOP;
+	}
+
+	/**
+	 * Checks whether the state faces forward.
+	 */
+	public boolean isForward() {
+		int s = state;
+		return s != IDLE_BACKWARD && s != BACKWARD && s != STARTING_BACKWARD && s != STOPPING_BACKWARD;
+	}
+
+	/**
+	 * Gets the number of transitions made from a state on an event.
+	 * 
+	 * @param from The state
+	 * @param event The event
+	 */
+	public long getTransitions(int from, int event) {
+		return transitions[from * EVENTS + event];
+	}
+
+	/**
+	 * Gets the number of times an event was handled, whether or not it
+	 * caused a transition.
+	 * 
+	 * @param event The event
+	 */
+	public long getEvents(int event) {
+		return events[event];
+	}
+
+	/**
+	 * Gets the System.nanoTime() of the last transition, 0 if none.
+	 */
+	public long getLastTransition() {
+		return lastTransition;
+	}
+
+	/**
+	 * Gets the number of events dropped because the mailbox was full.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Gets the name of an event.
+	 */
+	public static String eventName(int event) {
+		return EVENT_NAMES[event];
+	}
+
+	/**
+	 * Gets the name of a state.
+	 */
+	public static String stateName(int state) {
+		return STATE_NAMES[state];
+	}
+
+	/**
+	 * Gets the name of a turn.
+	 */
+	public static String turnName(int turn) {
+		return TURN_NAMES[turn];
+	}
+
+	/**
+	 * Formats the transition counts, one line per state and event that
+	 * caused a transition.
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-18s %-11s %-18s %10s%n", "state", "event", "next", "count"));
+		for (int from = 0; from < STATES; from++) {
+			for (int event = 0; event < EVENTS; event++) {
+				long n = transitions[from * EVENTS + event];
+				if (n > 0) {
+					sb.append(String.format("%-18s %-11s %-18s %10d%n", STATE_NAMES[from], EVENT_NAMES[event],
+							STATE_NAMES[NEXT[from][event]], n));
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,19 @@
+package edu.lafayette.bci.control;
+
+/**
+ * Observer of a DecisionEngine.
+ */
+public interface TransitionObserver {
+
+	/**
+	 * Called on the engine's thread after each transition.
+	 * 
+	 * @param time The System.nanoTime() of the transition
+	 * @param event The event that caused it
+	 * @param state The state entered
+	 * @param turn The turn entered
+	 * @param command The DriveEngine command to issue, or DriveEngine.NONE if it has not changed
+	 */
+	public void transition(long time, int event, int state, int turn, int command);
+
+}
@@ -0,0 +1,291 @@
+package edu.lafayette.bci.drive;
+
+import edu.lafayette.bci.metrics.LatencyRegistry;
+import edu.lafayette.bci.watchdog.Deadline;
+
+/**
+ * Sends commands to a DriveTarget on a dedicated thread.  Callers only
+ * record their latest intent and return immediately, so the Bluetooth
+ * or serial round trip is never paid on the processing thread.
+ * 
+ * Only the most recent command is kept: a burst of commands issued while
+ * the target is busy collapses into the last one, and a command identical
+ * to the one already sent to the target is dropped.  Since there is only
+ * a single pending slot, stop() always replaces whatever is waiting and
+ * is the next command the target receives.
+ * 
+ * An optional acknowledgement Deadline runs while a command is waiting
+ * for or being delivered to the target, so a target that stops
+ * returning is noticed.
+ */
+public class DriveEngine implements Runnable {
+
+	// Command codes
+	public static final int NONE = -1;
+	public static final int STOP = 0;
+	public static final int FORWARD = 1;
+	public static final int BACKWARD = 2;
+	public static final int LEFT = 3;
+	public static final int RIGHT = 4;
+
+	// The device being controlled, the thread talking to it and its statistics
+	private final DriveTarget target;
+	private final Thread worker;
+	private final DriveStats stats;
+
+	// Acquisition time of the frame currently being processed, 0 if none
+	private volatile long origin = 0;
+
+	// Deadline for the target to take the pending command, null for none
+	private volatile Deadline ack = null;
+
+	// Pending command and the last command handed to the worker (guarded by lock)
+	private final Object lock = new Object();
+	private int pending = NONE;
+	private double pendingSpeed = 0.0;
+	private long pendingTime = 0;
+	private long pendingOrigin = 0;
+	private int current = NONE;
+	private double currentSpeed = 0.0;
+	private boolean sending = false;
+	private boolean finished = false;
+
+	// Counters
+	private volatile long submitted = 0;
+	private volatile long sent = 0;
+	private volatile long suppressed = 0;
+	private volatile long coalesced = 0;
+
+	/**
+	 * Creates a new DriveEngine and starts its thread.
+	 * 
+	 * @param target The device to send commands to
+	 */
+	public DriveEngine(DriveTarget target) {
+		this.target = target;
+		stats = new DriveStats(LatencyRegistry.getDefault(), target.getName());
+		worker = new Thread(this, "Drive commands (" + target.getName() + ")");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Causes the device to start moving forward.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should travel.
+	 */
+	public void forward(double speed) {
+		submit(FORWARD, speed);
+	}
+
+	/**
+	 * Causes the device to start moving backward.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should travel.
+	 */
+	public void backward(double speed) {
+		submit(BACKWARD, speed);
+	}
+
+	/**
+	 * Causes the device to turn to the left at a given speed.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should turn.
+	 */
+	public void turnLeft(double speed) {
+		submit(LEFT, speed);
+	}
+
+	/**
+	 * Causes the device to turn to the right at a given speed.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should turn.
+	 */
+	public void turnRight(double speed) {
+		submit(RIGHT, speed);
+	}
+
+	/**
+	 * Causes the device to stop moving.  This replaces any pending command.
+	 */
+	public void stop() {
+		submit(STOP, 0.0);
+	}
+
+	/**
+	 * Sets the acquisition time of the frame being processed.  Commands
+	 * submitted afterwards are attributed to this frame in the end-to-end
+	 * latency; commands submitted with no frame set (for example from a
+	 * key press) are measured from their submission.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the frame was acquired, or 0
+	 */
+	public void setOrigin(long timestamp) {
+		origin = timestamp;
+	}
+
+	/**
+	 * Sets the deadline for the target to take commands.  It is armed when
+	 * a command is submitted to an idle engine, restarted each time the
+	 * target returns with another command waiting, and disarmed when no
+	 * command is left.
+	 * 
+	 * @param ack The deadline (see DeadlineWatchdog), or null for none
+	 */
+	public void setAckDeadline(Deadline ack) {
+		this.ack = ack;
+	}
+
+	/**
+	 * Records a command as the latest intent.
+	 * 
+	 * @param command The command code
+	 * @param speed The speed argument of the command
+	 */
+	private void submit(int command, double speed) {
+		synchronized (lock) {
+			submitted++;
+			if (pending != NONE) {
+				// An unsent command is replaced by the newer one
+				coalesced++;
+				pending = NONE;
+			}
+			if (command == current && speed == currentSpeed) {
+				// The device is already doing this; nothing is left to acknowledge
+				// unless the worker is still sending it
+				suppressed++;
+				if (ack != null && !sending) {
+					ack.disarm();
+				}
+				return;
+			}
+			pending = command;
+			pendingSpeed = speed;
+			pendingTime = System.nanoTime();
+			pendingOrigin = (origin != 0) ? origin : pendingTime;
+			if (ack != null && !ack.isArmed()) {
+				ack.reset();
+			}
+			lock.notify();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			int command;
+			double speed;
+			long submittedTime;
+			long originTime;
+			synchronized (lock) {
+				while (pending == NONE && !finished) {
+					try { lock.wait(); } catch (InterruptedException e) {}
+				}
+				if (finished) {
+					return;
+				}
+				command = pending;
+				speed = pendingSpeed;
+				submittedTime = pendingTime;
+				originTime = pendingOrigin;
+				pending = NONE;
+				current = command;
+				currentSpeed = speed;
+				sending = true;
+			}
+			send(command, speed, originTime, submittedTime);
+
+			// The target has returned; keep timing only if another command waits
+			synchronized (lock) {
+				sending = false;
+				if (ack != null) {
+					if (pending == NONE) {
+						ack.disarm();
+					} else {
+						ack.reset();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper function that issues a command to the device.
+	 */
+	private void send(int command, double speed, long originTime, long submittedTime) {
+		try {
+			long start = System.nanoTime();
+			switch (command) {
+				case FORWARD: target.forward(speed); break;
+				case BACKWARD: target.backward(speed); break;
+				case LEFT: target.turnLeft(speed); break;
+				case RIGHT: target.turnRight(speed); break;
+				case STOP: // Same as default
+				default: target.stop();
+			}
+			stats.record(originTime, submittedTime, start, System.nanoTime());
+			sent++;
+		} catch (RuntimeException e) {
+			// Forget the command so the next identical request is retried
+			synchronized (lock) {
+				current = NONE;
+			}
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops the dispatcher thread once the command in progress (if any)
+	 * has completed.  Pending commands are discarded.
+	 */
+	public void finish() {
+		synchronized (lock) {
+			finished = true;
+			lock.notify();
+		}
+		try { worker.join(); } catch (InterruptedException e) {}
+	}
+
+	/**
+	 * Gets the device commands are sent to.
+	 */
+	public DriveTarget getTarget() {
+		return target;
+	}
+
+	/**
+	 * Gets the latency and throughput statistics of the device.
+	 */
+	public DriveStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Gets the number of commands requested by callers.
+	 */
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * Gets the number of commands actually sent to the device.
+	 */
+	public long getSent() {
+		return sent;
+	}
+
+	/**
+	 * Gets the number of commands dropped because the device was already doing them.
+	 */
+	public long getSuppressed() {
+		return suppressed;
+	}
+
+	/**
+	 * Gets the number of unsent commands replaced by a newer command.
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+}
@@ -0,0 +1,98 @@
+package edu.lafayette.bci.drive;
+
+import edu.lafayette.bci.metrics.LatencyHistogram;
+import edu.lafayette.bci.metrics.LatencyRegistry;
+
+/**
+ * Latency and throughput statistics for the commands a DriveEngine sends
+ * to its target.  Three latencies are recorded per command:
+ * <ul>
+ * <li>queue: from the command being submitted to the target being called</li>
+ * <li>call: how long the target call takes (the transport write)</li>
+ * <li>end-to-end: from acquisition of the frame that caused the command
+ * to the target call returning</li>
+ * </ul>
+ * The histograms are registered as drive.name.queue, drive.name.call and
+ * drive.name.end-to-end.
+ */
+public class DriveStats {
+
+	// Time the statistics were started
+	private final long startTime = System.nanoTime();
+
+	// Latency histograms
+	private final LatencyHistogram queue;
+	private final LatencyHistogram call;
+	private final LatencyHistogram endToEnd;
+
+	/**
+	 * Creates a new DriveStats.
+	 * 
+	 * @param registry The registry to create the histograms in
+	 * @param name The name of the target
+	 */
+	public DriveStats(LatencyRegistry registry, String name) {
+		queue = registry.histogram("drive." + name + ".queue");
+		call = registry.histogram("drive." + name + ".call");
+		endToEnd = registry.histogram("drive." + name + ".end-to-end");
+	}
+
+	/**
+	 * Records one command sent to the target.
+	 * 
+	 * @param origin The System.nanoTime() at which the causing frame was acquired
+	 * @param submitted The System.nanoTime() at which the command was submitted
+	 * @param started The System.nanoTime() at which the target was called
+	 * @param completed The System.nanoTime() at which the target call returned
+	 */
+	public void record(long origin, long submitted, long started, long completed) {
+		queue.record(started - submitted);
+		call.record(completed - started);
+		endToEnd.record(completed - origin);
+	}
+
+	/**
+	 * Gets the number of commands sent to the target.
+	 */
+	public long getCommands() {
+		return call.getCount();
+	}
+
+	/**
+	 * Gets the queue latency histogram.
+	 */
+	public LatencyHistogram getQueueLatency() {
+		return queue;
+	}
+
+	/**
+	 * Gets the target call latency histogram.
+	 */
+	public LatencyHistogram getCallLatency() {
+		return call;
+	}
+
+	/**
+	 * Gets the end-to-end latency histogram.
+	 */
+	public LatencyHistogram getEndToEndLatency() {
+		return endToEnd;
+	}
+
+	/**
+	 * Gets the number of commands sent per second since the statistics were started.
+	 */
+	public double getThroughput() {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		return (seconds <= 0) ? 0.0 : getCommands() / seconds;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d commands (%.2f/s), end-to-end p50 %d us p99 %d us, call p99 %d us",
+				getCommands(), getThroughput(),
+				endToEnd.getPercentile(50) / 1000, endToEnd.getPercentile(99) / 1000,
+				call.getPercentile(99) / 1000);
+	}
+
+}
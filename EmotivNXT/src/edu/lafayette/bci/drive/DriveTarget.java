@@ -0,0 +1,56 @@
+package edu.lafayette.bci.drive;
+
+/**
+ * A device that can be driven by the control panels: the NXT robot, the
+ * wheelchair or a simulator.  Speeds are fractions of the device's
+ * maximum speed; devices without speed control ignore them.
+ * 
+ * Implementations may block while the command is delivered.  The panels
+ * therefore never call a target directly but go through a DriveEngine.
+ */
+public interface DriveTarget {
+
+	/**
+	 * Causes the device to start moving forward.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should travel.
+	 */
+	public void forward(double speed);
+
+	/**
+	 * Causes the device to start moving backward.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should travel.
+	 */
+	public void backward(double speed);
+
+	/**
+	 * Causes the device to turn to the left at a given speed.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should turn.
+	 */
+	public void turnLeft(double speed);
+
+	/**
+	 * Causes the device to turn to the right at a given speed.
+	 * 
+	 * @param speed The percentage value of the maximum speed at which the device should turn.
+	 */
+	public void turnRight(double speed);
+
+	/**
+	 * Causes the device to stop moving.
+	 */
+	public void stop();
+
+	/**
+	 * Stops the device and releases its connection.
+	 */
+	public void close();
+
+	/**
+	 * Gets a short name for the device, used in reports.
+	 */
+	public String getName();
+
+}
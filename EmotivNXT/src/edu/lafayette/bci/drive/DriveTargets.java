@@ -0,0 +1,50 @@
+package edu.lafayette.bci.drive;
+
+import edu.lafayette.bci.nxt.NXTControl;
+import edu.lafayette.bci.wheelchair.ChairControl;
+
+/**
+ * Creates DriveTargets by name, so the control panels can be pointed at
+ * a different device without code changes.
+ */
+public class DriveTargets {
+
+	// Recognized target names
+	public static final String NXT = "nxt";
+	public static final String CHAIR = "chair";
+	public static final String SIMULATOR = "sim";
+
+	// System property holding the target name
+	public static final String PROPERTY = "bci.drive";
+
+	private DriveTargets() {}
+
+	/**
+	 * Creates the target named by the bci.drive system property, or the
+	 * given default if the property is not set.
+	 * 
+	 * @param defaultName The target to use if the property is not set
+	 * @return The new target
+	 */
+	public static DriveTarget fromProperty(String defaultName) {
+		return create(System.getProperty(PROPERTY, defaultName));
+	}
+
+	/**
+	 * Creates a target by name.
+	 * 
+	 * @param name One of "nxt", "chair" or "sim"
+	 * @return The new target
+	 */
+	public static DriveTarget create(String name) {
+		if (NXT.equalsIgnoreCase(name)) {
+			return new NXTControl();
+		} else if (CHAIR.equalsIgnoreCase(name)) {
+			return new ChairControl();
+		} else if (SIMULATOR.equalsIgnoreCase(name)) {
+			return new SimulatedDrive();
+		}
+		throw new IllegalArgumentException("Unknown drive target: " + name);
+	}
+
+}
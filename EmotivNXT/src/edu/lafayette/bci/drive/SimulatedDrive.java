@@ -0,0 +1,135 @@
+package edu.lafayette.bci.drive;
+
+/**
+ * An in-process DriveTarget that integrates a differential drive pose
+ * instead of moving hardware.  Each command can be given an artificial
+ * delay to mimic the Bluetooth or serial round trip, so the control loop
+ * can be exercised and timed without a robot or a chair.
+ */
+public class SimulatedDrive implements DriveTarget {
+
+	// Maximum speeds, in mm per second and degrees per second
+	private static final double MAX_LINEAR_SPEED = 200.0;
+	private static final double MAX_TURN_SPEED = 90.0;
+
+	// Artificial delay per command, in milliseconds
+	private final long commandDelay;
+
+	// Current velocities and pose (guarded by this)
+	private double linear = 0.0;
+	private double angular = 0.0;
+	private double x = 0.0;
+	private double y = 0.0;
+	private double heading = 0.0;
+	private long lastUpdate = System.nanoTime();
+
+	/**
+	 * Creates a SimulatedDrive that responds instantly.
+	 */
+	public SimulatedDrive() {
+		this(0);
+	}
+
+	/**
+	 * Creates a new SimulatedDrive.
+	 * 
+	 * @param commandDelay Artificial delay per command, in milliseconds
+	 */
+	public SimulatedDrive(long commandDelay) {
+		this.commandDelay = commandDelay;
+	}
+
+	@Override
+	public void forward(double speed) {
+		command(limiter(speed) * MAX_LINEAR_SPEED, 0.0);
+	}
+
+	@Override
+	public void backward(double speed) {
+		command(-limiter(speed) * MAX_LINEAR_SPEED, 0.0);
+	}
+
+	@Override
+	public void turnLeft(double speed) {
+		command(0.0, limiter(speed) * MAX_TURN_SPEED);
+	}
+
+	@Override
+	public void turnRight(double speed) {
+		command(0.0, -limiter(speed) * MAX_TURN_SPEED);
+	}
+
+	@Override
+	public void stop() {
+		command(0.0, 0.0);
+	}
+
+	@Override
+	public void close() {
+		stop();
+	}
+
+	@Override
+	public String getName() {
+		return "simulator";
+	}
+
+	/**
+	 * Gets the x position, in mm.
+	 */
+	public synchronized double getX() {
+		update();
+		return x;
+	}
+
+	/**
+	 * Gets the y position, in mm.
+	 */
+	public synchronized double getY() {
+		update();
+		return y;
+	}
+
+	/**
+	 * Gets the heading, in degrees counterclockwise from the start.
+	 */
+	public synchronized double getHeading() {
+		update();
+		return heading;
+	}
+
+	/**
+	 * Helper function that delays like a real link, then applies new velocities.
+	 */
+	private void command(double newLinear, double newAngular) {
+		if (commandDelay > 0) {
+			try { Thread.sleep(commandDelay); } catch (InterruptedException e) {}
+		}
+		synchronized (this) {
+			update();
+			linear = newLinear;
+			angular = newAngular;
+		}
+	}
+
+	/**
+	 * Helper function that integrates the pose up to the current time.
+	 */
+	private void update() {
+		long now = System.nanoTime();
+		double dt = (now - lastUpdate) / 1e9;
+		lastUpdate = now;
+		double rad = Math.toRadians(heading);
+		x += linear * Math.cos(rad) * dt;
+		y += linear * Math.sin(rad) * dt;
+		heading += angular * dt;
+	}
+
+	/**
+	 * Helper function that limits a speed to [0, 1].
+	 */
+	private double limiter(double value) {
+		return (value < 0) ? 0 : (value > 1) ? 1 : value;
+	}
+
+}
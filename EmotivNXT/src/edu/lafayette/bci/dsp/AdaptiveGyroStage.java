@@ -0,0 +1,159 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Head rotation detector for a gyro channel that tracks the gyro's
+ * center (its output at rest) instead of calibrating it once.  The
+ * position is the sum of the gyro's deviations from the center, and the
+ * output is the position while it is beyond the threshold in either
+ * direction and 0.0 otherwise, as for the sigproc GyroDetect.
+ * 
+ * The center and the noise around it are tracked with exponentially
+ * weighted averages of the samples within REST_SIGMAS standard
+ * deviations of the center, once HOLD seconds have passed since the
+ * last sample outside that band, so head turns do not move them.  While the
+ * position is within the threshold it also leaks back to zero, which
+ * removes what a slightly wrong center adds up to between turns, so the
+ * detector does not need recentering after every turn.  The first
+ * WARMUP seconds of samples only establish the center, so the head
+ * should be at rest when the detector starts.  The saved state
+ * holds the center and noise but not the position, which does not carry
+ * over between sessions.
+ */
+public class AdaptiveGyroStage implements SampleFilter, StatefulStage {
+
+	// Detector constants
+	public static final double WARMUP = 1.0; // Time spent establishing the center, in seconds
+	public static final double REST_SIGMAS = 4.0; // Deviations from the center still counted as rest
+	public static final double MIN_NOISE = 1.0; // Lower limit of the noise standard deviation
+	public static final double LEAK_TIME = 2.0; // Time constant of the position leak, in seconds
+	public static final double HOLD = 0.25; // Quiet time before samples count as rest again, in seconds
+
+	// Position threshold
+	private final double threshold;
+
+	// Weight of a rest sample in the statistics, the warmup and hold
+	// lengths and the leak per sample
+	private final double weight;
+	private final int warmup;
+	private final int hold;
+	private final double leak;
+
+	// Center statistics and the position
+	private double center = 0.0;
+	private double variance = 0.0;
+	private int count = 0;
+	private int quiet = 0;
+	private double position = 0.0;
+
+	/**
+	 * Creates a new AdaptiveGyroStage.
+	 * 
+	 * @param threshold The position threshold
+	 * @param timeConstant The time constant of the center tracking, in seconds
+	 * @param samplePeriod The sampling period, in seconds
+	 */
+	public AdaptiveGyroStage(double threshold, double timeConstant, double samplePeriod) {
+		this.threshold = threshold;
+		weight = Math.min(1.0, samplePeriod / timeConstant);
+		warmup = Math.max(1, (int) Math.round(WARMUP / samplePeriod));
+		hold = (int) Math.round(HOLD / samplePeriod);
+		leak = Math.exp(-samplePeriod / LEAK_TIME);
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		double d = value - center;
+
+		// Establish the center from plain averages first
+		if (count < warmup) {
+			double w = 1.0 / (count + 1);
+			center += w * d;
+			variance = (1.0 - w) * (variance + w * d * d);
+			count++;
+			return 0.0;
+		}
+
+		// Track the center while the head is at rest
+		double noise = Math.max(MIN_NOISE, Math.sqrt(variance));
+		quiet = (Math.abs(d) <= REST_SIGMAS * noise) ? quiet + 1 : 0;
+		boolean rest = quiet > hold;
+		if (rest) {
+			center += weight * d;
+			variance = (1.0 - weight) * (variance + weight * d * d);
+		}
+
+		position += d;
+		if (rest && Math.abs(position) <= threshold) {
+			position *= leak;
+		}
+		return (Math.abs(position) > threshold) ? position : 0.0;
+	}
+
+	/**
+	 * Takes the current head position as straight ahead and establishes
+	 * the center again over the next WARMUP seconds, like
+	 * GyroDetect.calibrateCenter().  Only needed if the head was moving
+	 * when the center was established.
+	 */
+	public void recenter() {
+		reset();
+	}
+
+	@Override
+	public void reset() {
+		center = 0.0;
+		variance = 0.0;
+		count = 0;
+		quiet = 0;
+		position = 0.0;
+	}
+
+	/**
+	 * Gets the position threshold.
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Gets the tracked center.
+	 */
+	public double getCenter() {
+		return center;
+	}
+
+	/**
+	 * Gets the tracked noise (standard deviation at rest).
+	 */
+	public double getNoise() {
+		return Math.sqrt(variance);
+	}
+
+	/**
+	 * Gets the current position.
+	 */
+	public double getPosition() {
+		return position;
+	}
+
+	@Override
+	public int stateSize() {
+		return 3;
+	}
+
+	@Override
+	public void saveState(double[] state, int offset) {
+		state[offset] = center;
+		state[offset + 1] = variance;
+		state[offset + 2] = count;
+	}
+
+	@Override
+	public void restoreState(double[] state, int offset) {
+		reset();
+		center = state[offset];
+		variance = state[offset + 1];
+		count = Math.min(warmup, (int) state[offset + 2]);
+	}
+
+}
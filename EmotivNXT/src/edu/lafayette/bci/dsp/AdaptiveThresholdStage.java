@@ -0,0 +1,180 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Level threshold that follows the drift of the signal's baseline and
+ * noise floor.  The mean and variance of the signal are tracked with
+ * exponentially weighted averages, from the samples below the threshold
+ * only so that the events being detected do not pull the baseline up.
+ * Once one time constant of samples has been seen, the threshold keeps
+ * its calibrated distance above the tracked baseline.  It also keeps at
+ * least as many noise standard deviations of headroom as it had then,
+ * up to NOISE_SIGMAS, so a rising noise floor raises it.  The distance
+ * never grows beyond MAX_SCALE times the calibrated one; events that
+ * fall below a threshold raised that far would be taken for noise and
+ * raise it further.
+ * 
+ * The output is 1.0 while the input is above the threshold and 0.0
+ * otherwise, as for ThresholdStage.  A signal that stays above the
+ * threshold for a whole time constant is taken to be a new baseline and
+ * tracked again.  The saved state holds the statistics, so a restored
+ * stage adapts from its first sample.
+ */
+public class AdaptiveThresholdStage implements SampleFilter, StatefulStage {
+
+	// Most noise standard deviations of headroom kept, and the limit of
+	// the adapted distance from the baseline relative to the calibrated one
+	public static final double NOISE_SIGMAS = 6.0;
+	public static final double MAX_SCALE = 2.0;
+
+	// Weight of a sample in the statistics and the samples seen before adapting
+	private final double weight;
+	private final int warmup;
+
+	// Calibrated threshold, the headroom kept in standard deviations
+	// (NaN until anchored) and its distance from the baseline
+	private double calibrated;
+	private double sigmas = Double.NaN;
+	private double distance = 0.0;
+
+	// Baseline statistics and the operating threshold
+	private double mean = 0.0;
+	private double variance = 0.0;
+	private int count = 0;
+	private int above = 0;
+	private double threshold;
+
+	/**
+	 * Creates a new AdaptiveThresholdStage.
+	 * 
+	 * @param threshold The calibrated level threshold
+	 * @param timeConstant The time constant of the statistics, in seconds
+	 * @param samplePeriod The sampling period, in seconds
+	 */
+	public AdaptiveThresholdStage(double threshold, double timeConstant, double samplePeriod) {
+		calibrated = threshold;
+		this.threshold = threshold;
+		warmup = Math.max(1, (int) Math.round(timeConstant / samplePeriod));
+		weight = 1.0 / warmup;
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		boolean on = value > threshold;
+		above = on ? above + 1 : 0;
+
+		// Only samples below the threshold describe the baseline
+		if (!on || above > warmup) {
+			// Plain averages until the window has filled, then weighted ones
+			double w = (count < warmup) ? 1.0 / (count + 1) : weight;
+			double d = value - mean;
+			mean += w * d;
+			variance = (1.0 - w) * (variance + w * d * d);
+			if (count < warmup && ++count == warmup) {
+				anchor();
+			}
+			if (!Double.isNaN(sigmas)) {
+				double adapted = Math.max(distance, sigmas * Math.sqrt(variance));
+				threshold = mean + Math.min(MAX_SCALE * distance, adapted);
+			}
+		}
+		return on ? 1.0 : 0.0;
+	}
+
+	/**
+	 * Helper function that expresses the calibrated threshold relative to
+	 * the current baseline statistics.  A threshold that is not above the
+	 * baseline, or a signal without noise, leaves the threshold fixed.
+	 */
+	private void anchor() {
+		double sd = Math.sqrt(variance);
+		distance = calibrated - mean;
+		sigmas = (distance > 0 && sd > 0) ? Math.min(NOISE_SIGMAS, distance / sd) : Double.NaN;
+		threshold = calibrated;
+	}
+
+	@Override
+	public void reset() {
+		mean = 0.0;
+		variance = 0.0;
+		count = 0;
+		above = 0;
+		sigmas = Double.NaN;
+		distance = 0.0;
+		threshold = calibrated;
+	}
+
+	/**
+	 * Gets the operating threshold.
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Gets the calibrated threshold.
+	 */
+	public double getCalibratedThreshold() {
+		return calibrated;
+	}
+
+	/**
+	 * Sets the calibrated threshold.  If the statistics have settled the
+	 * threshold is anchored to them again straight away.
+	 * 
+	 * @param threshold The new calibrated threshold
+	 */
+	public void setThreshold(double threshold) {
+		calibrated = threshold;
+		if (count == warmup) {
+			anchor();
+		} else {
+			this.threshold = threshold;
+		}
+	}
+
+	/**
+	 * Gets the tracked baseline (mean of the signal below the threshold).
+	 */
+	public double getBaseline() {
+		return mean;
+	}
+
+	/**
+	 * Gets the tracked noise floor (standard deviation of the signal
+	 * below the threshold).
+	 */
+	public double getNoise() {
+		return Math.sqrt(variance);
+	}
+
+	/**
+	 * Checks whether the threshold has started adapting.
+	 */
+	public boolean isAdapting() {
+		return !Double.isNaN(sigmas);
+	}
+
+	@Override
+	public int stateSize() {
+		return 3;
+	}
+
+	@Override
+	public void saveState(double[] state, int offset) {
+		state[offset] = mean;
+		state[offset + 1] = variance;
+		state[offset + 2] = count;
+	}
+
+	@Override
+	public void restoreState(double[] state, int offset) {
+		reset();
+		mean = state[offset];
+		variance = state[offset + 1];
+		count = Math.min(warmup, (int) state[offset + 2]);
+		if (count == warmup) {
+			anchor();
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package edu.lafayette.bci.dsp;
+
+import edu.lafayette.bci.sigproc.Algorithm;
+import edu.lafayette.bci.sigproc.Point;
+
+/**
+ * Adapts a sigproc Algorithm so it can run inside a SamplePipeline.
+ * Every call wraps the sample in a Point, so this stage allocates; it
+ * exists as a bridge for algorithms that have no primitive counterpart
+ * yet and should be replaced once one is available.
+ */
+public class AlgorithmStage implements SampleFilter {
+
+	// The wrapped algorithm
+	private final Algorithm algorithm;
+
+	/**
+	 * Creates a new AlgorithmStage.
+	 * 
+	 * @param algorithm The algorithm to wrap
+	 */
+	public AlgorithmStage(Algorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Gets the wrapped algorithm.
+	 */
+	public Algorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		return algorithm.process(new Point(time, value)).getY();
+	}
+
+	/**
+	 * Unsupported, sigproc algorithms cannot be reset.
+	 */
+	@Override
+	public void reset() {}
+
+}
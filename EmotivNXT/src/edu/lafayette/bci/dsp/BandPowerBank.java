@@ -0,0 +1,209 @@
+package edu.lafayette.bci.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Power in several frequency bands for every channel of a block, from a
+ * single sliding DFT per channel.  Each channel keeps the DFT bins of its
+ * last n samples, updated in constant time per bin as each sample arrives;
+ * the bins span every requested band once, so overlapping or adjacent
+ * bands share their bins and adding a band costs at most the few bins it
+ * adds to the span, not another filter chain.
+ * 
+ * A Hann window is applied in the frequency domain (each bin combined
+ * with its two neighbours) to reduce leakage between bands.  The band
+ * powers are recomputed every hop samples, so consecutive windows overlap
+ * by n - hop samples, and held in between.
+ * 
+ * Output channel c * bands + b is the power of input channel c in band b,
+ * in the squared input unit; a sinusoid of amplitude A inside a band
+ * gives A^2 / 2.
+ * 
+ * The control panels do not use band powers yet; the stage is only run
+ * by SigprocBenchmark (see PanelChains.spectral()), ready for a decision
+ * that needs more than alpha.
+ */
+public class BandPowerBank implements MultiChannelStage {
+
+	// Damping of the sliding DFT, which keeps rounding errors from accumulating
+	private static final double DAMPING = 1.0 - 1e-6;
+
+	// Window and hop, in samples
+	private final int window;
+	private final int hop;
+
+	// Bins kept (lowBin - 1 to highBin + 1 for the Hann window) and their twiddles
+	private final int firstBin;
+	private final int bins;
+	private final double[] cos;
+	private final double[] sin;
+	private final double dampingN;
+
+	// First and last bin of each band, relative to firstBin
+	private final int[] bandLow;
+	private final int[] bandHigh;
+
+	// Scale from the sum of squared windowed bins to power
+	private final double scale;
+
+	// Per-channel sample history, bins and band powers
+	private int channels = 0;
+	private double[] history = new double[0];
+	private double[] re = new double[0];
+	private double[] im = new double[0];
+	private double[] power = new double[0];
+	private int position = 0;
+	private int sinceHop = 0;
+
+	/**
+	 * Creates a new BandPowerBank.
+	 * 
+	 * @param bands The lower and upper edge of each band, in Hz
+	 * @param fs The sample rate, in Hz
+	 * @param window The length of the DFT window, in samples (the bin spacing is fs / window)
+	 * @param hop The number of samples between updates of the band powers
+	 */
+	public BandPowerBank(double[][] bands, double fs, int window, int hop) {
+		if (window < 4 || hop < 1) {
+			throw new IllegalArgumentException("Window must be at least 4 samples and hop at least 1");
+		}
+		this.window = window;
+		this.hop = hop;
+
+		// Bins covered by each band
+		double spacing = fs / window;
+		bandLow = new int[bands.length];
+		bandHigh = new int[bands.length];
+		int low = Integer.MAX_VALUE;
+		int high = Integer.MIN_VALUE;
+		for (int b = 0; b < bands.length; b++) {
+			int lo = (int) Math.ceil(bands[b][0] / spacing - 1e-9);
+			int hi = (int) Math.floor(bands[b][1] / spacing + 1e-9);
+			if (bands[b][0] >= bands[b][1] || lo > hi || lo < 1 || hi >= window / 2) {
+				throw new IllegalArgumentException("Band " + bands[b][0] + "-" + bands[b][1]
+						+ " Hz has no DFT bins between 0 and " + fs / 2 + " Hz at " + spacing + " Hz spacing");
+			}
+			bandLow[b] = lo;
+			bandHigh[b] = hi;
+			low = Math.min(low, lo);
+			high = Math.max(high, hi);
+		}
+		firstBin = low - 1;
+		bins = high - low + 3;
+		for (int b = 0; b < bands.length; b++) {
+			bandLow[b] -= firstBin;
+			bandHigh[b] -= firstBin;
+		}
+
+		cos = new double[bins];
+		sin = new double[bins];
+		for (int i = 0; i < bins; i++) {
+			double theta = 2 * Math.PI * (firstBin + i) / window;
+			cos[i] = DAMPING * Math.cos(theta);
+			sin[i] = DAMPING * Math.sin(theta);
+		}
+		dampingN = Math.pow(DAMPING, window);
+
+		// Parseval, with the Hann window's mean square of 3/8
+		scale = 2.0 / (window * (double) window * 0.375);
+	}
+
+	@Override
+	public int outputChannels(int inputChannels) {
+		channels = inputChannels;
+		history = new double[inputChannels * window];
+		re = new double[inputChannels * bins];
+		im = new double[inputChannels * bins];
+		power = new double[inputChannels * bandLow.length];
+		return inputChannels * bandLow.length;
+	}
+
+	@Override
+	public void process(FrameBlock in, FrameBlock out) {
+		final int n = channels;
+		final int bands = bandLow.length;
+		final double[] x = in.data();
+		final double[] y = out.data();
+
+		for (int f = 0; f < in.size(); f++) {
+			final int base = f * n;
+
+			// Slide every bin of every channel by one sample
+			for (int c = 0; c < n; c++) {
+				double v = x[base + c];
+				int h = c * window + position;
+				double delta = v - dampingN * history[h];
+				history[h] = v;
+				slide(c * bins, delta);
+			}
+			position = (position + 1 == window) ? 0 : position + 1;
+
+			// Recompute the band powers once per hop
+			if (++sinceHop == hop) {
+				sinceHop = 0;
+				for (int c = 0; c < n; c++) {
+					bandPowers(c);
+				}
+			}
+			System.arraycopy(power, 0, y, f * n * bands, n * bands);
+		}
+	}
+
+	/**
+	 * Helper function that advances the bins of one channel:
+	 * X = e^(j 2 pi k / n) (X + delta), damped.
+	 */
+	private void slide(int offset, double delta) {
+		final double[] r = re;
+		final double[] q = im;
+		for (int i = 0; i < bins; i++) {
+			double a = r[offset + i] + delta;
+			double b = q[offset + i];
+			r[offset + i] = a * cos[i] - b * sin[i];
+			q[offset + i] = a * sin[i] + b * cos[i];
+		}
+	}
+
+	/**
+	 * Helper function that sums the Hann windowed bins of each band of
+	 * one channel.
+	 */
+	private void bandPowers(int c) {
+		final int offset = c * bins;
+		final int bands = bandLow.length;
+		for (int b = 0; b < bands; b++) {
+			double sum = 0.0;
+			for (int i = bandLow[b]; i <= bandHigh[b]; i++) {
+				double wr = 0.5 * re[offset + i] - 0.25 * (re[offset + i - 1] + re[offset + i + 1]);
+				double wi = 0.5 * im[offset + i] - 0.25 * (im[offset + i - 1] + im[offset + i + 1]);
+				sum += wr * wr + wi * wi;
+			}
+			power[c * bands + b] = sum * scale;
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(history, 0.0);
+		Arrays.fill(re, 0.0);
+		Arrays.fill(im, 0.0);
+		Arrays.fill(power, 0.0);
+		position = 0;
+		sinceHop = 0;
+	}
+
+	/**
+	 * Gets the number of bands.
+	 */
+	public int getBands() {
+		return bandLow.length;
+	}
+
+	/**
+	 * Gets the number of DFT bins updated per sample and channel.
+	 */
+	public int getBins() {
+		return bins;
+	}
+
+}
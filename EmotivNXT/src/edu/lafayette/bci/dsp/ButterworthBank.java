@@ -0,0 +1,66 @@
+package edu.lafayette.bci.dsp;
+
+import java.util.Arrays;
+
+/**
+ * The same Butterworth filter applied to every channel of a block.  This
+ * is the multi-channel counterpart of ButterworthStage: each channel
+ * keeps its own section state, and each section runs over all frames of
+ * the block at once.
+ */
+public class ButterworthBank implements MultiChannelStage, StatefulStage {
+
+	// Shared coefficients and the per-channel section state
+	private final double[] sos;
+	private final int sections;
+	private double[] state = new double[0];
+
+	/**
+	 * Creates a new ButterworthBank.
+	 * 
+	 * @param order The order of the low pass prototype (a band pass has twice as many poles)
+	 * @param freqs The cutoff frequency (LPF, HPF) or the band edges (BPF), in Hz
+	 * @param fs The sample rate, in Hz
+	 * @param type ButterworthDesign.LPF, HPF or BPF
+	 */
+	public ButterworthBank(int order, double[] freqs, double fs, int type) {
+		sos = ButterworthDesign.sections(order, freqs, fs, type);
+		sections = sos.length / ButterworthDesign.COEFFICIENTS;
+	}
+
+	@Override
+	public int outputChannels(int inputChannels) {
+		state = new double[inputChannels * 2 * sections];
+		return inputChannels;
+	}
+
+	@Override
+	public void process(FrameBlock in, FrameBlock out) {
+		final int n = in.channels();
+		for (int c = 0; c < n; c++) {
+			ButterworthStage.filterBlock(sos, state, c * 2 * sections,
+					in.data(), out.data(), c, n, in.size());
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(state, 0.0);
+	}
+
+	@Override
+	public int stateSize() {
+		return state.length;
+	}
+
+	@Override
+	public void saveState(double[] dest, int offset) {
+		System.arraycopy(state, 0, dest, offset, state.length);
+	}
+
+	@Override
+	public void restoreState(double[] src, int offset) {
+		System.arraycopy(src, offset, state, 0, state.length);
+	}
+
+}
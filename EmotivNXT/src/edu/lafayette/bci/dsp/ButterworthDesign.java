@@ -0,0 +1,255 @@
+package edu.lafayette.bci.dsp;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Designs digital Butterworth filters as cascades of second order
+ * sections (biquads), which stay numerically stable at orders and
+ * sample rates where a single high order difference equation does not.
+ * 
+ * The analog prototype is mapped with the bilinear transform after
+ * prewarping the cutoff frequencies.  As in MATLAB's butter(), the order
+ * is that of the low pass prototype, so a band pass filter of order n has
+ * 2n poles.  Each section is scaled to unit gain at the centre of the
+ * passband, which keeps intermediate values in range.
+ * 
+ * Designs are cached by (order, frequencies, sample rate, type): every
+ * filter built with the same parameters shares one coefficient array.
+ */
+public class ButterworthDesign {
+
+	// Filter types, with the same values as the sigproc Butterworth
+	public static final int LPF = 0;
+	public static final int HPF = 1;
+	public static final int BPF = 2;
+
+	// Coefficients per section: b0, b1, b2, a1, a2 (a0 is 1)
+	public static final int COEFFICIENTS = 5;
+
+	// Designs already computed
+	private static final ConcurrentHashMap<Key, double[]> cache = new ConcurrentHashMap<Key, double[]>();
+
+	private ButterworthDesign() {}
+
+	/**
+	 * Gets the second order sections of a Butterworth filter, designing
+	 * them on first use.  The returned array is shared and must not be
+	 * modified.
+	 * 
+	 * @param order The order of the low pass prototype
+	 * @param freqs The cutoff frequency (LPF, HPF) or the lower and upper band edges (BPF), in Hz
+	 * @param fs The sample rate, in Hz
+	 * @param type LPF, HPF or BPF
+	 * @return COEFFICIENTS values per section, section after section
+	 */
+	public static double[] sections(int order, double[] freqs, double fs, int type) {
+		Key key = new Key(order, freqs, fs, type);
+		double[] sos = cache.get(key);
+		if (sos == null) {
+			sos = design(order, freqs, fs, type);
+			double[] prev = cache.putIfAbsent(key, sos);
+			if (prev != null) {
+				sos = prev;
+			}
+		}
+		return sos;
+	}
+
+	/**
+	 * Helper function that designs the filter.
+	 */
+	private static double[] design(int order, double[] freqs, double fs, int type) {
+		if (order < 1) {
+			throw new IllegalArgumentException("Filter order must be at least 1");
+		}
+		int edges = (type == BPF) ? 2 : 1;
+		if (type < LPF || type > BPF || freqs.length != edges) {
+			throw new IllegalArgumentException("Filter type " + type + " needs " + edges + " frequencies");
+		}
+		for (double f : freqs) {
+			if (f <= 0 || f >= fs / 2) {
+				throw new IllegalArgumentException("Frequency " + f + " Hz is outside (0, " + fs / 2 + ") Hz");
+			}
+		}
+		if (type == BPF && freqs[0] >= freqs[1]) {
+			throw new IllegalArgumentException("Band edges must be increasing");
+		}
+
+		// Prewarped analog frequencies
+		double k = 2 * fs;
+		double w1 = k * Math.tan(Math.PI * freqs[0] / fs);
+		double w2 = (type == BPF) ? k * Math.tan(Math.PI * freqs[1] / fs) : 0;
+
+		// Analog poles (re, im) after the low pass to LPF/HPF/BPF transform
+		int poles = (type == BPF) ? 2 * order : order;
+		double[] re = new double[poles];
+		double[] im = new double[poles];
+		for (int i = 0; i < order; i++) {
+			double theta = Math.PI * (2 * i + order + 1) / (2 * order);
+			double pr = Math.cos(theta);
+			double pi = Math.sin(theta);
+			if (type == LPF) {
+				re[i] = w1 * pr;
+				im[i] = w1 * pi;
+			} else if (type == HPF) {
+				// w1 / p, with |p| = 1
+				re[i] = w1 * pr;
+				im[i] = -w1 * pi;
+			} else {
+				// s = q +/- sqrt(q^2 - w0^2), with q = p * bw / 2
+				double bw = w2 - w1;
+				double w0sq = w1 * w2;
+				double qr = pr * bw / 2;
+				double qi = pi * bw / 2;
+				double dr = qr * qr - qi * qi - w0sq;
+				double di = 2 * qr * qi;
+				double mod = Math.hypot(dr, di);
+				double sr = Math.sqrt((mod + dr) / 2);
+				double si = Math.copySign(Math.sqrt((mod - dr) / 2), di);
+				re[2 * i] = qr + sr;
+				im[2 * i] = qi + si;
+				re[2 * i + 1] = qr - sr;
+				im[2 * i + 1] = qi - si;
+			}
+		}
+
+		// Bilinear transform z = (k + s) / (k - s)
+		for (int i = 0; i < poles; i++) {
+			double nr = k + re[i];
+			double ni = im[i];
+			double dr = k - re[i];
+			double di = -im[i];
+			double d = dr * dr + di * di;
+			re[i] = (nr * dr + ni * di) / d;
+			im[i] = (ni * dr - nr * di) / d;
+		}
+
+		// Reference frequency for unit gain, in radians per sample
+		double ref;
+		if (type == LPF) {
+			ref = 0.0;
+		} else if (type == HPF) {
+			ref = Math.PI;
+		} else {
+			ref = 2 * Math.atan(Math.sqrt(w1 * w2) / k);
+		}
+
+		// One section per complex conjugate pair, real poles paired up,
+		// ordered from the pole furthest from the unit circle
+		int nsections = (poles + 1) / 2;
+		double[] sos = new double[nsections * COEFFICIENTS];
+		double[] radius = new double[nsections];
+		double pendingReal = Double.NaN;
+		int s = 0;
+		for (int i = 0; i < poles; i++) {
+			if (Math.abs(im[i]) > 1e-12) {
+				// Skip the lower half of each conjugate pair
+				if (im[i] > 0) {
+					setSection(sos, s, -2 * re[i], re[i] * re[i] + im[i] * im[i], false, type, ref);
+					radius[s++] = Math.hypot(re[i], im[i]);
+				}
+			} else if (Double.isNaN(pendingReal)) {
+				pendingReal = re[i];
+			} else {
+				setSection(sos, s, -(pendingReal + re[i]), pendingReal * re[i], false, type, ref);
+				radius[s++] = Math.max(Math.abs(pendingReal), Math.abs(re[i]));
+				pendingReal = Double.NaN;
+			}
+		}
+		if (!Double.isNaN(pendingReal)) {
+			setSection(sos, s, -pendingReal, 0.0, true, type, ref);
+			radius[s++] = Math.abs(pendingReal);
+		}
+		sortByRadius(sos, radius);
+		return sos;
+	}
+
+	/**
+	 * Helper function that fills in a section from its poles, placing its
+	 * zeros at z = -1 (LPF), z = 1 (HPF), or one of each (BPF), and scales
+	 * it to unit gain at the reference frequency.
+	 */
+	private static void setSection(double[] sos, int section, double a1, double a2,
+			boolean firstOrder, int type, double ref) {
+		double[] num;
+		if (type == BPF) {
+			num = new double[] { 1, 0, -1 };
+		} else if (firstOrder) {
+			num = new double[] { 1, (type == LPF) ? 1 : -1, 0 };
+		} else {
+			num = new double[] { 1, (type == LPF) ? 2 : -2, 1 };
+		}
+		double[] den = { 1.0, a1, a2 };
+		double gain = magnitude(num, ref) / magnitude(den, ref);
+
+		int c = section * COEFFICIENTS;
+		sos[c] = num[0] / gain;
+		sos[c + 1] = num[1] / gain;
+		sos[c + 2] = num[2] / gain;
+		sos[c + 3] = a1;
+		sos[c + 4] = a2;
+	}
+
+	/**
+	 * Helper function that evaluates |p0 + p1 z^-1 + p2 z^-2| at z = e^jw.
+	 */
+	private static double magnitude(double[] p, double w) {
+		double r = p[0] + p[1] * Math.cos(w) + p[2] * Math.cos(2 * w);
+		double i = -p[1] * Math.sin(w) - p[2] * Math.sin(2 * w);
+		return Math.hypot(r, i);
+	}
+
+	/**
+	 * Helper function that orders sections by increasing pole radius.
+	 */
+	private static void sortByRadius(double[] sos, double[] radius) {
+		for (int i = 1; i < radius.length; i++) {
+			for (int j = i; j > 0 && radius[j - 1] > radius[j]; j--) {
+				double r = radius[j];
+				radius[j] = radius[j - 1];
+				radius[j - 1] = r;
+				for (int c = 0; c < COEFFICIENTS; c++) {
+					double v = sos[j * COEFFICIENTS + c];
+					sos[j * COEFFICIENTS + c] = sos[(j - 1) * COEFFICIENTS + c];
+					sos[(j - 1) * COEFFICIENTS + c] = v;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cache key for a design.
+	 */
+	private static final class Key {
+
+		private final int order;
+		private final double[] freqs;
+		private final double fs;
+		private final int type;
+
+		Key(int order, double[] freqs, double fs, int type) {
+			this.order = order;
+			this.freqs = freqs.clone();
+			this.fs = fs;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return order == k.order && type == k.type && Double.compare(fs, k.fs) == 0
+					&& Arrays.equals(freqs, k.freqs);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((order * 31 + type) * 31 + Double.hashCode(fs)) * 31 + Arrays.hashCode(freqs);
+		}
+
+	}
+
+}
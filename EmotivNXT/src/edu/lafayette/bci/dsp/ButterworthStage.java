@@ -0,0 +1,125 @@
+package edu.lafayette.bci.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Butterworth filter run as a cascade of second order sections in
+ * transposed direct form II.  The coefficients come from
+ * ButterworthDesign, so every stage with the same parameters shares one
+ * design; only the two state values per section belong to the stage.
+ * 
+ * Samples can be filtered one at a time, as a SampleFilter, or a block
+ * at a time with filterBlock(), which runs each section over the whole
+ * block before moving to the next so the coefficients and state stay in
+ * registers.
+ */
+public class ButterworthStage implements SampleFilter, StatefulStage {
+
+	// Shared coefficients and the per-section state
+	private final double[] sos;
+	private final int sections;
+	private final double[] state;
+
+	/**
+	 * Creates a new ButterworthStage.
+	 * 
+	 * @param order The order of the low pass prototype (a band pass has twice as many poles)
+	 * @param freqs The cutoff frequency (LPF, HPF) or the band edges (BPF), in Hz
+	 * @param fs The sample rate, in Hz
+	 * @param type ButterworthDesign.LPF, HPF or BPF
+	 */
+	public ButterworthStage(int order, double[] freqs, double fs, int type) {
+		sos = ButterworthDesign.sections(order, freqs, fs, type);
+		sections = sos.length / ButterworthDesign.COEFFICIENTS;
+		state = new double[2 * sections];
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		final double[] c = sos;
+		final double[] z = state;
+		double x = value;
+		for (int s = 0, k = 0, j = 0; s < sections; s++, k += 5, j += 2) {
+			double y = c[k] * x + z[j];
+			z[j] = c[k + 1] * x - c[k + 3] * y + z[j + 1];
+			z[j + 1] = c[k + 2] * x - c[k + 4] * y;
+			x = y;
+		}
+		return x;
+	}
+
+	/**
+	 * Filters a block of samples.  The input and output may be the same
+	 * array.
+	 * 
+	 * @param in The input samples
+	 * @param out Where to write the filtered samples
+	 * @param length The number of samples
+	 */
+	public void filterBlock(double[] in, double[] out, int length) {
+		filterBlock(sos, state, 0, in, out, 0, 1, length);
+	}
+
+	/**
+	 * Runs a cascade over a strided block of samples.  The first section
+	 * reads the input and every later one works in place on the output.
+	 * 
+	 * @param sos The sections
+	 * @param state The state, two values per section
+	 * @param stateOffset The position of the first section's state
+	 * @param in The input samples
+	 * @param out Where to write the filtered samples
+	 * @param offset The position of the first sample
+	 * @param stride The distance between consecutive samples
+	 * @param length The number of samples
+	 */
+	static void filterBlock(double[] sos, double[] state, int stateOffset,
+			double[] in, double[] out, int offset, int stride, int length) {
+		final int end = offset + length * stride;
+		double[] src = in;
+		for (int k = 0, j = stateOffset; k < sos.length; k += 5, j += 2) {
+			final double b0 = sos[k], b1 = sos[k + 1], b2 = sos[k + 2];
+			final double a1 = sos[k + 3], a2 = sos[k + 4];
+			double z1 = state[j];
+			double z2 = state[j + 1];
+			for (int i = offset; i < end; i += stride) {
+				double x = src[i];
+				double y = b0 * x + z1;
+				z1 = b1 * x - a1 * y + z2;
+				z2 = b2 * x - a2 * y;
+				out[i] = y;
+			}
+			state[j] = z1;
+			state[j + 1] = z2;
+			src = out;
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(state, 0.0);
+	}
+
+	@Override
+	public int stateSize() {
+		return state.length;
+	}
+
+	@Override
+	public void saveState(double[] dest, int offset) {
+		System.arraycopy(state, 0, dest, offset, state.length);
+	}
+
+	@Override
+	public void restoreState(double[] src, int offset) {
+		System.arraycopy(src, offset, state, 0, state.length);
+	}
+
+	/**
+	 * Gets the number of second order sections.
+	 */
+	public int getSections() {
+		return sections;
+	}
+
+}
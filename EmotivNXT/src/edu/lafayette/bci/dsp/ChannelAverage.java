@@ -0,0 +1,62 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Averages groups of channels into single output channels.  Output
+ * channel i is the mean of the input channels listed in groups[i], for
+ * example {{O1, O2}, {AF3, AF4}} produces an occipital and a frontal
+ * channel.
+ */
+public class ChannelAverage implements MultiChannelStage {
+
+	// Input channel indices making up each output channel
+	private final int[][] groups;
+
+	/**
+	 * Creates a new ChannelAverage.
+	 * 
+	 * @param groups The input channel indices of each output channel
+	 */
+	public ChannelAverage(int[][] groups) {
+		for (int i = 0; i < groups.length; i++) {
+			if (groups[i].length == 0) {
+				throw new IllegalArgumentException("Channel group " + i + " is empty");
+			}
+		}
+		this.groups = groups;
+	}
+
+	@Override
+	public int outputChannels(int inputChannels) {
+		for (int[] group : groups) {
+			for (int c : group) {
+				if (c < 0 || c >= inputChannels) {
+					throw new IllegalArgumentException("Channel " + c + " is not an input channel");
+				}
+			}
+		}
+		return groups.length;
+	}
+
+	@Override
+	public void process(FrameBlock in, FrameBlock out) {
+		final int n = in.channels();
+		final int m = groups.length;
+		final double[] x = in.data();
+		final double[] y = out.data();
+
+		for (int f = 0; f < in.size(); f++) {
+			for (int g = 0; g < m; g++) {
+				final int[] group = groups[g];
+				double sum = 0.0;
+				for (int k = 0; k < group.length; k++) {
+					sum += x[f * n + group[k]];
+				}
+				y[f * m + g] = sum / group.length;
+			}
+		}
+	}
+
+	@Override
+	public void reset() {}
+
+}
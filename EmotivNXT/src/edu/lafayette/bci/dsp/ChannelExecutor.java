@@ -0,0 +1,228 @@
+package edu.lafayette.bci.dsp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.lafayette.bci.metrics.LatencyHistogram;
+
+/**
+ * Runs one SamplePipeline per channel across several threads, one frame
+ * at a time.  Each worker owns a fixed, contiguous range of channels for
+ * its whole life, so a channel's filter state is only ever touched by one
+ * thread and stays in that thread's cache; the calling thread processes
+ * the first range itself.
+ * 
+ * process() returns only once every channel has finished the frame (the
+ * frame barrier) or its deadline has passed.  Outputs are written by
+ * channel index, so they are identical to running the pipelines one
+ * after another.  A frame that misses its deadline leaves the caller's
+ * output untouched and is counted; the next frame waits for it to finish
+ * before starting, since the channel state must advance in order.
+ * 
+ * The control panels still process only the electrodes they decide on,
+ * on their processing thread; the executor is only run by
+ * SigprocBenchmark (over PanelChains.sensorAlpha()) for now.
+ */
+public class ChannelExecutor {
+
+	// Number of polls before a waiting thread parks
+	private static final int SPIN_LIMIT = 200;
+
+	// Per-channel pipelines and the channel range of each thread (index 0 is the caller)
+	private final SamplePipeline[] pipelines;
+	private final int[] rangeStart;
+	private final Worker[] workers;
+
+	// Current frame: its time, inputs and outputs
+	private double time = 0.0;
+	private final double[] input;
+	private final double[] output;
+
+	// Frame hand-off: a new generation starts a frame, remaining counts
+	// the workers still processing it
+	private volatile long generation = 0;
+	private final AtomicInteger remaining = new AtomicInteger(0);
+	private volatile Thread waiter = null;
+	private volatile boolean finished = false;
+
+	// Statistics
+	private volatile long frames = 0;
+	private volatile long misses = 0;
+	private LatencyHistogram frameLatency = null;
+
+	/**
+	 * Creates a new ChannelExecutor and starts its worker threads.
+	 * 
+	 * @param pipelines One pipeline per channel
+	 * @param threads The number of threads to use, including the caller
+	 */
+	public ChannelExecutor(SamplePipeline[] pipelines, int threads) {
+		int n = pipelines.length;
+		threads = Math.max(1, Math.min(threads, n));
+		this.pipelines = pipelines;
+		input = new double[n];
+		output = new double[n];
+
+		// Split the channels as evenly as possible
+		rangeStart = new int[threads + 1];
+		for (int t = 0; t <= threads; t++) {
+			rangeStart[t] = t * n / threads;
+		}
+
+		workers = new Worker[threads - 1];
+		for (int t = 1; t < threads; t++) {
+			workers[t - 1] = new Worker(t);
+			workers[t - 1].start();
+		}
+	}
+
+	/**
+	 * Processes one frame on every channel.
+	 * 
+	 * @param time The time of the frame, in seconds
+	 * @param values The input of each channel
+	 * @param out Where to write the output of each channel
+	 * @param deadline The System.nanoTime() by which the frame must be done
+	 * @return True if the frame finished in time and out holds its outputs
+	 */
+	public boolean process(double time, double[] values, double[] out, long deadline) {
+		long start = System.nanoTime();
+
+		// A late frame still owns the channel state
+		awaitWorkers(0, false);
+
+		// Publish the frame; the volatile write makes the inputs visible
+		this.time = time;
+		System.arraycopy(values, 0, input, 0, input.length);
+		waiter = Thread.currentThread();
+		remaining.set(workers.length);
+		generation++;
+		for (Worker w : workers) {
+			LockSupport.unpark(w);
+		}
+
+		// Do the first range here while the workers do theirs
+		runRange(0);
+
+		boolean done = awaitWorkers(deadline, true);
+		frames++;
+		if (!done) {
+			misses++;
+			return false;
+		}
+		System.arraycopy(output, 0, out, 0, output.length);
+		if (frameLatency != null) {
+			frameLatency.recordSince(start);
+		}
+		return true;
+	}
+
+	/**
+	 * Helper function that runs the pipelines of one thread's range.
+	 */
+	private void runRange(int thread) {
+		final double t = time;
+		for (int c = rangeStart[thread]; c < rangeStart[thread + 1]; c++) {
+			output[c] = pipelines[c].push(t, input[c]);
+		}
+	}
+
+	/**
+	 * Helper function that waits for the workers to finish the current
+	 * frame, spinning briefly before parking.
+	 * 
+	 * @param deadline The System.nanoTime() at which to give up
+	 * @param timed False to wait however long it takes
+	 * @return False if the deadline passed first
+	 */
+	private boolean awaitWorkers(long deadline, boolean timed) {
+		int spins = 0;
+		while (remaining.get() != 0) {
+			long left = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+			if (left <= 0) {
+				return false;
+			}
+			if (++spins > SPIN_LIMIT) {
+				LockSupport.parkNanos(this, left);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records the time from the start of each frame to its barrier.
+	 * 
+	 * @param histogram The histogram to record into
+	 */
+	public void instrument(LatencyHistogram histogram) {
+		frameLatency = histogram;
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public void finish() {
+		finished = true;
+		for (Worker w : workers) {
+			LockSupport.unpark(w);
+		}
+	}
+
+	/**
+	 * Gets the number of threads processing each frame, including the caller.
+	 */
+	public int getThreads() {
+		return workers.length + 1;
+	}
+
+	/**
+	 * Gets the number of frames processed.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Gets the number of frames that missed their deadline.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * A thread that processes one range of channels for every frame.
+	 */
+	private class Worker extends Thread {
+
+		private final int index;
+		private long seen = 0;
+
+		Worker(int index) {
+			super("Channel worker " + index);
+			this.index = index;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			int spins = 0;
+			while (!finished) {
+				long g = generation;
+				if (g == seen) {
+					if (++spins > SPIN_LIMIT) {
+						LockSupport.park(this);
+					}
+					continue;
+				}
+				spins = 0;
+				seen = g;
+				runRange(index);
+				if (remaining.decrementAndGet() == 0) {
+					LockSupport.unpark(waiter);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,45 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Performs rising and falling edge detection on a digital signal.
+ * The output is 1.0 on a rising edge, -1.0 on a falling edge and 0.0
+ * otherwise.
+ */
+public class EdgeDetectStage implements SampleFilter, StatefulStage {
+
+	// Previous input value
+	private double prev = 0.0;
+
+	@Override
+	public double filter(double time, double value) {
+		double out = 0.0;
+		if (value > prev) {
+			out = 1.0;
+		} else if (value < prev) {
+			out = -1.0;
+		}
+		prev = value;
+		return out;
+	}
+
+	@Override
+	public void reset() {
+		prev = 0.0;
+	}
+
+	@Override
+	public int stateSize() {
+		return 1;
+	}
+
+	@Override
+	public void saveState(double[] state, int offset) {
+		state[offset] = prev;
+	}
+
+	@Override
+	public void restoreState(double[] state, int offset) {
+		prev = state[offset];
+	}
+
+}
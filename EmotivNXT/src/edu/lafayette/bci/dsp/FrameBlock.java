@@ -0,0 +1,138 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * A block of multi-channel samples stored in one flat primitive array.
+ * Samples are laid out frame by frame: all channels of the first frame,
+ * then all channels of the second frame and so on.  Keeping the channels
+ * of a frame adjacent lets the filter loops run over channels with unit
+ * stride, which the JIT can vectorize since the channels are independent.
+ */
+public class FrameBlock {
+
+	// Layout of the block
+	private final int channels;
+	private final int capacity;
+	private int size = 0;
+
+	// Sample values (capacity x channels) and frame times
+	private final double[] data;
+	private final double[] times;
+
+	/**
+	 * Creates a new FrameBlock.
+	 * 
+	 * @param channels The number of channels in each frame
+	 * @param capacity The maximum number of frames in the block
+	 */
+	public FrameBlock(int channels, int capacity) {
+		if (channels < 1 || capacity < 1) {
+			throw new IllegalArgumentException("A block needs at least one channel and one frame");
+		}
+		this.channels = channels;
+		this.capacity = capacity;
+		data = new double[channels * capacity];
+		times = new double[capacity];
+	}
+
+	/**
+	 * Gets the number of channels in each frame.
+	 */
+	public int channels() {
+		return channels;
+	}
+
+	/**
+	 * Gets the maximum number of frames in the block.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of valid frames in the block.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sets the number of valid frames in the block.
+	 * 
+	 * @param size The number of frames, at most capacity()
+	 */
+	public void setSize(int size) {
+		if (size < 0 || size > capacity) {
+			throw new IllegalArgumentException("Block size must be between 0 and " + capacity);
+		}
+		this.size = size;
+	}
+
+	/**
+	 * Gets the backing array of sample values.  The value of a channel in
+	 * a frame is at index(frame, channel).
+	 */
+	public double[] data() {
+		return data;
+	}
+
+	/**
+	 * Gets the backing array of frame times, in seconds.
+	 */
+	public double[] times() {
+		return times;
+	}
+
+	/**
+	 * Gets the position of a sample in the backing array.
+	 * 
+	 * @param frame The frame index
+	 * @param channel The channel index
+	 */
+	public int index(int frame, int channel) {
+		return frame * channels + channel;
+	}
+
+	/**
+	 * Gets the value of a sample.
+	 * 
+	 * @param frame The frame index
+	 * @param channel The channel index
+	 */
+	public double get(int frame, int channel) {
+		return data[frame * channels + channel];
+	}
+
+	/**
+	 * Sets the value of a sample.
+	 * 
+	 * @param frame The frame index
+	 * @param channel The channel index
+	 * @param value The new value
+	 */
+	public void set(int frame, int channel, double value) {
+		data[frame * channels + channel] = value;
+	}
+
+	/**
+	 * Gets the time of a frame.
+	 * 
+	 * @param frame The frame index
+	 * @return The frame time, in seconds
+	 */
+	public double timeAt(int frame) {
+		return times[frame];
+	}
+
+	/**
+	 * Replaces the contents of the block with a single frame.
+	 * 
+	 * @param time The frame time, in seconds
+	 * @param values The value of each channel, at least channels() long
+	 */
+	public void setFrame(double time, double[] values) {
+		System.arraycopy(values, 0, data, 0, channels);
+		times[0] = time;
+		size = 1;
+	}
+
+}
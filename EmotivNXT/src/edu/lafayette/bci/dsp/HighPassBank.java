@@ -0,0 +1,102 @@
+package edu.lafayette.bci.dsp;
+
+import java.util.Arrays;
+
+/**
+ * First order (RC) high pass filter applied to every channel of a block.
+ * This is the multi-channel counterpart of HighPassStage: the filter
+ * coefficient is computed once per frame and the inner loop then runs
+ * over the channels, which are independent of each other.  Like
+ * HighPassStage, a restored bank continues from its saved outputs.
+ */
+public class HighPassBank implements MultiChannelStage, StatefulStage {
+
+	// Time constant of the equivalent RC circuit, in seconds
+	private final double rc;
+
+	// Per-channel filter state
+	private double[] prevIn = new double[0];
+	private double[] prevOut = new double[0];
+	private double prevTime = 0.0;
+	private boolean primed = false;
+
+	/**
+	 * Creates a new HighPassBank.
+	 * 
+	 * @param cutoff The cutoff frequency, in Hz
+	 */
+	public HighPassBank(double cutoff) {
+		rc = 1.0 / (2.0 * Math.PI * cutoff);
+	}
+
+	@Override
+	public int outputChannels(int inputChannels) {
+		prevIn = new double[inputChannels];
+		prevOut = new double[inputChannels];
+		return inputChannels;
+	}
+
+	@Override
+	public void process(FrameBlock in, FrameBlock out) {
+		final int n = in.channels();
+		final double[] x = in.data();
+		final double[] y = out.data();
+		final double[] xPrev = prevIn;
+		final double[] yPrev = prevOut;
+
+		for (int f = 0; f < in.size(); f++) {
+			final int base = f * n;
+			final double time = in.timeAt(f);
+
+			// The first frame only establishes the initial conditions
+			if (!primed) {
+				System.arraycopy(x, base, xPrev, 0, n);
+				System.arraycopy(yPrev, 0, y, base, n);
+				prevTime = time;
+				primed = true;
+				continue;
+			}
+
+			double dt = time - prevTime;
+			if (dt > 0) {
+				final double alpha = rc / (rc + dt);
+				for (int c = 0; c < n; c++) {
+					double v = alpha * (yPrev[c] + x[base + c] - xPrev[c]);
+					xPrev[c] = x[base + c];
+					yPrev[c] = v;
+					y[base + c] = v;
+				}
+			} else {
+				// No time has elapsed, hold the previous output
+				System.arraycopy(x, base, xPrev, 0, n);
+				System.arraycopy(yPrev, 0, y, base, n);
+			}
+			prevTime = time;
+		}
+	}
+
+	@Override
+	public void reset() {
+		primed = false;
+		prevTime = 0.0;
+		Arrays.fill(prevIn, 0.0);
+		Arrays.fill(prevOut, 0.0);
+	}
+
+	@Override
+	public int stateSize() {
+		return prevOut.length;
+	}
+
+	@Override
+	public void saveState(double[] state, int offset) {
+		System.arraycopy(prevOut, 0, state, offset, prevOut.length);
+	}
+
+	@Override
+	public void restoreState(double[] state, int offset) {
+		reset();
+		System.arraycopy(state, offset, prevOut, 0, prevOut.length);
+	}
+
+}
@@ -0,0 +1,78 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * First order (RC) high pass filter used to remove the drifting DC bias
+ * from the electrode signals.  The filter coefficient is computed from
+ * the time between consecutive samples, so it tolerates jitter in the
+ * sample timestamps.  A restored filter continues from its saved output
+ * and ignores any step between the last input it saw and the first new
+ * one, since that step is a change of electrode bias between sessions.
+ */
+public class HighPassStage implements SampleFilter, StatefulStage {
+
+	// Time constant of the equivalent RC circuit, in seconds
+	private final double rc;
+
+	// Previous input, output and time
+	private double prevIn = 0.0;
+	private double prevOut = 0.0;
+	private double prevTime = 0.0;
+	private boolean primed = false;
+
+	/**
+	 * Creates a new HighPassStage.
+	 * 
+	 * @param cutoff The cutoff frequency, in Hz
+	 */
+	public HighPassStage(double cutoff) {
+		rc = 1.0 / (2.0 * Math.PI * cutoff);
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		// The first sample only establishes the initial conditions
+		if (!primed) {
+			prevIn = value;
+			prevTime = time;
+			primed = true;
+			return prevOut;
+		}
+
+		double dt = time - prevTime;
+		double out = prevOut;
+		if (dt > 0) {
+			double alpha = rc / (rc + dt);
+			out = alpha * (prevOut + value - prevIn);
+		}
+
+		prevIn = value;
+		prevOut = out;
+		prevTime = time;
+		return out;
+	}
+
+	@Override
+	public void reset() {
+		primed = false;
+		prevIn = 0.0;
+		prevOut = 0.0;
+		prevTime = 0.0;
+	}
+
+	@Override
+	public int stateSize() {
+		return 1;
+	}
+
+	@Override
+	public void saveState(double[] state, int offset) {
+		state[offset] = prevOut;
+	}
+
+	@Override
+	public void restoreState(double[] state, int offset) {
+		reset();
+		prevOut = state[offset];
+	}
+
+}
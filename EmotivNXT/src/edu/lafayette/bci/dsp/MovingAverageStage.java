@@ -0,0 +1,63 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Average of the last n samples.  The cost per sample does not depend on
+ * the window length (see RunningSum), so long smoothing windows are as
+ * cheap as short ones.  Until the window has filled, the output is the
+ * average of the samples seen so far.
+ */
+public class MovingAverageStage implements SampleFilter, StatefulStage {
+
+	// Samples in the window
+	private final RunningSum sum;
+
+	/**
+	 * Creates a new MovingAverageStage.
+	 * 
+	 * @param window The number of samples averaged
+	 */
+	public MovingAverageStage(int window) {
+		sum = new RunningSum(window);
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		return sum.add(value) / sum.size();
+	}
+
+	@Override
+	public void reset() {
+		sum.reset();
+	}
+
+	@Override
+	public int stateSize() {
+		return sum.stateSize();
+	}
+
+	@Override
+	public void saveState(double[] state, int offset) {
+		sum.saveState(state, offset);
+	}
+
+	@Override
+	public void restoreState(double[] state, int offset) {
+		sum.restoreState(state, offset);
+	}
+
+	/**
+	 * Gets the average of the samples in the window (the latest output),
+	 * or 0.0 if there are none.
+	 */
+	public double getAverage() {
+		return (sum.size() > 0) ? sum.sum() / sum.size() : 0.0;
+	}
+
+	/**
+	 * Gets the number of samples averaged.
+	 */
+	public int getWindow() {
+		return sum.window();
+	}
+
+}
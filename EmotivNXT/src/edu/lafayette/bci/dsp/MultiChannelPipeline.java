@@ -0,0 +1,213 @@
+package edu.lafayette.bci.dsp;
+
+import edu.lafayette.bci.metrics.LatencyRegistry;
+
+/**
+ * An ordered chain of MultiChannelStages.  All electrodes of a frame are
+ * pushed through the chain together, so the per-frame dispatch cost is
+ * paid once per stage instead of once per stage and channel.  Output
+ * blocks for every stage are allocated when the stage is added, so
+ * processing does not allocate.
+ */
+public class MultiChannelPipeline {
+
+	// Input layout
+	private final int channels;
+	private final FrameBlock input;
+
+	// Stages and their preallocated output blocks
+	private MultiChannelStage[] stages = new MultiChannelStage[0];
+	private FrameBlock[] outputs = new FrameBlock[0];
+
+	/**
+	 * Creates a new MultiChannelPipeline.
+	 * 
+	 * @param channels The number of input channels
+	 * @param capacity The maximum number of frames processed per call
+	 */
+	public MultiChannelPipeline(int channels, int capacity) {
+		this.channels = channels;
+		input = new FrameBlock(channels, capacity);
+	}
+
+	/**
+	 * Appends a stage to the end of the pipeline.
+	 * 
+	 * @param stage The stage to add
+	 */
+	public void addStage(MultiChannelStage stage) {
+		int width = stage.outputChannels(outputChannels());
+
+		MultiChannelStage[] grownStages = new MultiChannelStage[stages.length + 1];
+		FrameBlock[] grownOutputs = new FrameBlock[outputs.length + 1];
+		System.arraycopy(stages, 0, grownStages, 0, stages.length);
+		System.arraycopy(outputs, 0, grownOutputs, 0, outputs.length);
+		grownStages[stages.length] = stage;
+		grownOutputs[outputs.length] = new FrameBlock(width, input.capacity());
+		stages = grownStages;
+		outputs = grownOutputs;
+	}
+
+	/**
+	 * Gets the stage at the given position in the pipeline.
+	 * 
+	 * @param index The position of the stage
+	 */
+	public MultiChannelStage getStage(int index) {
+		return stages[index];
+	}
+
+	/**
+	 * Gets the number of input channels.
+	 */
+	public int inputChannels() {
+		return channels;
+	}
+
+	/**
+	 * Gets the number of channels produced by the last stage.
+	 */
+	public int outputChannels() {
+		return (outputs.length == 0) ? channels : outputs[outputs.length - 1].channels();
+	}
+
+	/**
+	 * Gets the pipeline's input block, so callers can fill it in place
+	 * before calling process(input).
+	 */
+	public FrameBlock getInput() {
+		return input;
+	}
+
+	/**
+	 * Gets the output block of the last stage.
+	 */
+	public FrameBlock getOutput() {
+		return (outputs.length == 0) ? input : outputs[outputs.length - 1];
+	}
+
+	/**
+	 * Pushes a single frame through the pipeline.
+	 * 
+	 * @param time The frame time, in seconds
+	 * @param values The value of each input channel
+	 * @return The output block of the last stage
+	 */
+	public FrameBlock pushFrame(double time, double[] values) {
+		input.setFrame(time, values);
+		return process(input);
+	}
+
+	/**
+	 * Pushes a block of frames through the pipeline.
+	 * 
+	 * @param block The input block, with inputChannels() channels
+	 * @return The output block of the last stage
+	 */
+	public FrameBlock process(FrameBlock block) {
+		if (block.channels() != channels) {
+			throw new IllegalArgumentException("Expected " + channels + " channels, got " + block.channels());
+		}
+
+		FrameBlock in = block;
+		for (int i = 0; i < stages.length; i++) {
+			FrameBlock out = outputs[i];
+			out.setSize(in.size());
+			System.arraycopy(in.times(), 0, out.times(), 0, in.size());
+			stages[i].process(in, out);
+			in = out;
+		}
+		return in;
+	}
+
+	/**
+	 * Wraps every stage in the pipeline in a TimedStage, recording into
+	 * histograms named prefix.index.StageName.  Call once during setup;
+	 * getStage() then returns the TimedStages.
+	 * 
+	 * @param registry The registry to create the histograms in
+	 * @param prefix The prefix of the histogram names
+	 */
+	public void instrument(LatencyRegistry registry, String prefix) {
+		for (int i = 0; i < stages.length; i++) {
+			String name = stages[i].getClass().getSimpleName();
+			stages[i] = new TimedStage(stages[i], registry.histogram(prefix + "." + i + "." + name));
+		}
+	}
+
+	/**
+	 * Resets every stage in the pipeline.
+	 */
+	public void reset() {
+		for (int i = 0; i < stages.length; i++) {
+			stages[i].reset();
+		}
+	}
+
+	/**
+	 * Gets the number of values saved by saveState().
+	 */
+	public int stateSize() {
+		int size = 0;
+		for (int i = 0; i < stages.length; i++) {
+			StatefulStage s = stateful(stages[i]);
+			if (s != null) {
+				size += s.stateSize();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Saves the state of every StatefulStage in the pipeline, in
+	 * pipeline order.
+	 * 
+	 * @return The state of the pipeline
+	 */
+	public double[] saveState() {
+		double[] state = new double[stateSize()];
+		int offset = 0;
+		for (int i = 0; i < stages.length; i++) {
+			StatefulStage s = stateful(stages[i]);
+			if (s != null) {
+				s.saveState(state, offset);
+				offset += s.stateSize();
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Restores a state saved by saveState() from a pipeline with the same
+	 * stages.  Call before the first frame is pushed.
+	 * 
+	 * @param state The state of the pipeline
+	 * @return False, leaving the pipeline unchanged, if the state does not fit it
+	 */
+	public boolean restoreState(double[] state) {
+		if (state == null || state.length != stateSize()) {
+			return false;
+		}
+		int offset = 0;
+		for (int i = 0; i < stages.length; i++) {
+			StatefulStage s = stateful(stages[i]);
+			if (s != null) {
+				s.restoreState(state, offset);
+				offset += s.stateSize();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper function that gets a stage as a StatefulStage, looking
+	 * through the timing wrapper, or null if it has no state to save.
+	 */
+	private static StatefulStage stateful(MultiChannelStage stage) {
+		if (stage instanceof TimedStage) {
+			stage = ((TimedStage) stage).getStage();
+		}
+		return (stage instanceof StatefulStage) ? (StatefulStage) stage : null;
+	}
+
+}
@@ -0,0 +1,36 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * A processing step that operates on every channel of a FrameBlock at
+ * once.  A stage may change the number of channels (for example when
+ * averaging electrodes), so the pipeline asks it for its output width
+ * when it is added and preallocates the output block.
+ */
+public interface MultiChannelStage {
+
+	/**
+	 * Gets the number of channels this stage produces.  This is called
+	 * once when the stage is added to a pipeline, so stages may size
+	 * their per-channel state here.
+	 * 
+	 * @param inputChannels The number of channels the stage receives
+	 * @return The number of output channels
+	 */
+	public int outputChannels(int inputChannels);
+
+	/**
+	 * Processes a block.  The output block has already been sized to
+	 * the same number of frames as the input and carries the same frame
+	 * times.
+	 * 
+	 * @param in The input block
+	 * @param out The output block
+	 */
+	public void process(FrameBlock in, FrameBlock out);
+
+	/**
+	 * Clears any internal state.
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,56 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Average power (mean of the squared samples) over a sliding window of
+ * fixed duration.  The cost per sample does not depend on the window
+ * length (see RunningSum).  Until the window has filled, the output is
+ * the power of the samples seen so far.
+ */
+public class PowerStage implements SampleFilter, StatefulStage {
+
+	// Squared samples in the window
+	private final RunningSum sum;
+
+	/**
+	 * Creates a new PowerStage.
+	 * 
+	 * @param window The duration of the window, in seconds
+	 * @param samplePeriod The sampling period, in seconds
+	 */
+	public PowerStage(double window, double samplePeriod) {
+		sum = new RunningSum(Math.max(1, (int) Math.round(window / samplePeriod)));
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		return sum.add(value * value) / sum.size();
+	}
+
+	@Override
+	public void reset() {
+		sum.reset();
+	}
+
+	@Override
+	public int stateSize() {
+		return sum.stateSize();
+	}
+
+	@Override
+	public void saveState(double[] state, int offset) {
+		sum.saveState(state, offset);
+	}
+
+	@Override
+	public void restoreState(double[] state, int offset) {
+		sum.restoreState(state, offset);
+	}
+
+	/**
+	 * Gets the number of samples in the window.
+	 */
+	public int getWindow() {
+		return sum.window();
+	}
+
+}
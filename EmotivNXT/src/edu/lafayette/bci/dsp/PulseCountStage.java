@@ -0,0 +1,63 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Counts rising edges and signals a detection when a given number of
+ * pulses occur within a time window.  The input must be the output of
+ * an EdgeDetectStage.  The output is 1.0 on the sample that completes
+ * the pulse train and 0.0 otherwise.  The pulse times are kept in a
+ * preallocated ring, so no allocation happens per sample.
+ */
+public class PulseCountStage implements SampleFilter {
+
+	// Detection parameters
+	private final int count;
+	private final double window;
+
+	// Ring of the most recent pulse times
+	private final double[] pulses;
+	private int head = 0;
+	private int size = 0;
+
+	/**
+	 * Creates a new PulseCountStage.
+	 * 
+	 * @param count The number of pulses needed for a detection
+	 * @param window The time within which the pulses must occur, in seconds
+	 */
+	public PulseCountStage(int count, double window) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Pulse count must be at least 1");
+		}
+		this.count = count;
+		this.window = window;
+		pulses = new double[count];
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		// Only rising edges are counted
+		if (value != 1.0) {
+			return 0.0;
+		}
+
+		pulses[head] = time;
+		head = (head + 1 == count) ? 0 : head + 1;
+		if (size < count) {
+			size++;
+		}
+
+		// The oldest pulse in a full ring is the one at head
+		if (size == count && time - pulses[head] <= window) {
+			size = 0;
+			return 1.0;
+		}
+		return 0.0;
+	}
+
+	@Override
+	public void reset() {
+		head = 0;
+		size = 0;
+	}
+
+}
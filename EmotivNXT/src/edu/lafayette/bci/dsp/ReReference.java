@@ -0,0 +1,76 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Re-references every channel of a block by subtracting the mean of a
+ * set of reference channels.  With no reference channels given, the
+ * mean of all channels is used (common average reference).
+ */
+public class ReReference implements MultiChannelStage {
+
+	// Reference channel indices, or null for the common average
+	private final int[] references;
+
+	/**
+	 * Creates a ReReference stage using the common average reference.
+	 */
+	public ReReference() {
+		references = null;
+	}
+
+	/**
+	 * Creates a ReReference stage using the mean of the given channels.
+	 * 
+	 * @param references The reference channel indices
+	 */
+	public ReReference(int[] references) {
+		if (references.length == 0) {
+			throw new IllegalArgumentException("At least one reference channel is needed");
+		}
+		this.references = references;
+	}
+
+	@Override
+	public int outputChannels(int inputChannels) {
+		if (references != null) {
+			for (int c : references) {
+				if (c < 0 || c >= inputChannels) {
+					throw new IllegalArgumentException("Channel " + c + " is not an input channel");
+				}
+			}
+		}
+		return inputChannels;
+	}
+
+	@Override
+	public void process(FrameBlock in, FrameBlock out) {
+		final int n = in.channels();
+		final double[] x = in.data();
+		final double[] y = out.data();
+
+		for (int f = 0; f < in.size(); f++) {
+			final int base = f * n;
+
+			// Mean of the reference channels in this frame
+			double ref = 0.0;
+			if (references == null) {
+				for (int c = 0; c < n; c++) {
+					ref += x[base + c];
+				}
+				ref /= n;
+			} else {
+				for (int k = 0; k < references.length; k++) {
+					ref += x[base + references[k]];
+				}
+				ref /= references.length;
+			}
+
+			for (int c = 0; c < n; c++) {
+				y[base + c] = x[base + c] - ref;
+			}
+		}
+	}
+
+	@Override
+	public void reset() {}
+
+}
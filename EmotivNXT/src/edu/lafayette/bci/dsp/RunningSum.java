@@ -0,0 +1,134 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Sum of the last n values, updated in constant time per value from a
+ * preallocated ring.  Adding the new value and subtracting the one that
+ * leaves the window lets rounding error build up over a long session, so
+ * a second sum is rebuilt from scratch alongside it: every n values it
+ * holds exactly the current window and replaces the running sum.  The
+ * drift is therefore bounded by one window's worth of additions while
+ * the cost stays constant, with no periodic O(n) recomputation.
+ */
+public class RunningSum {
+
+	// Ring of the values in the window
+	private final double[] ring;
+	private int head = 0;
+	private int size = 0;
+
+	// Running sum of the window and the sum being rebuilt
+	private double sum = 0.0;
+	private double fresh = 0.0;
+	private int freshCount = 0;
+
+	/**
+	 * Creates a new RunningSum.
+	 * 
+	 * @param window The number of values summed
+	 */
+	public RunningSum(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must hold at least 1 value");
+		}
+		ring = new double[window];
+	}
+
+	/**
+	 * Adds a value, dropping the oldest one if the window is full.
+	 * 
+	 * @param value The value to add
+	 * @return The sum of the values in the window
+	 */
+	public double add(double value) {
+		if (size == ring.length) {
+			sum -= ring[head];
+		} else {
+			size++;
+		}
+		ring[head] = value;
+		head = (head + 1 == ring.length) ? 0 : head + 1;
+		sum += value;
+
+		// The rebuilt sum covers exactly the window once it has seen n values
+		fresh += value;
+		if (++freshCount == ring.length) {
+			sum = fresh;
+			fresh = 0.0;
+			freshCount = 0;
+		}
+		return sum;
+	}
+
+	/**
+	 * Gets the sum of the values in the window.
+	 */
+	public double sum() {
+		return sum;
+	}
+
+	/**
+	 * Gets the number of values in the window, less than the window
+	 * length until it has filled.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the window length.
+	 */
+	public int window() {
+		return ring.length;
+	}
+
+	/**
+	 * Empties the window.
+	 */
+	public void reset() {
+		head = 0;
+		size = 0;
+		sum = 0.0;
+		fresh = 0.0;
+		freshCount = 0;
+	}
+
+	/**
+	 * Gets the number of values saved by saveState().
+	 */
+	public int stateSize() {
+		return ring.length + 5;
+	}
+
+	/**
+	 * Copies the window and both sums into an array.
+	 * 
+	 * @param state The array to copy into
+	 * @param offset The position of the first value
+	 */
+	public void saveState(double[] state, int offset) {
+		System.arraycopy(ring, 0, state, offset, ring.length);
+		int i = offset + ring.length;
+		state[i] = head;
+		state[i + 1] = size;
+		state[i + 2] = sum;
+		state[i + 3] = fresh;
+		state[i + 4] = freshCount;
+	}
+
+	/**
+	 * Replaces the window and both sums with ones saved by saveState().
+	 * 
+	 * @param state The array holding the state
+	 * @param offset The position of the first value
+	 */
+	public void restoreState(double[] state, int offset) {
+		System.arraycopy(state, offset, ring, 0, ring.length);
+		int i = offset + ring.length;
+		head = (int) state[i];
+		size = (int) state[i + 1];
+		sum = state[i + 2];
+		fresh = state[i + 3];
+		freshCount = (int) state[i + 4];
+	}
+
+}
@@ -0,0 +1,86 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * A primitive sample channel that replaces the Graph/Pipeline pair for
+ * data that is processed on every sampling frame.  Samples are pushed
+ * through the channel's pipeline and the processed output is kept in a
+ * preallocated SampleWindow, so adding a sample and reading back the
+ * latest result never allocates.
+ */
+public class SampleChannel {
+
+	// Processing chain and processed output
+	private final SamplePipeline pipeline = new SamplePipeline();
+	private SampleWindow window;
+
+	/**
+	 * Creates a new SampleChannel.
+	 * 
+	 * @param windowSize The number of processed samples kept
+	 */
+	public SampleChannel(int windowSize) {
+		window = new SampleWindow(windowSize);
+	}
+
+	/**
+	 * Appends a filter to the channel's pipeline.
+	 * 
+	 * @param f The filter to add
+	 */
+	public void addFilter(SampleFilter f) {
+		pipeline.addFilter(f);
+	}
+
+	/**
+	 * Gets the channel's pipeline.
+	 */
+	public SamplePipeline getPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * Gets the window holding the processed samples.
+	 */
+	public SampleWindow getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the number of processed samples kept.  This replaces the
+	 * window, discarding the samples it held, so it should only be
+	 * called during setup.
+	 * 
+	 * @param windowSize The number of processed samples kept
+	 */
+	public void setWindowSize(int windowSize) {
+		window = new SampleWindow(windowSize);
+	}
+
+	/**
+	 * Processes a raw sample and stores the result in the window.
+	 * 
+	 * @param time The time of the sample, in seconds
+	 * @param value The raw value of the sample
+	 * @return The processed value
+	 */
+	public double addSample(double time, double value) {
+		double out = pipeline.push(time, value);
+		window.add(time, out);
+		return out;
+	}
+
+	/**
+	 * Gets the most recent processed value.
+	 */
+	public double latestValue() {
+		return window.latestValue();
+	}
+
+	/**
+	 * Gets the time of the most recent processed value.
+	 */
+	public double latestTime() {
+		return window.latestTime();
+	}
+
+}
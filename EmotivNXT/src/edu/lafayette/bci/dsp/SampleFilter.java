@@ -0,0 +1,29 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * A single processing step that operates on primitive samples.  This is
+ * the allocation-free counterpart of the sigproc Algorithm class: instead
+ * of consuming and producing Point objects, a filter receives the sample
+ * time and value as doubles and returns the processed value.
+ * 
+ * Implementations must not allocate on the heap in filter(), since it is
+ * called once per sample on the acquisition path.
+ */
+public interface SampleFilter {
+
+	/**
+	 * Processes one sample.
+	 * 
+	 * @param time The time of the sample, in seconds
+	 * @param value The value of the sample
+	 * @return The processed value
+	 */
+	public double filter(double time, double value);
+
+	/**
+	 * Clears any internal state so the filter behaves as if it had
+	 * never seen a sample.
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,172 @@
+package edu.lafayette.bci.dsp;
+
+import edu.lafayette.bci.metrics.LatencyRegistry;
+
+/**
+ * An ordered chain of SampleFilters.  Each sample pushed into the
+ * pipeline is passed through every filter in the order they were added.
+ * The filters are held in a plain array so that pushing a sample does
+ * not create iterators or other garbage.
+ */
+public class SamplePipeline {
+
+	// Filters in processing order
+	private SampleFilter[] filters = new SampleFilter[0];
+
+	/**
+	 * Appends a filter to the end of the pipeline.
+	 * 
+	 * @param f The filter to add
+	 */
+	public void addFilter(SampleFilter f) {
+		SampleFilter[] grown = new SampleFilter[filters.length + 1];
+		System.arraycopy(filters, 0, grown, 0, filters.length);
+		grown[filters.length] = f;
+		filters = grown;
+	}
+
+	/**
+	 * Gets the filter at the given position in the pipeline.
+	 * 
+	 * @param index The position of the filter
+	 * @return The filter
+	 */
+	public SampleFilter getFilter(int index) {
+		return filters[index];
+	}
+
+	/**
+	 * Gets the first filter of a type, looking through the timing
+	 * wrapper.
+	 * 
+	 * @param type The type of filter
+	 * @return The filter, or null if the pipeline has none of that type
+	 */
+	public <T> T findFilter(Class<T> type) {
+		for (int i = 0; i < filters.length; i++) {
+			SampleFilter f = filters[i];
+			if (f instanceof TimedFilter) {
+				f = ((TimedFilter) f).getFilter();
+			}
+			if (type.isInstance(f)) {
+				return type.cast(f);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the number of filters in the pipeline.
+	 */
+	public int size() {
+		return filters.length;
+	}
+
+	/**
+	 * Passes a sample through all filters in the pipeline.
+	 * 
+	 * @param time The time of the sample, in seconds
+	 * @param value The value of the sample
+	 * @return The output of the last filter
+	 */
+	public double push(double time, double value) {
+		for (int i = 0; i < filters.length; i++) {
+			value = filters[i].filter(time, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Wraps every filter in the pipeline in a TimedFilter, recording into
+	 * histograms named prefix.index.FilterName.  Call once during setup;
+	 * getFilter() then returns the TimedFilters.
+	 * 
+	 * @param registry The registry to create the histograms in
+	 * @param prefix The prefix of the histogram names
+	 */
+	public void instrument(LatencyRegistry registry, String prefix) {
+		for (int i = 0; i < filters.length; i++) {
+			SampleFilter f = filters[i];
+			String name = (f instanceof AlgorithmStage)
+					? ((AlgorithmStage) f).getAlgorithm().getClass().getSimpleName()
+					: f.getClass().getSimpleName();
+			filters[i] = new TimedFilter(f, registry.histogram(prefix + "." + i + "." + name));
+		}
+	}
+
+	/**
+	 * Resets every filter in the pipeline.
+	 */
+	public void reset() {
+		for (int i = 0; i < filters.length; i++) {
+			filters[i].reset();
+		}
+	}
+
+	/**
+	 * Gets the number of values saved by saveState().
+	 */
+	public int stateSize() {
+		int size = 0;
+		for (int i = 0; i < filters.length; i++) {
+			StatefulStage s = stateful(filters[i]);
+			if (s != null) {
+				size += s.stateSize();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Saves the state of every StatefulStage in the pipeline, in
+	 * pipeline order.
+	 * 
+	 * @return The state of the pipeline
+	 */
+	public double[] saveState() {
+		double[] state = new double[stateSize()];
+		int offset = 0;
+		for (int i = 0; i < filters.length; i++) {
+			StatefulStage s = stateful(filters[i]);
+			if (s != null) {
+				s.saveState(state, offset);
+				offset += s.stateSize();
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Restores a state saved by saveState() from a pipeline with the same
+	 * filters.  Call before the first sample is pushed.
+	 * 
+	 * @param state The state of the pipeline
+	 * @return False, leaving the pipeline unchanged, if the state does not fit it
+	 */
+	public boolean restoreState(double[] state) {
+		if (state == null || state.length != stateSize()) {
+			return false;
+		}
+		int offset = 0;
+		for (int i = 0; i < filters.length; i++) {
+			StatefulStage s = stateful(filters[i]);
+			if (s != null) {
+				s.restoreState(state, offset);
+				offset += s.stateSize();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper function that gets a filter as a StatefulStage, looking
+	 * through the timing wrapper, or null if it has no state to save.
+	 */
+	private static StatefulStage stateful(SampleFilter f) {
+		if (f instanceof TimedFilter) {
+			f = ((TimedFilter) f).getFilter();
+		}
+		return (f instanceof StatefulStage) ? (StatefulStage) f : null;
+	}
+
+}
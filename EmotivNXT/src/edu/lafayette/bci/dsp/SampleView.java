@@ -0,0 +1,46 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Read-only access to a sequence of samples.  Index 0 is the oldest
+ * sample in the view and size() - 1 is the newest.  Views do not copy
+ * the underlying samples, so reading through a view is as cheap as
+ * reading the buffer it wraps.
+ */
+public interface SampleView {
+
+	/**
+	 * Gets the number of samples in the view.
+	 */
+	public int size();
+
+	/**
+	 * Gets the time of a sample.
+	 * 
+	 * @param index The index of the sample, 0 being the oldest
+	 * @return The sample time, in seconds
+	 */
+	public double timeAt(int index);
+
+	/**
+	 * Gets the value of a sample.
+	 * 
+	 * @param index The index of the sample, 0 being the oldest
+	 * @return The sample value
+	 */
+	public double valueAt(int index);
+
+	/**
+	 * Gets the time of the newest sample in the view.
+	 * 
+	 * @return The latest sample time, or 0.0 if the view is empty
+	 */
+	public double latestTime();
+
+	/**
+	 * Gets the value of the newest sample in the view.
+	 * 
+	 * @return The latest sample value, or 0.0 if the view is empty
+	 */
+	public double latestValue();
+
+}
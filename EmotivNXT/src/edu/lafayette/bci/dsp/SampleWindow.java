@@ -0,0 +1,186 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * A fixed-capacity window of samples backed by preallocated primitive
+ * ring buffers.  Adding a sample overwrites the oldest one once the
+ * window is full, so no memory is allocated after construction.
+ * The latest sample and any indexed sample are read in constant time,
+ * independent of the window capacity.
+ */
+public class SampleWindow implements SampleView {
+
+	// Ring buffers for sample times and values
+	private final double[] times;
+	private final double[] values;
+
+	// Index of the next write and number of valid samples
+	private int head = 0;
+	private int size = 0;
+
+	/**
+	 * Creates a new SampleWindow.
+	 * 
+	 * @param capacity The maximum number of samples kept
+	 */
+	public SampleWindow(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Window capacity must be at least 1");
+		}
+		times = new double[capacity];
+		values = new double[capacity];
+	}
+
+	/**
+	 * Adds a sample to the window, overwriting the oldest sample if full.
+	 * 
+	 * @param time The time of the sample, in seconds
+	 * @param value The value of the sample
+	 */
+	public void add(double time, double value) {
+		times[head] = time;
+		values[head] = value;
+		head = (head + 1 == times.length) ? 0 : head + 1;
+		if (size < times.length) {
+			size++;
+		}
+	}
+
+	@Override
+	public double latestTime() {
+		return (size == 0) ? 0.0 : times[last()];
+	}
+
+	@Override
+	public double latestValue() {
+		return (size == 0) ? 0.0 : values[last()];
+	}
+
+	@Override
+	public double timeAt(int index) {
+		return times[slot(index)];
+	}
+
+	@Override
+	public double valueAt(int index) {
+		return values[slot(index)];
+	}
+
+	/**
+	 * Gets the number of samples currently in the window.
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates a live view of the newest samples in the window.  The view
+	 * shares the window's buffers and always reflects the most recent
+	 * samples, so it can be created once and read on every frame.
+	 * 
+	 * @param length The maximum number of samples in the view
+	 * @return The view
+	 */
+	public SampleView tail(int length) {
+		if (length < 1 || length > times.length) {
+			throw new IllegalArgumentException("View length must be between 1 and the window capacity");
+		}
+		return new Tail(length);
+	}
+
+	/**
+	 * Copies the values in the window into an array, oldest first.
+	 * 
+	 * @param dest The destination array, at least size() long
+	 * @return The number of values copied
+	 */
+	public int copyValues(double[] dest) {
+		int start = slot(0);
+		int first = Math.min(size, times.length - start);
+		System.arraycopy(values, start, dest, 0, first);
+		System.arraycopy(values, 0, dest, first, size - first);
+		return size;
+	}
+
+	/**
+	 * Gets the maximum number of samples the window can hold.
+	 */
+	public int capacity() {
+		return times.length;
+	}
+
+	/**
+	 * Removes all samples from the window.
+	 */
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Helper function that returns the ring index of the latest sample.
+	 */
+	private int last() {
+		return (head == 0) ? times.length - 1 : head - 1;
+	}
+
+	/**
+	 * Helper function that converts a window index (0 being the oldest
+	 * sample) into a ring index.
+	 */
+	private int slot(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		int i = head - size + index;
+		return (i < 0) ? i + times.length : i;
+	}
+
+	/**
+	 * Live view of the newest samples of the enclosing window.
+	 */
+	private class Tail implements SampleView {
+
+		// Maximum number of samples in the view
+		private final int length;
+
+		private Tail(int length) {
+			this.length = length;
+		}
+
+		@Override
+		public int size() {
+			return Math.min(length, size);
+		}
+
+		@Override
+		public double timeAt(int index) {
+			return SampleWindow.this.timeAt(offset(index));
+		}
+
+		@Override
+		public double valueAt(int index) {
+			return SampleWindow.this.valueAt(offset(index));
+		}
+
+		@Override
+		public double latestTime() {
+			return SampleWindow.this.latestTime();
+		}
+
+		@Override
+		public double latestValue() {
+			return SampleWindow.this.latestValue();
+		}
+
+		// Converts a view index into a window index
+		private int offset(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			return size - size() + index;
+		}
+
+	}
+
+}
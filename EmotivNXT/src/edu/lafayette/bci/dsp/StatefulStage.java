@@ -0,0 +1,37 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * A filter or stage whose internal state can be saved and restored, so
+ * a new session can continue from the settled state the last one ended
+ * in instead of warming up from zero.  The state is a flat array of
+ * doubles whose layout belongs to the stage.  It must not depend on the
+ * sample times, since a restored stage sees a new time base.
+ * 
+ * SamplePipeline and MultiChannelPipeline save and restore all of their
+ * stateful stages together.
+ */
+public interface StatefulStage {
+
+	/**
+	 * Gets the number of values in the state.  Multi-channel stages only
+	 * know this once they have been added to a pipeline.
+	 */
+	public int stateSize();
+
+	/**
+	 * Copies the state into an array.
+	 * 
+	 * @param state The array to copy into
+	 * @param offset The position of the first value
+	 */
+	public void saveState(double[] state, int offset);
+
+	/**
+	 * Replaces the state with one saved by saveState().
+	 * 
+	 * @param state The array holding the state
+	 * @param offset The position of the first value
+	 */
+	public void restoreState(double[] state, int offset);
+
+}
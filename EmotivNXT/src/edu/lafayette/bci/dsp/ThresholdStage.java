@@ -0,0 +1,46 @@
+package edu.lafayette.bci.dsp;
+
+/**
+ * Converts a signal into a digital signal using a level threshold.
+ * The output is 1.0 while the input is above the threshold and 0.0
+ * otherwise.
+ */
+public class ThresholdStage implements SampleFilter {
+
+	// Level threshold
+	private double threshold;
+
+	/**
+	 * Creates a new ThresholdStage.
+	 * 
+	 * @param threshold The level threshold
+	 */
+	public ThresholdStage(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Gets the level threshold.
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets the level threshold.
+	 * 
+	 * @param threshold The new level threshold
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		return (value > threshold) ? 1.0 : 0.0;
+	}
+
+	@Override
+	public void reset() {}
+
+}
@@ -0,0 +1,46 @@
+package edu.lafayette.bci.dsp;
+
+import edu.lafayette.bci.metrics.LatencyHistogram;
+
+/**
+ * Wraps a SampleFilter and records how long each call takes.  Use
+ * SamplePipeline.instrument() to time every filter of a pipeline.
+ */
+public class TimedFilter implements SampleFilter {
+
+	// The wrapped filter and its latency histogram
+	private final SampleFilter filter;
+	private final LatencyHistogram latency;
+
+	/**
+	 * Creates a new TimedFilter.
+	 * 
+	 * @param filter The filter to time
+	 * @param latency The histogram to record into
+	 */
+	public TimedFilter(SampleFilter filter, LatencyHistogram latency) {
+		this.filter = filter;
+		this.latency = latency;
+	}
+
+	/**
+	 * Gets the wrapped filter.
+	 */
+	public SampleFilter getFilter() {
+		return filter;
+	}
+
+	@Override
+	public double filter(double time, double value) {
+		long start = System.nanoTime();
+		double out = filter.filter(time, value);
+		latency.recordSince(start);
+		return out;
+	}
+
+	@Override
+	public void reset() {
+		filter.reset();
+	}
+
+}
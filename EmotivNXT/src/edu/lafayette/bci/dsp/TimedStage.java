@@ -0,0 +1,50 @@
+package edu.lafayette.bci.dsp;
+
+import edu.lafayette.bci.metrics.LatencyHistogram;
+
+/**
+ * Wraps a MultiChannelStage and records how long each block takes.  Use
+ * MultiChannelPipeline.instrument() to time every stage of a pipeline.
+ */
+public class TimedStage implements MultiChannelStage {
+
+	// The wrapped stage and its latency histogram
+	private final MultiChannelStage stage;
+	private final LatencyHistogram latency;
+
+	/**
+	 * Creates a new TimedStage.
+	 * 
+	 * @param stage The stage to time
+	 * @param latency The histogram to record into
+	 */
+	public TimedStage(MultiChannelStage stage, LatencyHistogram latency) {
+		this.stage = stage;
+		this.latency = latency;
+	}
+
+	/**
+	 * Gets the wrapped stage.
+	 */
+	public MultiChannelStage getStage() {
+		return stage;
+	}
+
+	@Override
+	public int outputChannels(int inputChannels) {
+		return stage.outputChannels(inputChannels);
+	}
+
+	@Override
+	public void process(FrameBlock in, FrameBlock out) {
+		long start = System.nanoTime();
+		stage.process(in, out);
+		latency.recordSince(start);
+	}
+
+	@Override
+	public void reset() {
+		stage.reset();
+	}
+
+}
@@ -0,0 +1,166 @@
+package edu.lafayette.bci.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, log-linear latency histogram in the style of
+ * HdrHistogram.  Values are nanoseconds; each power of two is split into
+ * 64 linear sub-buckets, so any recorded value is reported to within
+ * about 1.6% of its true value.  Recording is a single atomic increment
+ * and never allocates, so it can be called from any thread on the
+ * acquisition path.  Percentiles are computed by scanning the buckets
+ * and may be read while other threads record.
+ */
+public class LatencyHistogram {
+
+	// Sub-buckets per power of two (as a shift) and the largest tracked value
+	private static final int SUB_BITS = 6;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int MAX_EXPONENT = 40 - SUB_BITS; // Values up to 2^41 ns, ~36 minutes
+	public static final long MAX_VALUE = (1L << (MAX_EXPONENT + SUB_BITS + 1)) - 1;
+
+	// Bucket counts
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT + 2) * SUB_COUNT);
+
+	// Name for reports
+	private final String name;
+
+	// Totals, written with atomic adds by any thread
+	private final AtomicLongArray totals = new AtomicLongArray(3); // count, sum, max
+	private static final int COUNT = 0;
+	private static final int SUM = 1;
+	private static final int MAX = 2;
+
+	/**
+	 * Creates a new LatencyHistogram.
+	 * 
+	 * @param name The name shown in reports
+	 */
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets the histogram name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records one latency.  Negative values are recorded as 0 and values
+	 * above MAX_VALUE are recorded as MAX_VALUE.
+	 * 
+	 * @param nanos The latency, in nanoseconds
+	 */
+	public void record(long nanos) {
+		long v = (nanos < 0) ? 0 : (nanos > MAX_VALUE) ? MAX_VALUE : nanos;
+		counts.incrementAndGet(index(v));
+		totals.incrementAndGet(COUNT);
+		totals.addAndGet(SUM, v);
+		long max;
+		while (v > (max = totals.get(MAX)) && !totals.compareAndSet(MAX, max, v)) {}
+	}
+
+	/**
+	 * Records the time elapsed since a System.nanoTime() reading.
+	 * 
+	 * @param start The System.nanoTime() at which the interval started
+	 */
+	public void recordSince(long start) {
+		record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 */
+	public long getCount() {
+		return totals.get(COUNT);
+	}
+
+	/**
+	 * Gets the largest recorded value, in nanoseconds.
+	 */
+	public long getMax() {
+		return totals.get(MAX);
+	}
+
+	/**
+	 * Gets the mean of the recorded values, in nanoseconds.
+	 */
+	public long getMean() {
+		long n = totals.get(COUNT);
+		return (n == 0) ? 0 : totals.get(SUM) / n;
+	}
+
+	/**
+	 * Gets the value below which a given percentage of the recorded
+	 * values fall.
+	 * 
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The value, in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(percentile / 100.0 * total);
+		rank = Math.max(1, Math.min(total, rank));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears all recorded values.  Values recorded concurrently with a
+	 * reset may be partially lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		for (int i = 0; i < totals.length(); i++) {
+			totals.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-40s %10d %10.1f %10.1f %10.1f %10.1f", name, getCount(),
+				getPercentile(50) / 1000.0, getPercentile(99) / 1000.0,
+				getPercentile(99.9) / 1000.0, getMax() / 1000.0);
+	}
+
+	/**
+	 * Helper function that maps a value to its bucket.  Values below
+	 * 2 * SUB_COUNT map to themselves; above that, each power of two
+	 * gets SUB_COUNT buckets.
+	 */
+	private static int index(long v) {
+		int exponent = Math.max(0, 64 - Long.numberOfLeadingZeros(v) - (SUB_BITS + 1));
+		return exponent * SUB_COUNT + (int) (v >>> exponent);
+	}
+
+	/**
+	 * Helper function that gets the largest value mapping to a bucket.
+	 */
+	private static long highestValue(int index) {
+		if (index < 2 * SUB_COUNT) {
+			return index;
+		}
+		int exponent = (index >> SUB_BITS) - 1;
+		long sub = index - exponent * SUB_COUNT;
+		return ((sub + 1) << exponent) - 1;
+	}
+
+}
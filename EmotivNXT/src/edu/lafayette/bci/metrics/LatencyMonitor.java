@@ -0,0 +1,52 @@
+package edu.lafayette.bci.metrics;
+
+import java.io.PrintStream;
+
+/**
+ * Periodically prints the report of a LatencyRegistry, so stage
+ * latencies can be watched while a session is running.
+ */
+public class LatencyMonitor extends Thread {
+
+	// Registry to report, destination and reporting period
+	private final LatencyRegistry registry;
+	private final PrintStream out;
+	private final long period;
+
+	// Set when the thread should stop
+	private volatile boolean finished = false;
+
+	/**
+	 * Creates a new LatencyMonitor.
+	 * 
+	 * @param registry The registry to report
+	 * @param out Where to print the reports
+	 * @param period Time between reports, in milliseconds
+	 */
+	public LatencyMonitor(LatencyRegistry registry, PrintStream out, long period) {
+		super("Latency monitor");
+		this.registry = registry;
+		this.out = out;
+		this.period = period;
+		setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		while (!finished) {
+			try { Thread.sleep(period); } catch (InterruptedException e) {}
+			if (!finished) {
+				out.print(registry.report());
+			}
+		}
+	}
+
+	/**
+	 * Stops the monitor.
+	 */
+	public void finish() {
+		finished = true;
+		interrupt();
+	}
+
+}
@@ -0,0 +1,75 @@
+package edu.lafayette.bci.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A named set of LatencyHistograms.  Histograms are created once during
+ * setup and then recorded into directly, so looking them up is never on
+ * the per-sample path.  A process-wide default registry collects the
+ * stage latencies from acquisition to the drive devices.
+ */
+public class LatencyRegistry {
+
+	// Process-wide registry
+	private static final LatencyRegistry DEFAULT = new LatencyRegistry();
+
+	// Histograms in registration order (guarded by this)
+	private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<String, LatencyHistogram>();
+
+	/**
+	 * Gets the process-wide registry.
+	 */
+	public static LatencyRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Gets a histogram, creating it if it does not exist.
+	 * 
+	 * @param name The histogram name
+	 * @return The histogram
+	 */
+	public synchronized LatencyHistogram histogram(String name) {
+		LatencyHistogram h = histograms.get(name);
+		if (h == null) {
+			h = new LatencyHistogram(name);
+			histograms.put(name, h);
+		}
+		return h;
+	}
+
+	/**
+	 * Gets all histograms, in registration order.
+	 */
+	public synchronized List<LatencyHistogram> getHistograms() {
+		return new ArrayList<LatencyHistogram>(histograms.values());
+	}
+
+	/**
+	 * Clears every histogram.
+	 */
+	public synchronized void reset() {
+		for (LatencyHistogram h : histograms.values()) {
+			h.reset();
+		}
+	}
+
+	/**
+	 * Formats every histogram as a table, latencies in microseconds.
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-40s %10s %10s %10s %10s %10s%n", "stage", "count",
+				"p50 (us)", "p99 (us)", "p999 (us)", "max (us)"));
+		for (LatencyHistogram h : getHistograms()) {
+			if (h.getCount() > 0) {
+				sb.append(h).append(String.format("%n"));
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -3,6 +3,8 @@ package edu.lafayette.bci.nxt;
 import lejos.nxt.Motor;
 import lejos.robotics.navigation.DifferentialPilot;
 
+import edu.lafayette.bci.drive.DriveTarget;
+
 /**
  * This class provides control methods for the LEGO NXT robot.  
  * The commands are transmitted via Bluetooth, so there will be some
@@ -12,7 +14,7 @@ import lejos.robotics.navigation.DifferentialPilot;
  * @author Brandon T. Smith
  *
  */
-public class NXTControl {
+public class NXTControl implements DriveTarget {
 	
 	// Constant Variables for wheel diameter and track width (in mm).
 	// Also defines a DifferenialPilot object to control the robot. 
@@ -34,6 +36,7 @@ public class NXTControl {
 	 * 
 	 * @param speed The percentage value of the maximum speed at which the robot should travel.
 	 */
+	@Override
 	public void forward(double speed) {
 //		robot.setTravelSpeed(limiter(speed, 0, 1) * robot.getMaxTravelSpeed());
 		robot.setTravelSpeed(LINEAR_SPEED);
@@ -45,6 +48,7 @@ public class NXTControl {
 	 * 
 	 * @param speed The percentage value of the maximum speed at which the robot should travel.
 	 */
+	@Override
 	public void backward(double speed) {
 //		robot.setTravelSpeed(limiter(speed, 0, 1) * robot.getMaxTravelSpeed());
 		robot.setTravelSpeed(LINEAR_SPEED);
@@ -56,6 +60,7 @@ public class NXTControl {
 	 * 
 	 * @param speed The percentage value of the maximum speed at which the robot should turn.
 	 */
+	@Override
 	public void turnLeft(double speed) {
 //		robot.setRotateSpeed(limiter(speed, 0, 1) * robot.getMaxRotateSpeed());
 		robot.setRotateSpeed(TURN_SPEED);
@@ -67,6 +72,7 @@ public class NXTControl {
 	 * 
 	 * @param speed The percentage value of the maximum speed at which the robot should turn.
 	 */
+	@Override
 	public void turnRight(double speed) {
 //		robot.setRotateSpeed(limiter(speed, 0, 1) * robot.getMaxRotateSpeed());
 		robot.setRotateSpeed(TURN_SPEED);
@@ -76,9 +82,24 @@ public class NXTControl {
 	/**
 	 * Causes the robot to stop moving.
 	 */
+	@Override
 	public void stop() {
 		robot.stop();
 	}
+
+	/**
+	 * Causes the robot to stop moving.  The Bluetooth connection is
+	 * managed by leJOS and closed when the program exits.
+	 */
+	@Override
+	public void close() {
+		robot.stop();
+	}
+
+	@Override
+	public String getName() {
+		return "nxt";
+	}
 	
 	/**
 	 * A helper function that limits a value to the min and max values.
@@ -0,0 +1,282 @@
+package edu.lafayette.bci.profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps UserProfiles on local disk, one small binary file per user, so
+ * a session can start from the thresholds and settled chain states the
+ * user's last session ended with.
+ * 
+ * Every save writes a new revision next to the old one and renames it
+ * into place, keeping the previous revision as a backup that is read
+ * if the current one is damaged.  The file starts with a format version,
+ * so files written by a newer panel are refused rather than misread.
+ * 
+ * The store also keeps a least recently used list of users, for picking
+ * the user at startup, and caches the profiles of those users in memory.
+ * The store directory is given by the bci.profiles system property and
+ * the current user by bci.user.
+ */
+public class ProfileStore {
+
+	// Properties and defaults
+	public static final String DIRECTORY_PROPERTY = "bci.profiles";
+	public static final String USER_PROPERTY = "bci.user";
+	public static final int RECENT_USERS = 8; // Users kept in the recent list and cache
+
+	// File layout
+	private static final int MAGIC = 0x42434950; // "BCIP"
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".profile";
+	private static final String BACKUP_SUFFIX = ".bak";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String RECENT_FILE = "recent-users";
+
+	// Store directory and the users by recency, least recent first
+	private final File dir;
+	private final LinkedHashMap<String, UserProfile> recent;
+
+	/**
+	 * Creates a new ProfileStore, creating the directory if needed.
+	 * 
+	 * @param dir The directory holding the profiles
+	 * @param capacity The number of users kept in the recent list
+	 * @throws IOException If the directory cannot be created or read
+	 */
+	public ProfileStore(File dir, final int capacity) throws IOException {
+		this.dir = dir;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create profile directory " + dir);
+		}
+		recent = new LinkedHashMap<String, UserProfile>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, UserProfile> eldest) {
+				return size() > capacity;
+			}
+		};
+
+		// The recent list is stored most recent first
+		File list = new File(dir, RECENT_FILE);
+		if (list.isFile()) {
+			List<String> users = Files.readAllLines(list.toPath(), StandardCharsets.UTF_8);
+			for (int i = users.size() - 1; i >= 0; i--) {
+				if (!users.get(i).isEmpty()) {
+					recent.put(users.get(i), null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the store named by the bci.profiles property, by default
+	 * .bci/profiles in the user's home directory.
+	 * 
+	 * @throws IOException If the directory cannot be created or read
+	 */
+	public static ProfileStore fromProperties() throws IOException {
+		File home = new File(System.getProperty("user.home"), ".bci");
+		String path = System.getProperty(DIRECTORY_PROPERTY, new File(home, "profiles").getPath());
+		return new ProfileStore(new File(path), RECENT_USERS);
+	}
+
+	/**
+	 * Gets the user named by the bci.user property, by default the
+	 * operating system user.
+	 */
+	public static String currentUser() {
+		return System.getProperty(USER_PROPERTY, System.getProperty("user.name"));
+	}
+
+	/**
+	 * Gets the directory holding the profiles.
+	 */
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Gets the recently used users, most recent first.
+	 */
+	public synchronized List<String> getRecentUsers() {
+		List<String> users = new ArrayList<String>(recent.keySet());
+		Collections.reverse(users);
+		return users;
+	}
+
+	/**
+	 * Loads a user's profile, from memory if the user is recent.  Falls
+	 * back to the previous revision if the current one cannot be read.
+	 * 
+	 * @param user The name of the user
+	 * @return The profile, or null if the user has none
+	 * @throws IOException If neither revision can be read
+	 */
+	public synchronized UserProfile load(String user) throws IOException {
+		UserProfile profile = recent.get(user);
+		if (profile != null) {
+			return profile;
+		}
+
+		File file = profileFile(user, SUFFIX);
+		File backup = profileFile(user, SUFFIX + BACKUP_SUFFIX);
+		try {
+			profile = read(file, user);
+		} catch (FileNotFoundException e) {
+			if (!backup.isFile()) {
+				return null;
+			}
+			profile = read(backup, user);
+		} catch (IOException e) {
+			if (!backup.isFile()) {
+				throw e;
+			}
+			System.err.println("Profile " + file + " is damaged (" + e + "), using the previous revision");
+			profile = read(backup, user);
+		}
+		touch(user, profile);
+		return profile;
+	}
+
+	/**
+	 * Saves a profile as its next revision and marks its user as the
+	 * most recent.
+	 * 
+	 * @param profile The profile to save
+	 * @throws IOException If the profile cannot be written
+	 */
+	public synchronized void save(UserProfile profile) throws IOException {
+		String user = profile.getUser();
+		File file = profileFile(user, SUFFIX);
+		File temp = profileFile(user, SUFFIX + TEMP_SUFFIX);
+		File backup = profileFile(user, SUFFIX + BACKUP_SUFFIX);
+
+		int revision = profile.getRevision() + 1;
+		long savedMillis = System.currentTimeMillis();
+		write(temp, profile, revision, savedMillis);
+
+		// Keep the current revision as the backup, then swap the new one in
+		if (file.isFile()) {
+			Files.move(file.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		profile.setSaved(revision, savedMillis);
+		touch(user, profile);
+	}
+
+	/**
+	 * Helper function that makes a user the most recent and rewrites the
+	 * recent list.
+	 */
+	private void touch(String user, UserProfile profile) throws IOException {
+		recent.remove(user);
+		recent.put(user, profile);
+		Files.write(new File(dir, RECENT_FILE).toPath(), getRecentUsers(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Helper function that gets the file of a user's profile.  Characters
+	 * that are not safe in file names are replaced; the file also holds
+	 * the user's name, which is checked on reading.
+	 */
+	private File profileFile(String user, String suffix) {
+		StringBuilder name = new StringBuilder(user.length() + suffix.length());
+		for (int i = 0; i < user.length(); i++) {
+			char c = user.charAt(i);
+			boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| c == '-' || c == '_' || c == '.';
+			name.append(safe ? c : '_');
+		}
+		return new File(dir, name.append(suffix).toString());
+	}
+
+	/**
+	 * Helper function that writes a profile file.
+	 */
+	private static void write(File file, UserProfile profile, int revision, long savedMillis) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(profile.getUser());
+			out.writeInt(revision);
+			out.writeLong(savedMillis);
+			out.writeDouble(profile.getBlinkThreshold());
+			out.writeDouble(profile.getOccipitalThreshold());
+			out.writeInt(profile.getChains().size());
+			for (String chain : profile.getChains()) {
+				double[] state = profile.getState(chain);
+				out.writeUTF(chain);
+				out.writeInt(state.length);
+				for (int i = 0; i < state.length; i++) {
+					out.writeDouble(state[i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Helper function that reads a profile file.
+	 */
+	private static UserProfile read(File file, String user) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a profile");
+			}
+			int version = in.readInt();
+			if (version > VERSION) {
+				throw new IOException("Profile version " + version + " is newer than this panel (" + VERSION + ")");
+			}
+			if (!in.readUTF().equals(user)) {
+				throw new IOException("Profile belongs to another user");
+			}
+			UserProfile profile = new UserProfile(user);
+			int revision = in.readInt();
+			profile.setSaved(revision, in.readLong());
+			double blink = in.readDouble();
+			profile.setThresholds(blink, in.readDouble());
+			int chains = in.readInt();
+			for (int c = 0; c < chains; c++) {
+				String chain = in.readUTF();
+				int length = in.readInt();
+				if (length < 0 || length > file.length() / 8) {
+					throw new IOException("Bad state length " + length);
+				}
+				double[] state = new double[length];
+				for (int i = 0; i < state.length; i++) {
+					state[i] = in.readDouble();
+				}
+				profile.setState(chain, state);
+			}
+			return profile;
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package edu.lafayette.bci.profile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the panel remembers about a user between sessions: the calibrated
+ * thresholds and the state of the processing chains when the last
+ * session ended (see StatefulStage), keyed by chain name.  Profiles are
+ * kept by a ProfileStore, which numbers each saved revision.
+ */
+public class UserProfile {
+
+	// Owner and the revision this profile was loaded as
+	private final String user;
+	private int revision = 0;
+	private long savedMillis = 0;
+
+	// Thresholds, NaN until calibrated
+	private double blinkThreshold = Double.NaN;
+	private double occipitalThreshold = Double.NaN;
+
+	// Chain states by chain name
+	private final Map<String, double[]> states = new LinkedHashMap<String, double[]>();
+
+	/**
+	 * Creates a new, empty UserProfile.
+	 * 
+	 * @param user The name of the user
+	 */
+	public UserProfile(String user) {
+		this.user = user;
+	}
+
+	/**
+	 * Gets the name of the user.
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Gets the revision of the profile, 0 if it has never been saved.
+	 */
+	public int getRevision() {
+		return revision;
+	}
+
+	/**
+	 * Gets when the profile was last saved, in milliseconds since the
+	 * epoch, or 0 if it has never been saved.
+	 */
+	public long getSavedMillis() {
+		return savedMillis;
+	}
+
+	/**
+	 * Sets the revision and save time (used by ProfileStore).
+	 */
+	void setSaved(int revision, long savedMillis) {
+		this.revision = revision;
+		this.savedMillis = savedMillis;
+	}
+
+	/**
+	 * Checks whether both thresholds are known.
+	 */
+	public boolean hasThresholds() {
+		return !Double.isNaN(blinkThreshold) && !Double.isNaN(occipitalThreshold);
+	}
+
+	/**
+	 * Gets the blink detection threshold, in uV, or NaN if unknown.
+	 */
+	public double getBlinkThreshold() {
+		return blinkThreshold;
+	}
+
+	/**
+	 * Gets the occipital power threshold, in (uV)^2, or NaN if unknown.
+	 */
+	public double getOccipitalThreshold() {
+		return occipitalThreshold;
+	}
+
+	/**
+	 * Sets the thresholds.
+	 * 
+	 * @param blink The blink detection threshold, in uV
+	 * @param occipital The occipital power threshold, in (uV)^2
+	 */
+	public void setThresholds(double blink, double occipital) {
+		blinkThreshold = blink;
+		occipitalThreshold = occipital;
+	}
+
+	/**
+	 * Gets the saved state of a chain.
+	 * 
+	 * @param chain The name of the chain
+	 * @return The state, or null if none was saved
+	 */
+	public double[] getState(String chain) {
+		return states.get(chain);
+	}
+
+	/**
+	 * Sets the state of a chain.
+	 * 
+	 * @param chain The name of the chain
+	 * @param state The state, as returned by the pipeline's saveState()
+	 */
+	public void setState(String chain, double[] state) {
+		states.put(chain, state);
+	}
+
+	/**
+	 * Gets the names of the chains with a saved state.
+	 */
+	public Set<String> getChains() {
+		return states.keySet();
+	}
+
+	@Override
+	public String toString() {
+		return user + " (revision " + revision + ", blink " + blinkThreshold
+				+ " uV, occipital " + occipitalThreshold + " uV^2, " + states.size() + " chain states)";
+	}
+
+}
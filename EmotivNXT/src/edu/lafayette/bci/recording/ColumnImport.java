@@ -0,0 +1,64 @@
+package edu.lafayette.bci.recording;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.lafayette.bci.acquisition.AcquisitionStage;
+
+/**
+ * Appends the EEG frames of session logs to a column store, so a user's
+ * sessions can be analysed together.  Frames are stored with their wall
+ * clock time, and frames not after the last stored one (a log imported
+ * twice) are skipped.
+ * 
+ * Usage: ColumnImport &lt;store dir&gt; &lt;session log&gt;...
+ */
+public class ColumnImport {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: ColumnImport <store dir> <session log>...");
+			return;
+		}
+
+		ColumnStoreWriter store = new ColumnStoreWriter(new File(args[0]), AcquisitionStage.SENSORS);
+		try {
+			for (int i = 1; i < args.length; i++) {
+				long before = store.size();
+				importSession(args[i], store);
+				System.err.println(args[i] + ": " + (store.size() - before) + " frames");
+			}
+		} finally {
+			store.close();
+		}
+	}
+
+	/**
+	 * Appends the EEG frames of one session log to a store.
+	 * 
+	 * @param path The session log
+	 * @param store The store
+	 */
+	public static void importSession(String path, ColumnStoreWriter store) throws IOException {
+		SessionReader in = new SessionReader(path);
+		double[] frame = new double[AcquisitionStage.SENSORS.length];
+		try {
+			double start = in.getStartMillis() / 1000.0;
+			while (in.next()) {
+				if (in.getType() != SessionRecorder.EEG || in.getCount() != frame.length) {
+					continue;
+				}
+				double time = start + (in.getTimestamp() - in.getStartNanos()) / 1e9;
+				for (int i = 0; i < frame.length; i++) {
+					frame[i] = in.getValue(i);
+				}
+				if (time > store.getLastTime()) {
+					store.append(time, frame);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package edu.lafayette.bci.recording;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+
+import edu.lafayette.bci.dsp.SamplePipeline;
+import edu.lafayette.bci.dsp.SampleView;
+
+/**
+ * Read-only access to a columnar sample store written by
+ * ColumnStoreWriter.  A store is a directory holding one file of doubles
+ * per channel plus one of sample times, all memory mapped, so hours or
+ * weeks of recordings can be scanned without being loaded into the Java
+ * heap: the operating system pages the data in as it is read and drops
+ * it under memory pressure.
+ * 
+ * Views returned by view() read straight from the mapped files, and
+ * scan() pushes a range of samples through a SamplePipeline without
+ * creating any objects per sample.
+ */
+public class ColumnStore {
+
+	// File names and format
+	static final String PROPERTIES = "store.properties";
+	static final String TIME_COLUMN = "time";
+	static final String SUFFIX = ".f64";
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// Columns are mapped in chunks of 2^CHUNK_SHIFT doubles (1 GB), since a
+	// single mapping cannot exceed 2 GB
+	private static final int CHUNK_SHIFT = 27;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	// Channel names, number of samples and the mapped columns
+	private final String[] channels;
+	private final long size;
+	private final DoubleBuffer[] times;
+	private final DoubleBuffer[][] columns;
+
+	/**
+	 * Opens a store.  Samples appended after it is opened are not seen.
+	 * 
+	 * @param dir The store directory
+	 */
+	public ColumnStore(File dir) throws IOException {
+		channels = readChannels(dir);
+		long samples = new File(dir, TIME_COLUMN + SUFFIX).length() / 8;
+		for (String c : channels) {
+			samples = Math.min(samples, new File(dir, c + SUFFIX).length() / 8);
+		}
+		size = samples;
+
+		times = map(new File(dir, TIME_COLUMN + SUFFIX), size);
+		columns = new DoubleBuffer[channels.length][];
+		for (int i = 0; i < channels.length; i++) {
+			columns[i] = map(new File(dir, channels[i] + SUFFIX), size);
+		}
+	}
+
+	/**
+	 * Reads the channel names of a store.
+	 * 
+	 * @param dir The store directory
+	 */
+	static String[] readChannels(File dir) throws IOException {
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(new File(dir, PROPERTIES));
+		try {
+			p.load(in);
+		} finally {
+			in.close();
+		}
+		String names = p.getProperty("channels");
+		if (names == null || names.isEmpty()) {
+			throw new IOException(dir + " is not a column store");
+		}
+		return names.split(",");
+	}
+
+	/**
+	 * Helper function that maps the first count doubles of a file in chunks.
+	 */
+	private static DoubleBuffer[] map(File f, long count) throws IOException {
+		int chunks = (int) ((count + CHUNK_MASK) >>> CHUNK_SHIFT);
+		DoubleBuffer[] buffers = new DoubleBuffer[chunks];
+		RandomAccessFile file = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			for (int i = 0; i < chunks; i++) {
+				long first = (long) i << CHUNK_SHIFT;
+				long length = Math.min(count - first, 1L << CHUNK_SHIFT);
+				buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * 8, length * 8)
+						.order(ORDER).asDoubleBuffer();
+			}
+		} finally {
+			// Mappings stay valid after the file is closed
+			file.close();
+		}
+		return buffers;
+	}
+
+	/**
+	 * Gets the number of samples in every column.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Gets the channel names, in column order.
+	 */
+	public String[] getChannels() {
+		return channels.clone();
+	}
+
+	/**
+	 * Gets the column of a channel.
+	 * 
+	 * @param name The channel name
+	 * @return Its column, or -1 if the store has no such channel
+	 */
+	public int channelIndex(String name) {
+		for (int i = 0; i < channels.length; i++) {
+			if (channels[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the time of a sample.
+	 * 
+	 * @param index The index of the sample
+	 * @return The sample time, in seconds since the epoch
+	 */
+	public double timeAt(long index) {
+		return times[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+	}
+
+	/**
+	 * Gets the value of a sample.
+	 * 
+	 * @param channel The column of the channel
+	 * @param index The index of the sample
+	 */
+	public double valueAt(int channel, long index) {
+		return columns[channel][(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+	}
+
+	/**
+	 * Finds the first sample at or after a time.  Sample times must be
+	 * increasing, which ColumnStoreWriter enforces.
+	 * 
+	 * @param time The time, in seconds since the epoch
+	 * @return The index of the sample, or size() if every sample is earlier
+	 */
+	public long indexOf(double time) {
+		long lo = 0;
+		long hi = size;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (timeAt(mid) < time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Gets a view of a range of one channel, reading from the mapped file.
+	 * Times in the view are relative to the first sample of the range.
+	 * 
+	 * @param channel The column of the channel
+	 * @param from The index of the first sample
+	 * @param length The number of samples
+	 */
+	public SampleView view(final int channel, final long from, final int length) {
+		if (from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException("Range " + from + "+" + length + " outside 0-" + size);
+		}
+		final double origin = (length > 0) ? timeAt(from) : 0.0;
+		return new SampleView() {
+			@Override
+			public int size() {
+				return length;
+			}
+
+			@Override
+			public double timeAt(int index) {
+				return ColumnStore.this.timeAt(from + index) - origin;
+			}
+
+			@Override
+			public double valueAt(int index) {
+				return ColumnStore.this.valueAt(channel, from + index);
+			}
+
+			@Override
+			public double latestTime() {
+				return (length == 0) ? 0.0 : timeAt(length - 1);
+			}
+
+			@Override
+			public double latestValue() {
+				return (length == 0) ? 0.0 : valueAt(length - 1);
+			}
+		};
+	}
+
+	/**
+	 * Pushes a range of one channel through a pipeline, with times
+	 * relative to the first sample of the range.
+	 * 
+	 * @param channel The column of the channel
+	 * @param from The index of the first sample
+	 * @param to The index after the last sample
+	 * @param pipeline The pipeline
+	 * @return The last output of the pipeline, or 0.0 if the range is empty
+	 */
+	public double scan(int channel, long from, long to, SamplePipeline pipeline) {
+		double out = 0.0;
+		if (from >= to) {
+			return out;
+		}
+		double origin = timeAt(from);
+		for (long i = from; i < to; i++) {
+			out = pipeline.push(timeAt(i) - origin, valueAt(channel, i));
+		}
+		return out;
+	}
+
+}
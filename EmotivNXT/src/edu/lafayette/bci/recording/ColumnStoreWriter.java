@@ -0,0 +1,166 @@
+package edu.lafayette.bci.recording;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Appends frames to a columnar sample store (see ColumnStore).  Each
+ * column is written through its own direct buffer, so appending never
+ * touches the Java heap.  Opening an existing store appends to it, which
+ * lets a user's sessions accumulate into one store over weeks.
+ */
+public class ColumnStoreWriter {
+
+	// Doubles buffered per column before writing
+	private static final int BUFFER_SAMPLES = 8192;
+
+	// Column files and their buffers (index 0 is the time column)
+	private final String[] channels;
+	private final FileChannel[] files;
+	private final ByteBuffer[] buffers;
+
+	// Time of the last sample, to keep times increasing
+	private double lastTime = Double.NEGATIVE_INFINITY;
+	private long size;
+
+	/**
+	 * Opens a store for appending, creating it if needed.
+	 * 
+	 * @param dir The store directory
+	 * @param channels The channel names, which must match an existing store
+	 */
+	public ColumnStoreWriter(File dir, String[] channels) throws IOException {
+		this.channels = channels.clone();
+		File props = new File(dir, ColumnStore.PROPERTIES);
+		if (props.exists()) {
+			String[] existing = ColumnStore.readChannels(dir);
+			if (!Arrays.equals(existing, channels)) {
+				throw new IOException(dir + " holds channels " + Arrays.toString(existing));
+			}
+		} else {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Cannot create " + dir);
+			}
+			Properties p = new Properties();
+			p.setProperty("channels", String.join(",", channels));
+			OutputStream out = new FileOutputStream(props);
+			try {
+				p.store(out, "Column store: little-endian doubles, time in seconds since the epoch");
+			} finally {
+				out.close();
+			}
+		}
+
+		files = new FileChannel[channels.length + 1];
+		buffers = new ByteBuffer[channels.length + 1];
+		files[0] = open(new File(dir, ColumnStore.TIME_COLUMN + ColumnStore.SUFFIX));
+		for (int i = 0; i < channels.length; i++) {
+			files[i + 1] = open(new File(dir, channels[i] + ColumnStore.SUFFIX));
+		}
+
+		// Drop any partial frame left by an interrupted writer
+		size = Long.MAX_VALUE;
+		for (FileChannel f : files) {
+			size = Math.min(size, f.size() / 8);
+		}
+		for (int i = 0; i < files.length; i++) {
+			files[i].truncate(size * 8);
+			files[i].position(size * 8);
+			buffers[i] = ByteBuffer.allocateDirect(BUFFER_SAMPLES * 8).order(ColumnStore.ORDER);
+		}
+		if (size > 0) {
+			ByteBuffer last = ByteBuffer.allocate(8).order(ColumnStore.ORDER);
+			files[0].read(last, (size - 1) * 8);
+			lastTime = last.getDouble(0);
+		}
+	}
+
+	/**
+	 * Helper function that opens a column file for writing.
+	 */
+	@SuppressWarnings("resource")
+	private static FileChannel open(File f) throws IOException {
+		return new RandomAccessFile(f, "rw").getChannel();
+	}
+
+	/**
+	 * Appends one frame.
+	 * 
+	 * @param time The time of the frame, in seconds since the epoch
+	 * @param values The value of each channel
+	 */
+	public void append(double time, double[] values) throws IOException {
+		if (values.length < channels.length) {
+			throw new IllegalArgumentException("Frame of " + values.length + " values, store has " + channels.length + " channels");
+		}
+		if (time <= lastTime) {
+			throw new IllegalArgumentException("Time " + time + " is not after the last sample " + lastTime);
+		}
+		if (!buffers[0].hasRemaining()) {
+			drain();
+		}
+		buffers[0].putDouble(time);
+		for (int i = 0; i < channels.length; i++) {
+			buffers[i + 1].putDouble(values[i]);
+		}
+		lastTime = time;
+		size++;
+	}
+
+	/**
+	 * Helper function that writes the buffered samples of every column.
+	 */
+	private void drain() throws IOException {
+		for (int i = 0; i < files.length; i++) {
+			buffers[i].flip();
+			while (buffers[i].hasRemaining()) {
+				files[i].write(buffers[i]);
+			}
+			buffers[i].clear();
+		}
+	}
+
+	/**
+	 * Writes the buffered samples and forces them to disk.
+	 */
+	public void flush() throws IOException {
+		drain();
+		for (FileChannel f : files) {
+			f.force(false);
+		}
+	}
+
+	/**
+	 * Flushes and closes the store.
+	 */
+	public void close() throws IOException {
+		flush();
+		for (FileChannel f : files) {
+			f.close();
+		}
+	}
+
+	/**
+	 * Gets the time of the last sample appended.
+	 * 
+	 * @return The time, in seconds since the epoch, or negative infinity for an empty store
+	 */
+	public double getLastTime() {
+		return lastTime;
+	}
+
+	/**
+	 * Gets the number of samples in the store, including buffered ones.
+	 */
+	public long size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,68 @@
+package edu.lafayette.bci.recording;
+
+import edu.lafayette.bci.drive.DriveEngine;
+import edu.lafayette.bci.drive.DriveTarget;
+
+/**
+ * DriveTarget that records every command in a session log before passing
+ * it on, so the log holds what the device was actually told to do (after
+ * DriveEngine has dropped and coalesced redundant commands).
+ */
+public class RecordingDriveTarget implements DriveTarget {
+
+	// The device being controlled and the log
+	private final DriveTarget target;
+	private final SessionRecorder recorder;
+
+	/**
+	 * Creates a new RecordingDriveTarget.
+	 * 
+	 * @param target The device to control
+	 * @param recorder The log to record commands in
+	 */
+	public RecordingDriveTarget(DriveTarget target, SessionRecorder recorder) {
+		this.target = target;
+		this.recorder = recorder;
+	}
+
+	@Override
+	public void forward(double speed) {
+		recorder.recordCommand(System.nanoTime(), DriveEngine.FORWARD, speed);
+		target.forward(speed);
+	}
+
+	@Override
+	public void backward(double speed) {
+		recorder.recordCommand(System.nanoTime(), DriveEngine.BACKWARD, speed);
+		target.backward(speed);
+	}
+
+	@Override
+	public void turnLeft(double speed) {
+		recorder.recordCommand(System.nanoTime(), DriveEngine.LEFT, speed);
+		target.turnLeft(speed);
+	}
+
+	@Override
+	public void turnRight(double speed) {
+		recorder.recordCommand(System.nanoTime(), DriveEngine.RIGHT, speed);
+		target.turnRight(speed);
+	}
+
+	@Override
+	public void stop() {
+		recorder.recordCommand(System.nanoTime(), DriveEngine.STOP, 0.0);
+		target.stop();
+	}
+
+	@Override
+	public void close() {
+		target.close();
+	}
+
+	@Override
+	public String getName() {
+		return target.getName();
+	}
+
+}
@@ -0,0 +1,108 @@
+package edu.lafayette.bci.recording;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Date;
+
+import edu.lafayette.bci.acquisition.AcquisitionStage;
+
+/**
+ * Converts a session log into CSV for offline analysis.  The output is in
+ * the ReplayDevice format, so it can also be replayed; the output and
+ * command lines it adds are skipped by the replay.
+ * <pre>
+ * eeg,&lt;nanos&gt;,&lt;14 sensor values&gt;
+ * gyro,&lt;nanos&gt;,&lt;x&gt;,&lt;y&gt;
+ * quality,&lt;nanos&gt;,&lt;sensor&gt;,&lt;quality&gt;
+ * battery,&lt;nanos&gt;,&lt;level&gt;
+ * output,&lt;nanos&gt;,&lt;chain&gt;,&lt;value&gt;
+ * command,&lt;nanos&gt;,&lt;command&gt;,&lt;speed&gt;
+ * </pre>
+ * where nanos is the time since the session started.
+ * 
+ * Usage: SessionExport &lt;session log&gt; [&lt;csv file&gt;]
+ */
+public class SessionExport {
+
+	// Command names, indexed by DriveEngine command code
+	private static final String[] COMMANDS = { "stop", "forward", "backward", "left", "right" };
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SessionExport <session log> [<csv file>]");
+			return;
+		}
+
+		SessionReader in = new SessionReader(args[0]);
+		PrintWriter out = (args.length > 1)
+				? new PrintWriter(new OutputStreamWriter(new FileOutputStream(args[1]), "US-ASCII"))
+				: new PrintWriter(System.out);
+		try {
+			long records = export(in, out);
+			System.err.println("Exported " + records + " records");
+		} finally {
+			out.close();
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes every record of a log as a CSV line.
+	 * 
+	 * @param in The log
+	 * @param out The destination
+	 * @return The number of records written
+	 */
+	public static long export(SessionReader in, PrintWriter out) throws IOException {
+		out.println("# Session started " + new Date(in.getStartMillis()));
+		long records = 0;
+		StringBuilder line = new StringBuilder();
+
+		while (in.next()) {
+			line.setLength(0);
+			long nanos = in.getTimestamp() - in.getStartNanos();
+			switch (in.getType()) {
+			case SessionRecorder.EEG:
+				line.append("eeg,").append(nanos);
+				appendValues(line, in);
+				break;
+			case SessionRecorder.GYRO:
+				line.append("gyro,").append(nanos);
+				appendValues(line, in);
+				break;
+			case SessionRecorder.QUALITY:
+				line.append("quality,").append(nanos).append(',')
+						.append(AcquisitionStage.SENSORS[in.getTag()]).append(',').append((int) in.getValue(0));
+				break;
+			case SessionRecorder.BATTERY:
+				line.append("battery,").append(nanos).append(',').append((int) in.getValue(0));
+				break;
+			case SessionRecorder.OUTPUT:
+				line.append("output,").append(nanos).append(',').append(in.getTag()).append(',').append(in.getValue(0));
+				break;
+			case SessionRecorder.COMMAND:
+				String command = (in.getTag() >= 0 && in.getTag() < COMMANDS.length)
+						? COMMANDS[in.getTag()] : Integer.toString(in.getTag());
+				line.append("command,").append(nanos).append(',').append(command).append(',').append(in.getValue(0));
+				break;
+			default:
+				continue;
+			}
+			out.println(line);
+			records++;
+		}
+		return records;
+	}
+
+	/**
+	 * Helper function that appends the values of the current record.
+	 */
+	private static void appendValues(StringBuilder line, SessionReader in) {
+		for (int i = 0; i < in.getCount(); i++) {
+			line.append(',').append(in.getValue(i));
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package edu.lafayette.bci.recording;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static edu.lafayette.bci.recording.SessionRecorder.*;
+
+/**
+ * Reads a log written by SessionRecorder one record at a time.  The log
+ * may still be open for writing, or may have been cut short by a crash;
+ * reading stops at the first incomplete record.
+ */
+public class SessionReader {
+
+	// The log and its currently mapped region
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer region = null;
+	private long regionStart = 0;
+	private int slot = 0;
+
+	// Header fields
+	private final long startMillis;
+	private final long startNanos;
+
+	// Current record
+	private int type = EMPTY;
+	private int tag = 0;
+	private int count = 0;
+	private long timestamp = 0;
+	private final double[] values = new double[MAX_VALUES];
+
+	/**
+	 * Opens a log.
+	 * 
+	 * @param path The file to read
+	 */
+	public SessionReader(String path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		channel = file.getChannel();
+		if (channel.size() < RECORD_SIZE) {
+			close();
+			throw new IOException(path + " is not a session log");
+		}
+		map(0);
+		if (region.getInt(0) != MAGIC || region.getInt(8) != RECORD_SIZE || region.getInt(12) != MAX_VALUES) {
+			close();
+			throw new IOException(path + " is not a version " + VERSION + " session log");
+		}
+		startMillis = region.getLong(16);
+		startNanos = region.getLong(24);
+		slot = 1;
+	}
+
+	/**
+	 * Moves to the next record.
+	 * 
+	 * @return False at the end of the log
+	 */
+	public boolean next() throws IOException {
+		if (slot == REGION_RECORDS) {
+			map(regionStart + (long) REGION_RECORDS * RECORD_SIZE);
+			slot = 0;
+		}
+		int base = slot * RECORD_SIZE;
+		if (base + RECORD_SIZE > region.limit() || region.getShort(base) == EMPTY) {
+			type = EMPTY;
+			return false;
+		}
+
+		type = region.getShort(base);
+		tag = region.getShort(base + 2);
+		count = Math.min(region.getInt(base + 4), MAX_VALUES);
+		timestamp = region.getLong(base + 8);
+		for (int i = 0; i < count; i++) {
+			values[i] = region.getDouble(base + 16 + i * 8);
+		}
+		slot++;
+		return true;
+	}
+
+	/**
+	 * Helper function that maps as much of the region starting at offset
+	 * as the file holds.
+	 */
+	private void map(long offset) throws IOException {
+		long size = Math.min((long) REGION_RECORDS * RECORD_SIZE, Math.max(0, channel.size() - offset));
+		region = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		regionStart = offset;
+	}
+
+	/**
+	 * Closes the log.
+	 */
+	public void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+
+	/**
+	 * Gets the wall clock time at which the session started, in ms since the epoch.
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * Gets the System.nanoTime() at which the session started.
+	 */
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * Gets the type of the current record.
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the tag of the current record (chain, command, or sensor).
+	 */
+	public int getTag() {
+		return tag;
+	}
+
+	/**
+	 * Gets the System.nanoTime() of the current record.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Gets the number of values in the current record.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets a value of the current record.
+	 * 
+	 * @param i The index of the value
+	 */
+	public double getValue(int i) {
+		return values[i];
+	}
+
+}
@@ -0,0 +1,288 @@
+package edu.lafayette.bci.recording;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams a session to an append-only binary log: raw frames, the outputs
+ * of the processing chains and the commands sent to the device.  Every
+ * record has the same size, so the log can be read back at any point,
+ * even while it is still being written.
+ * 
+ * The file is memory mapped one region at a time, so memory use does not
+ * grow with the length of the session.  A record becomes visible when its
+ * type is written, which is always done last; the mapped pages belong to
+ * the operating system, so everything recorded survives the process
+ * crashing, and a background thread forces them to disk periodically so
+ * at most one flush period is lost if the machine itself goes down.
+ * 
+ * Layout (all values big-endian):
+ * <pre>
+ * header, RECORD_SIZE bytes: int MAGIC, int VERSION, int RECORD_SIZE,
+ *     int MAX_VALUES, long start time (ms since epoch), long start nanoTime
+ * records, RECORD_SIZE bytes each: short type, short tag, int count,
+ *     long nanoTime, MAX_VALUES doubles
+ * </pre>
+ * The log ends at the first record whose type is EMPTY.
+ */
+public class SessionRecorder implements Runnable {
+
+	// File format
+	public static final int MAGIC = 0x42434952; // "BCIR"
+	public static final int VERSION = 1;
+	public static final int MAX_VALUES = 14;
+	public static final int RECORD_SIZE = 16 + MAX_VALUES * 8;
+	static final int REGION_RECORDS = 8192; // Records mapped at once (1 MB)
+
+	// Record types
+	public static final int EMPTY = 0;
+	public static final int EEG = 1; // Values: the sensors
+	public static final int GYRO = 2; // Values: the gyros
+	public static final int OUTPUT = 3; // Tag: chain, values: its output
+	public static final int COMMAND = 4; // Tag: DriveEngine command code, values: speed
+	public static final int QUALITY = 5; // Tag: sensor index, values: quality
+	public static final int BATTERY = 6; // Values: battery level
+
+	// Default time between flushes to disk, in milliseconds
+	public static final long DEFAULT_FLUSH_PERIOD = 1000;
+
+	// The log file and its currently mapped region (guarded by this)
+	private final String path;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer region = null;
+	private long regionStart = 0;
+	private int slot = 0;
+	private long records = 0;
+	private boolean closed = false;
+
+	// Flusher thread
+	private final Thread flusher;
+	private final long flushPeriod;
+	private final double[] scratch = new double[1];
+
+	/**
+	 * Creates a new log, replacing any existing file, and starts flushing
+	 * it every DEFAULT_FLUSH_PERIOD milliseconds.
+	 * 
+	 * @param path The file to write
+	 */
+	public SessionRecorder(String path) throws IOException {
+		this(path, DEFAULT_FLUSH_PERIOD);
+	}
+
+	/**
+	 * Creates a new log, replacing any existing file.
+	 * 
+	 * @param path The file to write
+	 * @param flushPeriod Time between flushes to disk, in milliseconds
+	 */
+	public SessionRecorder(String path, long flushPeriod) throws IOException {
+		this.path = path;
+		this.flushPeriod = flushPeriod;
+		file = new RandomAccessFile(path, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+
+		// The header takes the first slot
+		map(0);
+		region.putInt(0, MAGIC);
+		region.putInt(4, VERSION);
+		region.putInt(8, RECORD_SIZE);
+		region.putInt(12, MAX_VALUES);
+		region.putLong(16, System.currentTimeMillis());
+		region.putLong(24, System.nanoTime());
+		slot = 1;
+
+		flusher = new Thread(this, "Session recorder " + path);
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Records a raw EEG frame.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the frame was acquired
+	 * @param sensors The sensor values
+	 */
+	public void recordEeg(long timestamp, double[] sensors) {
+		append(EEG, 0, timestamp, sensors, sensors.length);
+	}
+
+	/**
+	 * Records a raw gyro frame.
+	 * 
+	 * @param timestamp The System.nanoTime() at which the frame was acquired
+	 * @param gyros The gyro values
+	 */
+	public void recordGyro(long timestamp, double[] gyros) {
+		append(GYRO, 0, timestamp, gyros, gyros.length);
+	}
+
+	/**
+	 * Records the output of a processing chain.
+	 * 
+	 * @param timestamp The acquisition time of the frame that produced it
+	 * @param chain A number identifying the chain
+	 * @param value The output
+	 */
+	public synchronized void recordOutput(long timestamp, int chain, double value) {
+		scratch[0] = value;
+		append(OUTPUT, chain, timestamp, scratch, 1);
+	}
+
+	/**
+	 * Records a command sent to the device.
+	 * 
+	 * @param timestamp The System.nanoTime() at which it was sent
+	 * @param command The DriveEngine command code
+	 * @param speed The speed, 0 for stop
+	 */
+	public synchronized void recordCommand(long timestamp, int command, double speed) {
+		scratch[0] = speed;
+		append(COMMAND, command, timestamp, scratch, 1);
+	}
+
+	/**
+	 * Records a change of sensor contact quality.
+	 * 
+	 * @param timestamp The System.nanoTime() at which it was seen
+	 * @param sensor The index of the sensor
+	 * @param quality The new quality
+	 */
+	public synchronized void recordQuality(long timestamp, int sensor, int quality) {
+		scratch[0] = quality;
+		append(QUALITY, sensor, timestamp, scratch, 1);
+	}
+
+	/**
+	 * Records a change of battery level.
+	 * 
+	 * @param timestamp The System.nanoTime() at which it was seen
+	 * @param level The new level
+	 */
+	public synchronized void recordBattery(long timestamp, int level) {
+		scratch[0] = level;
+		append(BATTERY, 0, timestamp, scratch, 1);
+	}
+
+	/**
+	 * Helper function that writes one record into the next slot, mapping
+	 * the next region of the file when the current one is full.
+	 */
+	private synchronized void append(int type, int tag, long timestamp, double[] values, int count) {
+		if (closed) {
+			return;
+		}
+		if (count > MAX_VALUES) {
+			throw new IllegalArgumentException("Record of " + count + " values exceeds " + MAX_VALUES);
+		}
+		if (slot == REGION_RECORDS) {
+			try {
+				region.force();
+				map(regionStart + (long) REGION_RECORDS * RECORD_SIZE);
+			} catch (IOException e) {
+				// Stop recording rather than fail the session
+				e.printStackTrace();
+				closed = true;
+				return;
+			}
+			slot = 0;
+		}
+
+		int base = slot * RECORD_SIZE;
+		region.putShort(base + 2, (short) tag);
+		region.putInt(base + 4, count);
+		region.putLong(base + 8, timestamp);
+		for (int i = 0; i < count; i++) {
+			region.putDouble(base + 16 + i * 8, values[i]);
+		}
+		// The type marks the record as complete, so it goes last
+		region.putShort(base, (short) type);
+		slot++;
+		records++;
+	}
+
+	/**
+	 * Helper function that maps the region of the file starting at offset.
+	 */
+	private void map(long offset) throws IOException {
+		region = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) REGION_RECORDS * RECORD_SIZE);
+		regionStart = offset;
+	}
+
+	/**
+	 * Forces everything recorded so far to disk.
+	 */
+	public void flush() {
+		MappedByteBuffer r;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			r = region;
+		}
+		r.force();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try { Thread.sleep(flushPeriod); } catch (InterruptedException e) {}
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * Flushes and closes the log, trimming the unused end of the last
+	 * region where the platform allows it.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			region.force();
+			closed = true;
+		}
+		flusher.interrupt();
+		try {
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// Readers stop at the first empty slot, so a failed trim is harmless
+		try {
+			RandomAccessFile trim = new RandomAccessFile(path, "rw");
+			try {
+				trim.setLength(regionStart + (long) slot * RECORD_SIZE);
+			} finally {
+				trim.close();
+			}
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Gets the number of records written.
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Gets the path of the log.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+}
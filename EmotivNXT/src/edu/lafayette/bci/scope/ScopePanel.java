@@ -0,0 +1,325 @@
+package edu.lafayette.bci.scope;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComponent;
+
+/**
+ * Live oscilloscope view of signals recorded in ScopeTraces, in lanes
+ * stacked on top of each other.  Each lane scales itself to the traces
+ * and levels it shows over the whole history; a centered lane shows each
+ * trace around its own mean instead, for signals with a large offset
+ * such as the raw electrodes.
+ * 
+ * Frames are rendered FRAME_RATE times a second on the scope's own
+ * thread, into a back image that is then swapped with the one being
+ * shown, so the event dispatch thread only copies a finished image.
+ * The traces are read from lock-free snapshots into buffers allocated
+ * when the traces are added (the images are only reallocated on resize),
+ * and reduced to one min/max span per pixel column, so rendering never
+ * holds up the thread adding the samples.
+ */
+public class ScopePanel extends JComponent implements Runnable {
+
+	private static final long serialVersionUID = 1L;
+
+	// Rendering rate and colors
+	public static final int FRAME_RATE = 60; // Frames rendered per second
+	private static final Color BACKGROUND = new Color(20, 20, 20);
+	private static final Color BORDER = new Color(70, 70, 70);
+	private static final Color TEXT = new Color(200, 200, 200);
+	private static final int PAD = 14; // Space above and below the traces of a lane, in pixels
+
+	// History shown and the lanes (set up before start())
+	private final double history;
+	private final List<Lane> lanes = new ArrayList<Lane>();
+
+	// Image being rendered and image being shown (guarded by swap)
+	private BufferedImage back = null;
+	private BufferedImage front = null;
+	private final Object swap = new Object();
+
+	// Rendering thread
+	private Thread renderer = null;
+	private volatile boolean finished = false;
+
+	/**
+	 * Creates a new ScopePanel.
+	 * 
+	 * @param history The length of history shown, in seconds
+	 */
+	public ScopePanel(double history) {
+		this.history = history;
+		setPreferredSize(new Dimension(780, 400));
+		setOpaque(true);
+	}
+
+	/**
+	 * Adds a lane below the existing ones.
+	 * 
+	 * @param title The title of the lane
+	 * @param centered True to show each trace around its mean
+	 * @return The index of the lane
+	 */
+	public int addLane(String title, boolean centered) {
+		lanes.add(new Lane(title, centered));
+		return lanes.size() - 1;
+	}
+
+	/**
+	 * Adds a trace to a lane.
+	 * 
+	 * @param lane The index of the lane
+	 * @param name The name shown in the lane's legend
+	 * @param color The color of the trace
+	 * @param samplePeriod The sampling period of the signal, in seconds
+	 * @return The trace, to add the signal's samples to
+	 */
+	public ScopeTrace addTrace(int lane, String name, Color color, double samplePeriod) {
+		ScopeTrace trace = new ScopeTrace(name, color, history, samplePeriod);
+		Lane l = lanes.get(lane);
+		l.traces.add(trace);
+		l.mins.add(new double[ScopeTrace.BUCKETS]);
+		l.maxes.add(new double[ScopeTrace.BUCKETS]);
+		l.counts = new int[l.traces.size()];
+		l.offsets = new double[l.traces.size()];
+		return trace;
+	}
+
+	/**
+	 * Adds a fixed level (such as a threshold) to a lane.
+	 * 
+	 * @param lane The index of the lane
+	 * @param level The level
+	 * @param color The color of the level line
+	 */
+	public void addLevel(int lane, double level, Color color) {
+		Lane l = lanes.get(lane);
+		l.levels.add(level);
+		l.levelColors.add(color);
+	}
+
+	/**
+	 * Starts rendering.
+	 */
+	public void start() {
+		renderer = new Thread(this, "Scope renderer");
+		renderer.setDaemon(true);
+		renderer.start();
+	}
+
+	/**
+	 * Stops rendering.
+	 */
+	public void finish() {
+		finished = true;
+		if (renderer != null) {
+			renderer.interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		long period = 1000000000L / FRAME_RATE;
+		long next = System.nanoTime();
+		while (!finished) {
+			render();
+			repaint();
+
+			// Keep to the frame rate, skipping frames rather than catching up
+			next += period;
+			long delay = next - System.nanoTime();
+			if (delay > 0) {
+				try { Thread.sleep(delay / 1000000, (int) (delay % 1000000)); } catch (InterruptedException e) {}
+			} else {
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		synchronized (swap) {
+			if (front != null) {
+				g.drawImage(front, 0, 0, null);
+				return;
+			}
+		}
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, getWidth(), getHeight());
+	}
+
+	/**
+	 * Helper function that renders a frame into the back image and swaps
+	 * it to the front.
+	 */
+	private void render() {
+		int w = getWidth();
+		int h = getHeight();
+		if (w <= 0 || h <= 0 || lanes.isEmpty()) {
+			return;
+		}
+		if (back == null || back.getWidth() != w || back.getHeight() != h) {
+			back = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		}
+
+		Graphics2D g = back.createGraphics();
+		try {
+			g.setColor(BACKGROUND);
+			g.fillRect(0, 0, w, h);
+			for (int i = 0; i < lanes.size(); i++) {
+				int top = i * h / lanes.size();
+				int bottom = (i + 1) * h / lanes.size();
+				drawLane(g, lanes.get(i), w, top, bottom);
+			}
+		} finally {
+			g.dispose();
+		}
+
+		synchronized (swap) {
+			BufferedImage shown = front;
+			front = back;
+			back = shown;
+		}
+	}
+
+	/**
+	 * Helper function that draws one lane between two rows.
+	 */
+	private void drawLane(Graphics2D g, Lane lane, int w, int top, int bottom) {
+		// Take the snapshots and find the range shown
+		double lo = Double.POSITIVE_INFINITY;
+		double hi = Double.NEGATIVE_INFINITY;
+		for (int t = 0; t < lane.traces.size(); t++) {
+			double[] mins = lane.mins.get(t);
+			double[] maxes = lane.maxes.get(t);
+			int n = lane.traces.get(t).snapshot(mins, maxes);
+			lane.counts[t] = n;
+			double sum = 0.0;
+			int valid = 0;
+			for (int k = 0; k < n; k++) {
+				if (!Double.isNaN(mins[k])) {
+					sum += 0.5 * (mins[k] + maxes[k]);
+					valid++;
+				}
+			}
+			double offset = (lane.centered && valid > 0) ? sum / valid : 0.0;
+			lane.offsets[t] = offset;
+			for (int k = 0; k < n; k++) {
+				if (!Double.isNaN(mins[k])) {
+					lo = Math.min(lo, mins[k] - offset);
+					hi = Math.max(hi, maxes[k] - offset);
+				}
+			}
+		}
+		for (int i = 0; i < lane.levels.size(); i++) {
+			lo = Math.min(lo, lane.levels.get(i));
+			hi = Math.max(hi, lane.levels.get(i));
+		}
+
+		// Frame and title
+		g.setColor(BORDER);
+		g.drawLine(0, bottom - 1, w, bottom - 1);
+		g.setColor(TEXT);
+		g.drawString(lane.title, 4, top + 12);
+		if (lo > hi) {
+			return;
+		}
+		if (hi - lo < 1e-9) {
+			lo -= 1.0;
+			hi += 1.0;
+		}
+		g.drawString(String.format("%.4g", hi), w - 70, top + 12);
+		g.drawString(String.format("%.4g", lo), w - 70, bottom - 3);
+		double scale = (bottom - top - 2 * PAD) / (hi - lo);
+		int base = bottom - PAD;
+
+		// Levels
+		for (int i = 0; i < lane.levels.size(); i++) {
+			g.setColor(lane.levelColors.get(i));
+			int y = base - (int) Math.round((lane.levels.get(i) - lo) * scale);
+			g.drawLine(0, y, w, y);
+		}
+
+		// Traces, one min/max span per column, right aligned while the history fills
+		int legend = 8 + g.getFontMetrics().stringWidth(lane.title);
+		for (int t = 0; t < lane.traces.size(); t++) {
+			ScopeTrace trace = lane.traces.get(t);
+			double[] mins = lane.mins.get(t);
+			double[] maxes = lane.maxes.get(t);
+			int n = lane.counts[t];
+			double offset = lane.offsets[t];
+			int missing = ScopeTrace.BUCKETS - n;
+			g.setColor(trace.getColor());
+			g.drawString(trace.getName(), legend + 8, top + 12);
+			legend += 8 + g.getFontMetrics().stringWidth(trace.getName());
+
+			boolean drawn = false;
+			int prevTop = 0;
+			int prevBottom = 0;
+			for (int x = 0; x < w; x++) {
+				int k0 = (int) ((long) x * ScopeTrace.BUCKETS / w) - missing;
+				int k1 = (int) ((long) (x + 1) * ScopeTrace.BUCKETS / w) - missing;
+				k1 = Math.max(k1, k0 + 1);
+				double cmin = Double.POSITIVE_INFINITY;
+				double cmax = Double.NEGATIVE_INFINITY;
+				for (int k = Math.max(0, k0); k < k1 && k < n; k++) {
+					if (mins[k] < cmin) {
+						cmin = mins[k];
+					}
+					if (maxes[k] > cmax) {
+						cmax = maxes[k];
+					}
+				}
+				if (cmin > cmax) {
+					drawn = false;
+					continue;
+				}
+
+				// Extend the span to meet the previous column so the trace is continuous
+				int y1 = base - (int) Math.round((cmax - offset - lo) * scale);
+				int y2 = base - (int) Math.round((cmin - offset - lo) * scale);
+				int from = drawn ? Math.min(y1, prevBottom) : y1;
+				int to = drawn ? Math.max(y2, prevTop) : y2;
+				g.drawLine(x, from, x, to);
+				drawn = true;
+				prevTop = y1;
+				prevBottom = y2;
+			}
+		}
+	}
+
+	/**
+	 * A lane of the scope and the buffers its traces are copied into.
+	 */
+	private static class Lane {
+
+		// Title and scaling
+		private final String title;
+		private final boolean centered;
+
+		// Traces and levels
+		private final List<ScopeTrace> traces = new ArrayList<ScopeTrace>();
+		private final List<Double> levels = new ArrayList<Double>();
+		private final List<Color> levelColors = new ArrayList<Color>();
+
+		// Snapshot buffers, bucket counts and offsets of the traces
+		private final List<double[]> mins = new ArrayList<double[]>();
+		private final List<double[]> maxes = new ArrayList<double[]>();
+		private int[] counts = new int[0];
+		private double[] offsets = new double[0];
+
+		private Lane(String title, boolean centered) {
+			this.title = title;
+			this.centered = centered;
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+package edu.lafayette.bci.scope;
+
+import java.awt.Color;
+
+/**
+ * The recent history of one signal shown by a ScopePanel, reduced to the
+ * minimum and maximum of every few samples so that minutes of history
+ * fit in BUCKETS preallocated slots.  Peaks survive the reduction, so a
+ * blink or a threshold crossing is never decimated away.
+ * 
+ * One thread (normally the ProcessingThread) adds samples and one
+ * thread (the scope's renderer) takes snapshots, without locks: a
+ * finished bucket is published by a volatile write of the bucket count,
+ * and a snapshot discards whatever the writer may have overwritten while
+ * it was being copied.  The ring holds twice the history, so that only
+ * happens if the renderer stalls for about as long as the history.
+ */
+public class ScopeTrace {
+
+	// Buckets in the history, and in the ring holding it with room for
+	// the writer to carry on while a snapshot is copied
+	public static final int BUCKETS = 2048;
+	private static final int RING = 2 * BUCKETS;
+
+	// Name and color for the scope
+	private final String name;
+	private final Color color;
+
+	// Samples per bucket and the rings of bucket extremes
+	private final int decimation;
+	private final double[] mins = new double[RING];
+	private final double[] maxes = new double[RING];
+
+	// Bucket being filled (writer only) and the number of buckets published
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private int count = 0;
+	private volatile long published = 0;
+
+	/**
+	 * Creates a new ScopeTrace.
+	 * 
+	 * @param name The name shown in the scope's legend
+	 * @param color The color of the trace
+	 * @param history The length of history kept, in seconds
+	 * @param samplePeriod The sampling period of the signal, in seconds
+	 */
+	public ScopeTrace(String name, Color color, double history, double samplePeriod) {
+		this.name = name;
+		this.color = color;
+		decimation = Math.max(1, (int) Math.ceil(history / samplePeriod / BUCKETS));
+	}
+
+	/**
+	 * Adds a sample.  Only one thread may add samples.
+	 * 
+	 * @param value The sample
+	 */
+	public void add(double value) {
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+		if (++count == decimation) {
+			long n = published;
+			int slot = (int) (n % RING);
+			mins[slot] = min;
+			maxes[slot] = max;
+			published = n + 1;
+			min = Double.POSITIVE_INFINITY;
+			max = Double.NEGATIVE_INFINITY;
+			count = 0;
+		}
+	}
+
+	/**
+	 * Copies the latest buckets, oldest first.  Buckets the writer
+	 * overwrote during the copy are returned as NaN.
+	 * 
+	 * @param destMin The array receiving the minima
+	 * @param destMax The array receiving the maxima
+	 * @return The number of buckets copied (at most the array length and BUCKETS)
+	 */
+	public int snapshot(double[] destMin, double[] destMax) {
+		long end = published;
+		int n = (int) Math.min(Math.min(destMin.length, BUCKETS), end);
+		long first = end - n;
+		for (int i = 0; i < n; i++) {
+			int slot = (int) ((first + i) % RING);
+			destMin[i] = mins[slot];
+			destMax[i] = maxes[slot];
+		}
+
+		// The writer overwrites the oldest bucket before publishing a new one
+		long valid = published - RING + 1;
+		for (long i = first; i < valid && i < end; i++) {
+			destMin[(int) (i - first)] = Double.NaN;
+			destMax[(int) (i - first)] = Double.NaN;
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the name of the trace.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the color of the trace.
+	 */
+	public Color getColor() {
+		return color;
+	}
+
+	/**
+	 * Gets the number of samples in each bucket.
+	 */
+	public int getDecimation() {
+		return decimation;
+	}
+
+}
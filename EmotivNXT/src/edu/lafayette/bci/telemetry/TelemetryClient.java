@@ -0,0 +1,225 @@
+package edu.lafayette.bci.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal remote display of a control panel: connects to a
+ * TelemetryServer, optionally sends a command, then prints the states it
+ * is sent.  Each message is passed to handle(), so a graphical display
+ * can extend this class.
+ * 
+ * Usage: TelemetryClient [&lt;host&gt; [&lt;port&gt; [estop|release|metrics|shutdown]]]
+ *
+ * Release and shutdown need the server's secret, read from the
+ * bci.telemetry.secret property.
+ */
+public class TelemetryClient {
+
+	// Period of the states requested
+	private static final int PERIOD = 100; // In milliseconds
+
+	// Connection
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	/**
+	 * Connects to a TelemetryServer and checks its greeting.
+	 * 
+	 * @param host The host name
+	 * @param port The port
+	 * @throws IOException If the connection fails or the server is not a TelemetryServer
+	 */
+	public TelemetryClient(String host, int port) throws IOException {
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(socket.getOutputStream());
+		int length = in.readUnsignedShort();
+		int type = in.readUnsignedByte();
+		if (type != TelemetryProtocol.HELLO || length < 6 || in.readInt() != TelemetryProtocol.MAGIC) {
+			socket.close();
+			throw new IOException("Not a telemetry server");
+		}
+		int version = in.readUnsignedByte();
+		in.skipBytes(length - 6);
+		if (version > TelemetryProtocol.VERSION) {
+			socket.close();
+			throw new IOException("Unsupported protocol version " + version);
+		}
+	}
+
+	/**
+	 * Sends the server's shared secret, which allows releasing the estop
+	 * and ending the session.  The server closes the connection if the
+	 * secret is wrong.
+	 *
+	 * @param secret The secret
+	 */
+	public void authenticate(String secret) throws IOException {
+		byte[] text = secret.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(3 + text.length);
+		out.writeByte(TelemetryProtocol.AUTH);
+		out.writeShort(text.length);
+		out.write(text);
+		out.flush();
+	}
+
+	/**
+	 * Asks for a state every period.
+	 * 
+	 * @param period The period, in milliseconds, or 0 to stop
+	 */
+	public void subscribe(int period) throws IOException {
+		out.writeShort(3);
+		out.writeByte(TelemetryProtocol.SUBSCRIBE);
+		out.writeShort(period);
+		out.flush();
+	}
+
+	/**
+	 * Engages or releases the emergency stop.
+	 * 
+	 * @param estop True to engage it
+	 */
+	public void setEstop(boolean estop) throws IOException {
+		out.writeShort(2);
+		out.writeByte(TelemetryProtocol.ESTOP);
+		out.writeByte(estop ? 1 : 0);
+		out.flush();
+	}
+
+	/**
+	 * Asks for the stage latencies.
+	 */
+	public void requestMetrics() throws IOException {
+		out.writeShort(1);
+		out.writeByte(TelemetryProtocol.GET_METRICS);
+		out.flush();
+	}
+
+	/**
+	 * Ends the panel's session.
+	 */
+	public void shutdown() throws IOException {
+		out.writeShort(1);
+		out.writeByte(TelemetryProtocol.SHUTDOWN);
+		out.flush();
+	}
+
+	/**
+	 * Reads messages and passes them to handle() until the server closes
+	 * the connection.
+	 */
+	public void receive() throws IOException {
+		try {
+			while (true) {
+				int length = in.readUnsignedShort();
+				int type = in.readUnsignedByte();
+				byte[] payload = new byte[length - 1];
+				in.readFully(payload);
+				handle(type, new DataInputStream(new ByteArrayInputStream(payload)));
+			}
+		} catch (EOFException e) {
+			// Connection closed
+		}
+	}
+
+	/**
+	 * Handles a message from the server.  Prints states, status lines and
+	 * metrics, and ignores anything else.
+	 * 
+	 * @param type The message type
+	 * @param payload The payload
+	 */
+	protected void handle(int type, DataInputStream payload) throws IOException {
+		switch (type) {
+			case TelemetryProtocol.STATE:
+				long uptime = payload.readLong();
+				int direction = payload.readUnsignedByte();
+				int flags = payload.readUnsignedByte();
+				System.out.println(String.format("%10.3f s  direction %d  %s%s%s%s%s frames %d  overruns %d",
+						uptime / 1000.0, direction,
+						(flags & TelemetryProtocol.FLAG_MOVING) != 0 ? "moving " : "",
+						(flags & TelemetryProtocol.FLAG_FORWARD) != 0 ? "forward " : "backward ",
+						(flags & TelemetryProtocol.FLAG_TURNING) != 0 ? "turning " : "",
+						(flags & TelemetryProtocol.FLAG_ESTOP) != 0 ? "ESTOP " : "",
+						(flags & TelemetryProtocol.FLAG_CONNECTION_LOST) != 0 ? "CONNECTION LOST " : "",
+						payload.readLong(), payload.readLong()));
+				break;
+			case TelemetryProtocol.LABEL:
+				System.out.println("Status: " + readString(payload));
+				break;
+			case TelemetryProtocol.METRICS:
+				int count = payload.readUnsignedShort();
+				for (int i = 0; i < count; i++) {
+					String name = readString(payload);
+					long n = payload.readLong();
+					long p50 = payload.readLong();
+					long p99 = payload.readLong();
+					long max = payload.readLong();
+					if (n > 0) {
+						System.out.println(String.format("%-40s %10d %10.1f %10.1f %10.1f", name, n,
+								p50 / 1000.0, p99 / 1000.0, max / 1000.0));
+					}
+				}
+				break;
+			case TelemetryProtocol.DENIED:
+				System.out.println("Denied command " + payload.readUnsignedByte()
+						+ ": set " + TelemetryServer.SECRET_PROPERTY + " to the server's secret");
+				break;
+			default: // Skip messages from newer servers
+		}
+	}
+
+	/**
+	 * Helper function that reads a string.
+	 */
+	private static String readString(DataInputStream payload) throws IOException {
+		byte[] text = new byte[payload.readUnsignedShort()];
+		payload.readFully(text);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	/**
+	 * Connects to a panel and prints its state, after sending a command if
+	 * one is given.
+	 */
+	public static void main(String[] args) throws IOException {
+		String host = (args.length > 0) ? args[0] : "127.0.0.1";
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : TelemetryProtocol.PORT;
+		String command = (args.length > 2) ? args[2] : "";
+		TelemetryClient client = new TelemetryClient(host, port);
+		String secret = System.getProperty(TelemetryServer.SECRET_PROPERTY);
+		if (secret != null && !secret.isEmpty()) {
+			client.authenticate(secret);
+		}
+		if (command.equals("estop")) {
+			client.setEstop(true);
+		} else if (command.equals("release")) {
+			client.setEstop(false);
+		} else if (command.equals("metrics")) {
+			client.requestMetrics();
+		} else if (command.equals("shutdown")) {
+			client.shutdown();
+		}
+		client.subscribe(PERIOD);
+		client.receive();
+		client.close();
+	}
+
+}
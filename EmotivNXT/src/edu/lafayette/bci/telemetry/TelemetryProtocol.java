@@ -0,0 +1,49 @@
+package edu.lafayette.bci.telemetry;
+
+/**
+ * The binary protocol spoken by TelemetryServer and TelemetryClient.
+ * Every message is its length (an unsigned short counting the type and
+ * the payload), its type (a byte) and its payload, big-endian.  Strings
+ * are an unsigned short length followed by that many bytes of UTF-8.
+ * Unknown message types are skipped, so either side may add messages.
+ * 
+ * The server sends HELLO when a client connects, then STATE (preceded by
+ * LABEL when the status line has changed) every subscribed period.
+ * 
+ * Any client may subscribe, ask for metrics and engage the emergency
+ * stop.  Releasing it and ending the session are refused with DENIED
+ * unless the client has first sent AUTH with the server's shared secret;
+ * a server without a secret leaves them to the local operator.
+ */
+public final class TelemetryProtocol {
+
+	// Defaults and limits
+	public static final int PORT = 7421; // Default port of a headless panel
+	public static final int MAGIC = 0x42434954; // "BCIT", sent in HELLO
+	public static final int VERSION = 1;
+	public static final int MAX_MESSAGE = 0xFFFF; // Longest message (type and payload), in bytes
+
+	// Messages from the server
+	public static final int HELLO = 1; // Magic (int), version (byte)
+	public static final int STATE = 2; // Uptime in ms (long), direction (byte), flags (byte), frames (long), overruns (long)
+	public static final int LABEL = 3; // Status line (string)
+	public static final int METRICS = 4; // Histogram count (short), then per histogram name (string), count, p50, p99, max (longs, ns)
+	public static final int DENIED = 5; // Type of the command refused for want of AUTH (byte)
+
+	// Messages from a client
+	public static final int SUBSCRIBE = 16; // Period between states in ms (short), 0 to stop
+	public static final int ESTOP = 17; // 1 to engage the emergency stop, 0 to release it (byte)
+	public static final int GET_METRICS = 18; // No payload, answered with METRICS
+	public static final int SHUTDOWN = 19; // No payload, ends the session
+	public static final int AUTH = 20; // Shared secret (string); a wrong secret closes the connection
+
+	// Flags of STATE
+	public static final int FLAG_MOVING = 1;
+	public static final int FLAG_FORWARD = 1 << 1;
+	public static final int FLAG_TURNING = 1 << 2;
+	public static final int FLAG_ESTOP = 1 << 3;
+	public static final int FLAG_CONNECTION_LOST = 1 << 4;
+
+	private TelemetryProtocol() {}
+
+}
@@ -0,0 +1,482 @@
+package edu.lafayette.bci.telemetry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.lafayette.bci.metrics.LatencyHistogram;
+
+/**
+ * Serves the state, metrics and emergency stop of a controller to remote
+ * displays over TCP (see TelemetryProtocol).  A single thread handles
+ * every client with non-blocking NIO: states are pushed at each client's
+ * subscribed rate into a bounded output buffer, and a client too slow to
+ * take them simply misses states (counted in getDropped()) instead of
+ * holding anything up.  The server only reads the controller's state
+ * through TelemetrySource, so the control loop never waits for it.
+ * 
+ * The server listens on bci.telemetry.host (the loopback interface by
+ * default, so remote displays connect through an SSH tunnel unless it
+ * is set to an external address) and bci.telemetry.port.  Releasing the
+ * emergency stop and ending the session need the secret given in
+ * bci.telemetry.secret (see TelemetryProtocol); without one, remote
+ * clients can only engage the estop.
+ */
+public class TelemetryServer extends Thread {
+
+	// Properties choosing the address
+	public static final String HOST_PROPERTY = "bci.telemetry.host";
+	public static final String PORT_PROPERTY = "bci.telemetry.port";
+	public static final String SECRET_PROPERTY = "bci.telemetry.secret";
+
+	// Buffer sizes and the fastest state rate
+	private static final int INPUT_CAPACITY = 256;
+	private static final int OUTPUT_CAPACITY = 16384;
+	private static final long MIN_PERIOD = 10; // In milliseconds
+
+	// Controller served, the secret needed to release the estop or shut it
+	// down (null for none), and when the server started
+	private final TelemetrySource source;
+	private final byte[] secret;
+	private final long start = System.nanoTime();
+
+	// Listening socket and the selector of all channels
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final List<Client> clients = new ArrayList<Client>();
+
+	// Statistics
+	private volatile long connections = 0;
+	private volatile long dropped = 0;
+
+	// Set when the thread should stop
+	private volatile boolean finished = false;
+
+	/**
+	 * Creates a new TelemetryServer listening on an address.  Call start()
+	 * to start serving.
+	 * 
+	 * @param source The controller to serve
+	 * @param address The address to listen on
+	 * @throws IOException If the address cannot be bound
+	 */
+	public TelemetryServer(TelemetrySource source, InetSocketAddress address) throws IOException {
+		this(source, address, null);
+	}
+
+	/**
+	 * Creates a new TelemetryServer listening on an address, that lets
+	 * clients knowing a secret release the estop and end the session.
+	 * Call start() to start serving.
+	 *
+	 * @param source The controller to serve
+	 * @param address The address to listen on
+	 * @param secret The shared secret, or null to refuse those commands
+	 * @throws IOException If the address cannot be bound
+	 */
+	public TelemetryServer(TelemetrySource source, InetSocketAddress address, String secret) throws IOException {
+		super("Telemetry server");
+		setDaemon(true);
+		this.source = source;
+		this.secret = (secret != null && !secret.isEmpty()) ? secret.getBytes(StandardCharsets.UTF_8) : null;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		try {
+			server.bind(address);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			server.close();
+			selector.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates a TelemetryServer on the address given by the system
+	 * properties.
+	 * 
+	 * @param source The controller to serve
+	 * @param defaultPort The port if bci.telemetry.port is not set, 0 for no server
+	 * @return The server, or null if the port is 0
+	 * @throws IOException If the address cannot be bound
+	 */
+	public static TelemetryServer fromProperties(TelemetrySource source, int defaultPort) throws IOException {
+		int port = Integer.getInteger(PORT_PROPERTY, defaultPort);
+		if (port <= 0) {
+			return null;
+		}
+		String host = System.getProperty(HOST_PROPERTY, "127.0.0.1");
+		return new TelemetryServer(source, new InetSocketAddress(host, port), System.getProperty(SECRET_PROPERTY));
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!finished) {
+				selector.select(timeout());
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						Client client = (Client) key.attachment();
+						try {
+							if (key.isReadable()) {
+								read(client);
+							}
+							if (key.isValid() && key.isWritable()) {
+								flush(client);
+							}
+						} catch (IOException e) {
+							disconnect(client);
+						}
+					}
+				}
+				push();
+			}
+		} catch (IOException e) {
+			System.err.println("Telemetry server stopped: " + e.getMessage());
+		} finally {
+			for (Client client : new ArrayList<Client>(clients)) {
+				disconnect(client);
+			}
+			try { server.close(); } catch (IOException e) {}
+			try { selector.close(); } catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * Helper function that finds how long the selector may wait for the
+	 * next push.
+	 * 
+	 * @return The time, in milliseconds, or 0 to wait until woken
+	 */
+	private long timeout() {
+		long now = System.nanoTime();
+		long wait = Long.MAX_VALUE;
+		for (Client client : clients) {
+			if (client.period > 0) {
+				wait = Math.min(wait, client.nextPush - now);
+			}
+		}
+		return (wait == Long.MAX_VALUE) ? 0 : Math.max(1, wait / 1000000);
+	}
+
+	/**
+	 * Helper function that accepts a connection and greets the client.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Client client = new Client(channel);
+		client.key = channel.register(selector, SelectionKey.OP_READ, client);
+		clients.add(client);
+		connections++;
+
+		int mark = begin(client, TelemetryProtocol.HELLO, 5);
+		client.out.putInt(TelemetryProtocol.MAGIC);
+		client.out.put((byte) TelemetryProtocol.VERSION);
+		end(client, mark);
+		try {
+			flush(client);
+		} catch (IOException e) {
+			disconnect(client);
+		}
+	}
+
+	/**
+	 * Helper function that reads and handles a client's messages.
+	 */
+	private void read(Client client) throws IOException {
+		if (client.channel.read(client.in) < 0) {
+			disconnect(client);
+			return;
+		}
+		ByteBuffer in = client.in;
+		in.flip();
+		while (in.remaining() >= 2) {
+			int length = in.getShort(in.position()) & 0xFFFF;
+			if (length == 0 || length + 2 > in.capacity()) {
+				// Not a message a client sends
+				disconnect(client);
+				return;
+			}
+			if (in.remaining() < length + 2) {
+				break;
+			}
+			int next = in.position() + 2 + length;
+			in.position(in.position() + 2);
+			try {
+				handle(client, in.get() & 0xFF, (ByteBuffer) in.slice().limit(length - 1));
+			} catch (BufferUnderflowException e) {
+				// Payload shorter than the message needs
+				disconnect(client);
+				return;
+			}
+			if (!client.channel.isOpen()) {
+				// Disconnected by the command
+				return;
+			}
+			in.position(next);
+		}
+		in.compact();
+	}
+
+	/**
+	 * Helper function that carries out a client's command.
+	 */
+	private void handle(Client client, int type, ByteBuffer payload) throws IOException {
+		switch (type) {
+			case TelemetryProtocol.SUBSCRIBE:
+				int period = payload.getShort() & 0xFFFF;
+				client.period = (period == 0) ? 0 : Math.max(MIN_PERIOD, period) * 1000000;
+				client.nextPush = System.nanoTime();
+				break;
+			case TelemetryProtocol.AUTH:
+				byte[] text = new byte[payload.getShort() & 0xFFFF];
+				payload.get(text);
+				if (secret == null || !MessageDigest.isEqual(secret, text)) {
+					disconnect(client);
+					return;
+				}
+				client.authorized = true;
+				break;
+			case TelemetryProtocol.ESTOP:
+				// Anyone may stop the nxt, only the operator may start it again
+				if (payload.get() != 0) {
+					source.setEstop(true);
+				} else if (client.authorized) {
+					source.setEstop(false);
+				} else {
+					deny(client, type);
+				}
+				client.nextPush = System.nanoTime();
+				break;
+			case TelemetryProtocol.GET_METRICS:
+				sendMetrics(client);
+				break;
+			case TelemetryProtocol.SHUTDOWN:
+				if (client.authorized) {
+					source.shutdown();
+				} else {
+					deny(client, type);
+				}
+				break;
+			default: // Skip messages from newer clients
+		}
+	}
+
+	/**
+	 * Helper function that tells a client a command needs AUTH.
+	 */
+	private void deny(Client client, int type) throws IOException {
+		int mark = begin(client, TelemetryProtocol.DENIED, 1);
+		if (mark >= 0) {
+			client.out.put((byte) type);
+			end(client, mark);
+			flush(client);
+		}
+	}
+
+	/**
+	 * Helper function that sends the state to every client it is due to.
+	 */
+	private void push() {
+		long now = System.nanoTime();
+		for (Client client : new ArrayList<Client>(clients)) {
+			if (client.period <= 0 || now - client.nextPush < 0) {
+				continue;
+			}
+			client.nextPush = Math.max(client.nextPush + client.period, now);
+
+			// The status line only when it has changed
+			String label = source.getLabel();
+			if (!label.equals(client.label)) {
+				byte[] text = label.getBytes(StandardCharsets.UTF_8);
+				int mark = begin(client, TelemetryProtocol.LABEL, 2 + text.length);
+				if (mark >= 0) {
+					putString(client.out, text);
+					end(client, mark);
+					client.label = label;
+				}
+			}
+
+			int mark = begin(client, TelemetryProtocol.STATE, 26);
+			if (mark >= 0) {
+				client.out.putLong((now - start) / 1000000);
+				client.out.put((byte) source.getDirection());
+				client.out.put((byte) source.getFlags());
+				client.out.putLong(source.getFrames());
+				client.out.putLong(source.getOverruns());
+				end(client, mark);
+			}
+			try {
+				flush(client);
+			} catch (IOException e) {
+				disconnect(client);
+			}
+		}
+	}
+
+	/**
+	 * Helper function that sends the stage latencies to a client.
+	 */
+	private void sendMetrics(Client client) throws IOException {
+		List<LatencyHistogram> histograms = source.getLatency().getHistograms();
+		List<byte[]> names = new ArrayList<byte[]>();
+		int size = 2;
+		for (LatencyHistogram h : histograms) {
+			byte[] name = h.getName().getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			size += 2 + name.length + 32;
+		}
+		int mark = begin(client, TelemetryProtocol.METRICS, size);
+		if (mark < 0) {
+			return;
+		}
+		client.out.putShort((short) histograms.size());
+		for (int i = 0; i < histograms.size(); i++) {
+			LatencyHistogram h = histograms.get(i);
+			putString(client.out, names.get(i));
+			client.out.putLong(h.getCount());
+			client.out.putLong(h.getPercentile(50.0));
+			client.out.putLong(h.getPercentile(99.0));
+			client.out.putLong(h.getMax());
+		}
+		end(client, mark);
+		flush(client);
+	}
+
+	/**
+	 * Helper function that starts a message in a client's output buffer.
+	 * 
+	 * @return The position of the message, or -1 (and the message is
+	 *         dropped) if the buffer has no room for it
+	 */
+	private int begin(Client client, int type, int payload) {
+		if (payload + 1 > TelemetryProtocol.MAX_MESSAGE || client.out.remaining() < payload + 3) {
+			dropped++;
+			return -1;
+		}
+		int mark = client.out.position();
+		client.out.putShort((short) 0);
+		client.out.put((byte) type);
+		return mark;
+	}
+
+	/**
+	 * Helper function that fills in the length of the message begun at a position.
+	 */
+	private void end(Client client, int mark) {
+		client.out.putShort(mark, (short) (client.out.position() - mark - 2));
+	}
+
+	/**
+	 * Helper function that writes a string.
+	 */
+	private static void putString(ByteBuffer out, byte[] text) {
+		out.putShort((short) text.length);
+		out.put(text);
+	}
+
+	/**
+	 * Helper function that writes as much of a client's output as the
+	 * socket takes, and asks to be told when it can take the rest.
+	 */
+	private void flush(Client client) throws IOException {
+		client.out.flip();
+		client.channel.write(client.out);
+		client.out.compact();
+		int ops = SelectionKey.OP_READ | ((client.out.position() > 0) ? SelectionKey.OP_WRITE : 0);
+		if (client.key.isValid() && client.key.interestOps() != ops) {
+			client.key.interestOps(ops);
+		}
+	}
+
+	/**
+	 * Helper function that closes a client's connection.
+	 */
+	private void disconnect(Client client) {
+		clients.remove(client);
+		client.key.cancel();
+		try { client.channel.close(); } catch (IOException e) {}
+	}
+
+	/**
+	 * Gets the port the server listens on.
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Gets the number of connections accepted.
+	 */
+	public long getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Gets the number of messages dropped because a client was not
+	 * keeping up.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Stops the server and closes every connection.
+	 */
+	public void finish() {
+		finished = true;
+		selector.wakeup();
+	}
+
+	/**
+	 * A connected client and its buffers.
+	 */
+	private static class Client {
+
+		// Connection
+		private final SocketChannel channel;
+		private SelectionKey key = null;
+
+		// Buffers
+		private final ByteBuffer in = ByteBuffer.allocate(INPUT_CAPACITY);
+		private final ByteBuffer out = ByteBuffer.allocate(OUTPUT_CAPACITY);
+
+		// Subscription: period and next push in nanoseconds, and the last label sent
+		private long period = 0;
+		private long nextPush = 0;
+		private String label = null;
+
+		// True once the client has sent the secret
+		private boolean authorized = false;
+
+		private Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+	}
+
+}
@@ -0,0 +1,55 @@
+package edu.lafayette.bci.telemetry;
+
+import edu.lafayette.bci.metrics.LatencyRegistry;
+
+/**
+ * The controller seen by a TelemetryServer.  The getters are called on
+ * the server's thread and must not block; the commands must only record
+ * the request (or hand it to a thread that acts on it), so clients can
+ * never hold up the control loop.
+ */
+public interface TelemetrySource {
+
+	/**
+	 * Gets the direction of movement (an NXTControlPanelUI direction constant).
+	 */
+	public int getDirection();
+
+	/**
+	 * Gets the state flags (the TelemetryProtocol FLAG constants).
+	 */
+	public int getFlags();
+
+	/**
+	 * Gets the status line.
+	 */
+	public String getLabel();
+
+	/**
+	 * Gets the number of EEG frames acquired.
+	 */
+	public long getFrames();
+
+	/**
+	 * Gets the number of frames dropped because processing fell behind.
+	 */
+	public long getOverruns();
+
+	/**
+	 * Gets the stage latencies.
+	 */
+	public LatencyRegistry getLatency();
+
+	/**
+	 * Engages or releases the emergency stop.
+	 * 
+	 * @param estop True to stop the device and keep it stopped
+	 */
+	public void setEstop(boolean estop);
+
+	/**
+	 * Ends the session.
+	 */
+	public void shutdown();
+
+}
@@ -0,0 +1,173 @@
+package edu.lafayette.bci.watchdog;
+
+import edu.lafayette.bci.metrics.LatencyHistogram;
+
+/**
+ * A named deadline kept by a DeadlineWatchdog: something (a stream, the
+ * drive, the UI) that must be heard from at least once per timeout.
+ * reset() only stores the time it was called, so it can be called on
+ * every frame from any thread; the watchdog's thread looks at that time
+ * when the deadline falls due, and either moves the deadline on or
+ * reports it missed.  A missed deadline is reported once, and again only
+ * after it has been reset and missed anew.
+ * 
+ * A deadline that is not armed is never missed.  reset() arms it and
+ * disarm() disarms it, for deadlines that only run while something is
+ * outstanding (such as an unacknowledged drive command).
+ */
+public class Deadline {
+
+	// Value of the last reset while disarmed
+	private static final long DISARMED = Long.MIN_VALUE;
+
+	// Name, timeout and the watchdog keeping the deadline
+	private final String name;
+	private final long timeout;
+	private final DeadlineWatchdog watchdog;
+
+	// Time of the last reset, in System.nanoTime() units, and whether the
+	// miss since then has been reported
+	private volatile long kicked = DISARMED;
+	private volatile boolean expired = false;
+
+	// Time from falling due to the miss being reported, and the misses
+	private final LatencyHistogram detection;
+	private volatile long misses = 0;
+
+	// Tick the deadline is next checked at, when it fell due if it was
+	// just missed, and the next deadline in the same wheel slot (guarded
+	// by the watchdog)
+	long when = 0;
+	long due = 0;
+	Deadline next = null;
+
+	/**
+	 * Creates a new Deadline (used by DeadlineWatchdog).
+	 */
+	Deadline(DeadlineWatchdog watchdog, String name, long timeout, LatencyHistogram detection) {
+		this.watchdog = watchdog;
+		this.name = name;
+		this.timeout = timeout;
+		this.detection = detection;
+	}
+
+	/**
+	 * Restarts the timeout, arming the deadline if necessary.  Lock free:
+	 * a single volatile write, plus a second one on the first reset after
+	 * a miss.
+	 */
+	public void reset() {
+		kicked = System.nanoTime();
+		if (expired) {
+			expired = false;
+		}
+	}
+
+	/**
+	 * Disarms the deadline until the next reset().
+	 */
+	public void disarm() {
+		kicked = DISARMED;
+		expired = false;
+	}
+
+	/**
+	 * Checks whether the deadline is armed.
+	 */
+	public boolean isArmed() {
+		return kicked != DISARMED;
+	}
+
+	/**
+	 * Checks whether the deadline has been missed and not reset since.
+	 */
+	public boolean isExpired() {
+		return expired;
+	}
+
+	/**
+	 * Called by the watchdog's thread when the deadline is checked.  Sets
+	 * when to the tick of the next check, and due to the time the deadline
+	 * fell due if it was missed.
+	 * 
+	 * @param now The current System.nanoTime()
+	 * @return True if the deadline has just been missed
+	 */
+	boolean check(long now) {
+		long last = kicked;
+		if (last != DISARMED && now - (last + timeout) < 0) {
+			// Reset since the last check, look again when the new timeout runs out
+			when = watchdog.tickOf(last + timeout);
+			return false;
+		}
+
+		// Not heard from in time, or not armed: look again a timeout from now
+		when = watchdog.tickOf(now + timeout);
+		if (last == DISARMED || expired) {
+			return false;
+		}
+
+		// Marking the miss before looking at the reset time again means a
+		// concurrent reset() either sees the mark and clears it, or is seen here
+		expired = true;
+		if (kicked != last) {
+			expired = false;
+			return false;
+		}
+		due = last + timeout;
+		misses++;
+		return true;
+	}
+
+	/**
+	 * Records how long after falling due a miss was reported.
+	 */
+	void detected(long lateNanos) {
+		detection.record(lateNanos);
+	}
+
+	/**
+	 * Gets the name of the deadline.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the timeout, in nanoseconds.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Gets the longest a miss can go unreported by design: the timeout plus
+	 * the watchdog's resolution.  The actual delays past the timeout are
+	 * recorded in getDetectionLatency().
+	 * 
+	 * @return The bound, in nanoseconds
+	 */
+	public long getBound() {
+		return timeout + watchdog.getResolution();
+	}
+
+	/**
+	 * Gets the times from falling due to being reported of the misses so far.
+	 */
+	public LatencyHistogram getDetectionLatency() {
+		return detection;
+	}
+
+	/**
+	 * Gets the number of misses reported.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + timeout / 1000000 + " ms, " + misses + " missed)";
+	}
+
+}
@@ -0,0 +1,16 @@
+package edu.lafayette.bci.watchdog;
+
+/**
+ * Observer of a DeadlineWatchdog.
+ */
+public interface DeadlineObserver {
+
+	/**
+	 * Called on the watchdog's thread when a deadline is missed.
+	 * 
+	 * @param deadline The deadline that was missed
+	 * @param lateNanos How long after the deadline fell due the miss was detected, in nanoseconds
+	 */
+	public void deadlineMissed(Deadline deadline, long lateNanos);
+
+}
@@ -0,0 +1,244 @@
+package edu.lafayette.bci.watchdog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.lafayette.bci.metrics.LatencyRegistry;
+
+/**
+ * Watches any number of named Deadlines (the EEG and gyro streams, the
+ * drive, the UI) on one thread, and tells its observers when one is
+ * missed.  Resetting a deadline is a single volatile write, so it can be
+ * done on every frame; the thread only wakes when a deadline falls due,
+ * rather than polling them all.
+ * 
+ * Deadlines are kept on a hierarchical timing wheel: a near wheel of
+ * SLOTS ticks of the resolution, and a far wheel of SLOTS turns of the
+ * near one whose slots are moved onto the near wheel as it comes round
+ * to them.  Adding, moving and expiring a deadline is constant time.  A
+ * deadline reset since it was placed on the wheel is simply placed again
+ * at its new due time when its slot comes up, so a stream that is reset
+ * 128 times a second costs one check per timeout.  A miss is reported at
+ * most one resolution after the deadline falls due, plus however late
+ * the thread is scheduled; the actual delays are recorded in the
+ * registry as "watchdog.&lt;name&gt;".
+ */
+public class DeadlineWatchdog extends Thread {
+
+	// Default tick length and the size of each wheel
+	public static final long RESOLUTION = 10; // Tick length, in milliseconds
+	private static final int BITS = 6;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+
+	// Tick length and origin, in System.nanoTime() units, and where to
+	// record the detection delays
+	private final long tick;
+	private final long start;
+	private final LatencyRegistry registry;
+
+	// Wheels of deadline lists, the last tick processed and all deadlines
+	// (guarded by this)
+	private final Deadline[] near = new Deadline[SLOTS];
+	private final Deadline[] far = new Deadline[SLOTS];
+	private long current = 0;
+	private final List<Deadline> deadlines = new ArrayList<Deadline>();
+
+	// Observers, called on this thread
+	private final List<DeadlineObserver> observers = new CopyOnWriteArrayList<DeadlineObserver>();
+
+	// Set when the thread should stop
+	private volatile boolean finished = false;
+
+	/**
+	 * Creates a new DeadlineWatchdog with the default resolution.
+	 * 
+	 * @param registry Where to record how late misses were detected
+	 */
+	public DeadlineWatchdog(LatencyRegistry registry) {
+		this(registry, RESOLUTION);
+	}
+
+	/**
+	 * Creates a new DeadlineWatchdog.
+	 * 
+	 * @param registry Where to record how late misses were detected
+	 * @param resolution The tick length, in milliseconds
+	 */
+	public DeadlineWatchdog(LatencyRegistry registry, long resolution) {
+		super("Deadline watchdog");
+		this.registry = registry;
+		tick = Math.max(1, resolution) * 1000000;
+		start = System.nanoTime();
+		setDaemon(true);
+	}
+
+	/**
+	 * Adds a deadline.  It starts disarmed; reset() it to start the timeout.
+	 * 
+	 * @param name The name of the deadline, for reports
+	 * @param timeout The timeout, in milliseconds
+	 * @return The new deadline
+	 */
+	public synchronized Deadline add(String name, long timeout) {
+		Deadline deadline = new Deadline(this, name, timeout * 1000000, registry.histogram("watchdog." + name));
+		deadline.when = tickOf(System.nanoTime() + deadline.getTimeout());
+		insert(deadline, current + 1);
+		deadlines.add(deadline);
+		LockSupport.unpark(this);
+		return deadline;
+	}
+
+	/**
+	 * Adds an observer to be told of missed deadlines.
+	 * 
+	 * @param observer The observer
+	 */
+	public void addObserver(DeadlineObserver observer) {
+		observers.add(observer);
+	}
+
+	@Override
+	public void run() {
+		List<Deadline> missed = new ArrayList<Deadline>();
+		while (!finished) {
+			long next;
+			synchronized (this) {
+				// Process every tick that has started
+				long now = System.nanoTime();
+				long last = (now - start) / tick;
+				while (current < last) {
+					advance(current + 1, now, missed);
+				}
+				next = nextTick();
+			}
+
+			// Report the misses outside the lock
+			for (Deadline deadline : missed) {
+				long late = System.nanoTime() - deadline.due;
+				deadline.detected(late);
+				for (DeadlineObserver observer : observers) {
+					observer.deadlineMissed(deadline, late);
+				}
+			}
+			missed.clear();
+
+			// Sleep until the next occupied tick
+			if (next < 0) {
+				LockSupport.park(this);
+			} else {
+				long delay = start + next * tick - System.nanoTime();
+				if (delay > 0) {
+					LockSupport.parkNanos(this, delay);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper function that processes one tick: moves the far slot it
+	 * starts (if any) onto the near wheel, then checks the deadlines in
+	 * its near slot and places them again.
+	 */
+	private void advance(long t, long now, List<Deadline> missed) {
+		current = t;
+		if ((t & MASK) == 0) {
+			int slot = (int) ((t >> BITS) & MASK);
+			Deadline d = far[slot];
+			far[slot] = null;
+			while (d != null) {
+				Deadline next = d.next;
+				insert(d, t);
+				d = next;
+			}
+		}
+
+		int slot = (int) (t & MASK);
+		Deadline d = near[slot];
+		near[slot] = null;
+		while (d != null) {
+			Deadline next = d.next;
+			if (d.check(now)) {
+				missed.add(d);
+			}
+			insert(d, t + 1);
+			d = next;
+		}
+	}
+
+	/**
+	 * Helper function that places a deadline on the wheel at its tick, or
+	 * at the earliest tick given if that is later.  Deadlines beyond the
+	 * far wheel are placed in its last slot and moved on from there.
+	 */
+	private void insert(Deadline d, long earliest) {
+		d.when = Math.max(d.when, earliest);
+		long block = d.when >> BITS;
+		long currentBlock = current >> BITS;
+		if (block == currentBlock) {
+			int slot = (int) (d.when & MASK);
+			d.next = near[slot];
+			near[slot] = d;
+		} else {
+			int slot = (int) (Math.min(block, currentBlock + SLOTS - 1) & MASK);
+			d.next = far[slot];
+			far[slot] = d;
+		}
+	}
+
+	/**
+	 * Helper function that finds the next tick with something to do.
+	 * 
+	 * @return The tick, or -1 if the wheels are empty
+	 */
+	private long nextTick() {
+		for (long t = current + 1; (t >> BITS) == (current >> BITS); t++) {
+			if (near[(int) (t & MASK)] != null) {
+				return t;
+			}
+		}
+		long block = current >> BITS;
+		for (int i = 1; i < SLOTS; i++) {
+			if (far[(int) ((block + i) & MASK)] != null) {
+				return (block + i) << BITS;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Converts a time to the first tick at or after it.
+	 * 
+	 * @param nanos A System.nanoTime()
+	 * @return The tick
+	 */
+	long tickOf(long nanos) {
+		long elapsed = nanos - start;
+		return (elapsed <= 0) ? 0 : (elapsed + tick - 1) / tick;
+	}
+
+	/**
+	 * Gets the resolution (tick length), in nanoseconds.
+	 */
+	public long getResolution() {
+		return tick;
+	}
+
+	/**
+	 * Gets the deadlines.
+	 */
+	public synchronized List<Deadline> getDeadlines() {
+		return new ArrayList<Deadline>(deadlines);
+	}
+
+	/**
+	 * Stops the watchdog.
+	 */
+	public void finish() {
+		finished = true;
+		LockSupport.unpark(this);
+	}
+
+}
@@ -3,19 +3,35 @@
  */
 package edu.lafayette.bci.wheelchair;
 
-import jssc.*;
-
-import javax.swing.*;
+import edu.lafayette.bci.drive.DriveTarget;
 
 /**
+ * Control methods for the wheelchair.  Each movement is a single byte
+ * command understood by the Arduino ('f', 'b', 'l', 'r', 's').  Commands
+ * are handed to a ChairLink, which writes them on its own thread and
+ * reconnects if the serial port is lost, so these methods never block
+ * or exit the program.  The chair has no speed control, so the speed
+ * arguments of the DriveTarget methods are ignored.
+ * 
  * @author Brandon T. Smith
  *
  */
-public class ChairControl {
+public class ChairControl implements DriveTarget {
 	
+	// TODO: Determine best/correct COM port for Arduino link
 	private final static String PORT = "COM5";
+
+	// Maximum number of commands waiting to be written
+	private static final int QUEUE_CAPACITY = 16;
+
+	// Command bytes understood by the Arduino
+	private static final byte FORWARD = 'f';
+	private static final byte BACKWARD = 'b';
+	private static final byte LEFT = 'l';
+	private static final byte RIGHT = 'r';
+	private static final byte STOP = 's';
 	
-	private SerialPort arduport = null;
+	private ChairLink link = null;
 	
 	public static void main(String args[]) {
 		ChairControl cc = new ChairControl();
@@ -23,139 +39,90 @@ public class ChairControl {
 		try {
 			Thread.sleep(10000);
 		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-//		cc.backward();
-//		try {
-//			Thread.sleep(1000);
-//		} catch (InterruptedException e) {
-//			// TODO Auto-generated catch block
-//			e.printStackTrace();
-//		}
-//		cc.turnLeft();
-//		try {
-//			Thread.sleep(1000);
-//		} catch (InterruptedException e) {
-//			// TODO Auto-generated catch block
-//			e.printStackTrace();
-//		}
-//		cc.turnRight();
-//		try {
-//			Thread.sleep(1000);
-//		} catch (InterruptedException e) {
-//			// TODO Auto-generated catch block
-//			e.printStackTrace();
-//		}
-//		cc.stop();
-//		try {
-//			Thread.sleep(1000);
-//		} catch (InterruptedException e) {
-//			// TODO Auto-generated catch block
-//			e.printStackTrace();
-//		}
+		cc.stop();
 		cc.close();
 		System.out.print("finished");
 	}
 
-	// Create an instance of ChairControl.
-	public ChairControl (){
-		// TODO: Determine best/correct COM port for Arduino link
-		// Connect to COM port
-		arduport = new SerialPort(PORT);
-		try {
-			System.out.println("Connected: " + arduport.openPort() );
-			Thread.sleep(1000);
-			arduport.setParams(SerialPort.BAUDRATE_9600, 
-					SerialPort.DATABITS_8, 
-					SerialPort.STOPBITS_1, 
-					SerialPort.PARITY_NONE);
-			Thread.sleep(1000);
-		} catch (SerialPortException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, 
-					"Could not connect, or could not set parameters for connection.", 
-					"Serial Port Exception", JOptionPane.ERROR_MESSAGE);
-			System.exit(0);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, "Set up time inerrupted.",  
-					"Interrupted Exception", JOptionPane.ERROR_MESSAGE);
-		}
-		
+	// Create an instance of ChairControl on the default serial port.
+	public ChairControl() {
+		this(new JsscSerialLink(PORT));
+	}
+
+	// Create an instance of ChairControl on the given link.
+	public ChairControl(SerialLink serial) {
+		this(new ChairLink(serial, QUEUE_CAPACITY));
+	}
+
+	// Create an instance of ChairControl on an existing transport.
+	public ChairControl(ChairLink link) {
+		this.link = link;
 	}
 	
 	// Move the wheelchair forwards
 	public void forward() {
-		try {
-//			arduport.writeBytes("f/n".getBytes());
-			System.out.println("Forward sent: " + arduport.writeString("f") );
-		} catch (SerialPortException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, "Could not transmit 'forward' command.", 
-					"Serial Port Exception", JOptionPane.ERROR_MESSAGE);
-		}
+		link.send(FORWARD);
 	}
 	
 	// Move the wheelchair backwards
 	public void backward() {
-		try {
-			arduport.writeBytes("b".getBytes());
-		} catch (SerialPortException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, "Could not transmit 'backwards' command.", 
-					"Serial Port Exception", JOptionPane.ERROR_MESSAGE);
-			System.exit(0);
-		}
+		link.send(BACKWARD);
 	}
 	
 	// Rotate the wheelchair to the left.
 	public void turnLeft() {
-		try {
-			arduport.writeBytes("l".getBytes());
-		} catch (SerialPortException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, "Could not transmit 'turn left' command.", 
-					"Serial Port Exception", JOptionPane.ERROR_MESSAGE);
-			System.exit(0);
-		}
+		link.send(LEFT);
 	}
 	
 	// Rotate the wheelchair to the right.
 	public void turnRight() {
-		try {
-			arduport.writeBytes("r".getBytes());
-		} catch (SerialPortException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, "Could not transmit 'turn right' command.", 
-					"Serial Port Exception", JOptionPane.ERROR_MESSAGE);
-			System.exit(0);
-		}
+		link.send(RIGHT);
 	}
 	
-	// Stop the wheelchair.
+	// Stop the wheelchair, ahead of any queued command.
+	@Override
 	public void stop() {
-		try {
-			arduport.writeBytes("s/n".getBytes());
-		} catch (SerialPortException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, "Could not transmit 'stop' command.", 
-					"Serial Port Exception", JOptionPane.ERROR_MESSAGE);
-			System.exit(0);
-		}
+		link.sendNow(STOP);
+	}
+
+	/* ********** DriveTarget Methods ********** */
+
+	@Override
+	public void forward(double speed) {
+		forward();
+	}
+
+	@Override
+	public void backward(double speed) {
+		backward();
+	}
+
+	@Override
+	public void turnLeft(double speed) {
+		turnLeft();
+	}
+
+	@Override
+	public void turnRight(double speed) {
+		turnRight();
+	}
+
+	@Override
+	public String getName() {
+		return "chair";
+	}
+
+	// Get the transport, for its connection state and counters.
+	public ChairLink getLink() {
+		return link;
 	}
 	
-	// close connection
+	// Stop the wheelchair and close the connection once the stop is written
+	@Override
 	public void close() {
-		try {
-			arduport.closePort();
-		} catch (SerialPortException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(null, "Failed to properly close connection.", 
-					"Serial Port Exception", JOptionPane.ERROR_MESSAGE);
-			System.exit(0);
-		}
+		link.sendNow(STOP);
+		link.close();
 	}
 }
@@ -0,0 +1,297 @@
+package edu.lafayette.bci.wheelchair;
+
+import java.io.IOException;
+
+import edu.lafayette.bci.metrics.LatencyHistogram;
+import edu.lafayette.bci.metrics.LatencyRegistry;
+
+/**
+ * Transport for the single-byte wheelchair commands.  A dedicated writer
+ * thread owns the SerialLink; callers only place commands in a bounded
+ * queue and return immediately.
+ * 
+ * The wheelchair commands are states ("go forward", "stop"), not
+ * increments, so whenever the writer wakes up it drains everything queued
+ * and sends only the newest command in a single write.  If the queue is
+ * full the oldest command is discarded.  A stop clears the queue, so it
+ * is always the next command written.
+ * 
+ * Write and open failures close the link and reopen it with exponential
+ * backoff, resending the newest command once connected.  close() still
+ * writes the newest command (normally a stop) before closing the link,
+ * waiting at most the settle time plus CLOSE_TIMEOUT_MS to reconnect.
+ * 
+ * The time from a command being queued to its write completing is
+ * recorded in the chair.write histogram of the default LatencyRegistry.
+ */
+public class ChairLink implements Runnable {
+
+	// Default time the Arduino needs after the port is opened (it resets on open)
+	public static final long DEFAULT_SETTLE_MS = 2000;
+
+	// Reconnect backoff limits
+	private static final long MIN_BACKOFF_MS = 250;
+	private static final long MAX_BACKOFF_MS = 8000;
+
+	// Time close() allows, beyond the settle time, for the last command to be written
+	public static final long CLOSE_TIMEOUT_MS = 1000;
+
+	// The link, the thread that writes to it and the post-open delay
+	private final SerialLink link;
+	private final Thread writer;
+	private final long settleMillis;
+
+	// Bounded command ring (guarded by lock)
+	private final Object lock = new Object();
+	private final byte[] queue;
+	private int head = 0;
+	private int size = 0;
+	private long newest = 0;
+	private boolean finished = false;
+	private long closeBy = 0; // When close() gives up on writing the last command
+	private boolean unsent = false; // True if the writer holds a command not yet written
+
+	// Queue-to-wire latency
+	private final LatencyHistogram writeLatency = LatencyRegistry.getDefault().histogram("chair.write");
+
+	// Connection state
+	private volatile boolean connected = false;
+
+	// Counters
+	private volatile long submitted = 0;
+	private volatile long dropped = 0;
+	private volatile long coalesced = 0;
+	private volatile long writes = 0;
+	private volatile long failures = 0;
+	private volatile long reconnects = 0;
+
+	/**
+	 * Creates a new ChairLink and starts its writer thread.
+	 * 
+	 * @param link The link to the Arduino
+	 * @param capacity The maximum number of queued commands
+	 */
+	public ChairLink(SerialLink link, int capacity) {
+		this(link, capacity, DEFAULT_SETTLE_MS);
+	}
+
+	/**
+	 * Creates a new ChairLink and starts its writer thread.
+	 * 
+	 * @param link The link to the Arduino
+	 * @param capacity The maximum number of queued commands
+	 * @param settleMillis Time to wait after opening the link before writing
+	 */
+	public ChairLink(SerialLink link, int capacity, long settleMillis) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be at least 1");
+		}
+		this.link = link;
+		this.settleMillis = settleMillis;
+		queue = new byte[capacity];
+		writer = new Thread(this, "Chair link " + link.getName());
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queues a command.
+	 * 
+	 * @param command The command byte
+	 */
+	public void send(byte command) {
+		synchronized (lock) {
+			submitted++;
+			if (size == queue.length) {
+				// Discard the oldest command
+				head = (head + 1) % queue.length;
+				size--;
+				dropped++;
+			}
+			queue[(head + size) % queue.length] = command;
+			size++;
+			newest = System.nanoTime();
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Discards every queued command and queues a command in their place.
+	 * 
+	 * @param command The command byte
+	 */
+	public void sendNow(byte command) {
+		synchronized (lock) {
+			dropped += size;
+			head = 0;
+			size = 0;
+			send(command);
+		}
+	}
+
+	@Override
+	public void run() {
+		long backoff = MIN_BACKOFF_MS;
+		byte[] out = new byte[1];
+		long queued = 0;
+		boolean opened = false;
+
+		while (true) {
+			// (Re)connect if needed
+			if (!connected) {
+				try {
+					link.open();
+					if (opened) {
+						reconnects++;
+					}
+					opened = true;
+					connected = true;
+					backoff = MIN_BACKOFF_MS;
+					if (!pause(settleMillis)) {
+						break;
+					}
+				} catch (IOException e) {
+					failures++;
+					System.err.println("Chair link " + link.getName() + ": " + e.getMessage()
+							+ ", retrying in " + backoff + " ms");
+					link.close();
+					if (!pause(backoff)) {
+						break;
+					}
+					backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+					continue;
+				}
+			}
+
+			// Wait for commands, then keep only the newest
+			synchronized (lock) {
+				while (size == 0 && !unsent && !finished) {
+					try { lock.wait(); } catch (InterruptedException e) {}
+				}
+				if (done()) {
+					break;
+				}
+				if (size > 0) {
+					coalesced += size - 1 + (unsent ? 1 : 0);
+					out[0] = queue[(head + size - 1) % queue.length];
+					queued = newest;
+					head = 0;
+					size = 0;
+					unsent = true;
+				}
+			}
+
+			try {
+				link.write(out, 0, 1);
+				writeLatency.recordSince(queued);
+				writes++;
+				synchronized (lock) {
+					unsent = false;
+				}
+			} catch (IOException e) {
+				// Keep the command and resend it once reconnected
+				failures++;
+				System.err.println("Chair link " + link.getName() + ": " + e.getMessage());
+				connected = false;
+				link.close();
+			}
+		}
+
+		connected = false;
+		link.close();
+	}
+
+	/**
+	 * Helper function that checks whether the writer should exit: the link
+	 * is finished and either nothing is left to write or the close timeout
+	 * has passed.  Called holding lock.
+	 */
+	private boolean done() {
+		return finished && ((size == 0 && !unsent) || System.currentTimeMillis() >= closeBy);
+	}
+
+	/**
+	 * Helper function that sleeps unless the writer should exit.
+	 * 
+	 * @return False if the writer should exit
+	 */
+	private boolean pause(long millis) {
+		synchronized (lock) {
+			long end = System.currentTimeMillis() + millis;
+			long left = millis;
+			while (!done() && left > 0) {
+				long wait = finished ? Math.min(left, closeBy - System.currentTimeMillis()) : left;
+				if (wait > 0) {
+					try { lock.wait(wait); } catch (InterruptedException e) {}
+				}
+				left = end - System.currentTimeMillis();
+			}
+			return !done();
+		}
+	}
+
+	/**
+	 * Writes the newest queued command, then stops the writer thread and
+	 * closes the link.  If the link is down, the writer keeps reconnecting
+	 * for the settle time plus CLOSE_TIMEOUT_MS; a command still unwritten
+	 * after that is discarded.  Older queued commands are discarded.
+	 */
+	public void close() {
+		synchronized (lock) {
+			finished = true;
+			closeBy = System.currentTimeMillis() + settleMillis + CLOSE_TIMEOUT_MS;
+			lock.notifyAll();
+		}
+		try { writer.join(); } catch (InterruptedException e) {}
+	}
+
+	/**
+	 * Indicates whether the link is currently open.
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Gets the number of commands queued by callers.
+	 */
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * Gets the number of commands discarded because the queue was full or a stop jumped it.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Gets the number of commands superseded by a newer one before being written.
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Gets the number of successful writes.
+	 */
+	public long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * Gets the number of failed opens and writes.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Gets the number of times the link was reopened after being lost.
+	 */
+	public long getReconnects() {
+		return reconnects;
+	}
+
+}
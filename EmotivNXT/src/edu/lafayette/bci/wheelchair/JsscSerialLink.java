@@ -0,0 +1,78 @@
+package edu.lafayette.bci.wheelchair;
+
+import java.io.IOException;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+
+/**
+ * SerialLink backed by a jSSC serial port at 9600 8N1.
+ */
+public class JsscSerialLink implements SerialLink {
+
+	// Port name, such as "COM5" or "/dev/ttyACM0"
+	private final String portName;
+	private SerialPort port = null;
+
+	/**
+	 * Creates a new JsscSerialLink.
+	 * 
+	 * @param portName The name of the serial port
+	 */
+	public JsscSerialLink(String portName) {
+		this.portName = portName;
+	}
+
+	@Override
+	public void open() throws IOException {
+		port = new SerialPort(portName);
+		try {
+			port.openPort();
+			port.setParams(SerialPort.BAUDRATE_9600, 
+					SerialPort.DATABITS_8, 
+					SerialPort.STOPBITS_1, 
+					SerialPort.PARITY_NONE);
+		} catch (SerialPortException e) {
+			close();
+			throw new IOException("Could not open " + portName, e);
+		}
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		if (port == null) {
+			throw new IOException(portName + " is not open");
+		}
+		byte[] out = buf;
+		if (off != 0 || len != buf.length) {
+			out = new byte[len];
+			System.arraycopy(buf, off, out, 0, len);
+		}
+		try {
+			if (!port.writeBytes(out)) {
+				throw new IOException("Write to " + portName + " failed");
+			}
+		} catch (SerialPortException e) {
+			throw new IOException("Write to " + portName + " failed", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (port == null) {
+			return;
+		}
+		try {
+			port.closePort();
+		} catch (SerialPortException e) {
+			// Nothing more can be done with the port
+		}
+		port = null;
+	}
+
+	@Override
+	public String getName() {
+		return portName;
+	}
+
+}
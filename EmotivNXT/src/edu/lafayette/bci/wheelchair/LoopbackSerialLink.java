@@ -0,0 +1,143 @@
+package edu.lafayette.bci.wheelchair;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A fake SerialLink for testing the chair transport without an Arduino.
+ * Written bytes are optionally forwarded to a file, which may be one end
+ * of a pseudo terminal (for example one created with
+ * "socat -d -d pty,raw,echo=0 pty,raw,echo=0"), and the link can emulate
+ * the time a real 9600 baud port takes to shift the bytes out.  It also
+ * records when the last command byte arrived, so latency through
+ * ChairLink can be measured.
+ */
+public class LoopbackSerialLink implements SerialLink {
+
+	// Nanoseconds to transmit one byte at 9600 baud, 8N1 (10 bits)
+	public static final long NANOS_PER_BYTE_9600 = 10L * 1000000000L / 9600;
+
+	// Optional output file and emulated time per byte
+	private final String path;
+	private final long nanosPerByte;
+	private OutputStream out = null;
+	private volatile boolean open = false;
+
+	// Failure injection, the next write throws if set
+	private volatile boolean failNextWrite = false;
+
+	// What arrived at the far end
+	private volatile long bytes = 0;
+	private volatile long writes = 0;
+	private volatile byte lastByte = 0;
+	private volatile long lastArrival = 0;
+
+	/**
+	 * Creates a LoopbackSerialLink that only counts bytes.
+	 */
+	public LoopbackSerialLink() {
+		this(null, 0);
+	}
+
+	/**
+	 * Creates a new LoopbackSerialLink.
+	 * 
+	 * @param path File or pty to copy written bytes to, or null
+	 * @param nanosPerByte Emulated transmit time per byte, or 0 for none
+	 */
+	public LoopbackSerialLink(String path, long nanosPerByte) {
+		this.path = path;
+		this.nanosPerByte = nanosPerByte;
+	}
+
+	@Override
+	public void open() throws IOException {
+		if (path != null) {
+			out = new FileOutputStream(path);
+		}
+		open = true;
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		if (!open) {
+			throw new IOException("Loopback is not open");
+		}
+		if (failNextWrite) {
+			failNextWrite = false;
+			throw new IOException("Injected write failure");
+		}
+
+		if (out != null) {
+			out.write(buf, off, len);
+			out.flush();
+		}
+
+		// Emulate the time the UART takes to shift the bytes out
+		if (nanosPerByte > 0) {
+			long end = System.nanoTime() + nanosPerByte * len;
+			while (System.nanoTime() < end) {
+				long left = end - System.nanoTime();
+				if (left > 1000000) {
+					try { Thread.sleep(left / 1000000); } catch (InterruptedException e) { break; }
+				}
+			}
+		}
+
+		lastByte = buf[off + len - 1];
+		bytes += len;
+		writes++;
+		lastArrival = System.nanoTime();
+	}
+
+	@Override
+	public void close() {
+		open = false;
+		if (out != null) {
+			try { out.close(); } catch (IOException e) {}
+			out = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return (path == null) ? "loopback" : path;
+	}
+
+	/**
+	 * Makes the next write fail, to exercise reconnect handling.
+	 */
+	public void failNextWrite() {
+		failNextWrite = true;
+	}
+
+	/**
+	 * Gets the total number of bytes written.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of write calls.
+	 */
+	public long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * Gets the last byte written.
+	 */
+	public byte getLastByte() {
+		return lastByte;
+	}
+
+	/**
+	 * Gets the System.nanoTime() at which the last write completed.
+	 */
+	public long getLastArrival() {
+		return lastArrival;
+	}
+
+}
@@ -0,0 +1,39 @@
+package edu.lafayette.bci.wheelchair;
+
+import java.io.IOException;
+
+/**
+ * A byte link to the wheelchair's Arduino.  Implementations wrap a real
+ * serial port or a fake one used for testing; ChairLink owns the link
+ * and is the only thread that calls it.
+ */
+public interface SerialLink {
+
+	/**
+	 * Opens the link.
+	 * 
+	 * @throws IOException If the link could not be opened or configured
+	 */
+	public void open() throws IOException;
+
+	/**
+	 * Writes bytes to the link.
+	 * 
+	 * @param buf The bytes to write
+	 * @param off The offset of the first byte
+	 * @param len The number of bytes to write
+	 * @throws IOException If the write failed, the link should then be reopened
+	 */
+	public void write(byte[] buf, int off, int len) throws IOException;
+
+	/**
+	 * Closes the link.  Errors while closing are ignored.
+	 */
+	public void close();
+
+	/**
+	 * Gets a human readable name for the link, such as the port name.
+	 */
+	public String getName();
+
+}
@@ -0,0 +1,61 @@
+package edu.lafayette.bci.wheelchair;
+
+/**
+ * Measures throughput and latency of the chair transport against a
+ * LoopbackSerialLink, so it can be run on any machine without an
+ * Arduino.  Pass a pty path (see LoopbackSerialLink) as the first
+ * argument to also push the bytes through a real tty.
+ */
+public class TestChairLink {
+
+	public static void main(String args[]) {
+		String path = (args.length > 0) ? args[0] : null;
+		LoopbackSerialLink serial = new LoopbackSerialLink(path, LoopbackSerialLink.NANOS_PER_BYTE_9600);
+		ChairLink link = new ChairLink(serial, 16, 0);
+		byte[] commands = { 'f', 'l', 'f', 'r', 'b' };
+
+		// Latency: one command at a time, wait until it arrives
+		long worst = 0;
+		long total = 0;
+		int rounds = 200;
+		for (int i = 0; i < rounds; i++) {
+			byte c = commands[i % commands.length];
+			long before = serial.getWrites();
+			long start = System.nanoTime();
+			link.send(c);
+			while (serial.getWrites() == before) {
+				Thread.yield();
+			}
+			long latency = serial.getLastArrival() - start;
+			total += latency;
+			worst = Math.max(worst, latency);
+		}
+		System.out.println("Latency: mean " + (total / rounds / 1000) + " us, max " + (worst / 1000) + " us");
+
+		// Throughput: flood commands, the link should coalesce them
+		int burst = 100000;
+		long start = System.nanoTime();
+		for (int i = 0; i < burst; i++) {
+			link.send(commands[i % commands.length]);
+		}
+		link.sendNow((byte) 's');
+		while (serial.getLastByte() != 's') {
+			Thread.yield();
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println("Burst of " + burst + " commands drained in " + (elapsed / 1000000) + " ms");
+
+		// Reconnect: a failed write is retried after reopening
+		serial.failNextWrite();
+		link.send((byte) 'f');
+		while (serial.getLastByte() != 'f') {
+			Thread.yield();
+		}
+
+		System.out.println("Submitted " + link.getSubmitted() + ", written " + link.getWrites()
+				+ ", coalesced " + link.getCoalesced() + ", dropped " + link.getDropped()
+				+ ", failures " + link.getFailures() + ", reconnects " + link.getReconnects());
+		link.close();
+	}
+
+}